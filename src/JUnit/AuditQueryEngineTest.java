@@ -0,0 +1,131 @@
+package JUnit;
+
+import Program.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuditQueryEngineTest {
+    @TempDir Path dir;
+
+    @Test
+    void indexedQueriesPageAcrossSegmentsAndReportDivergence() throws Exception {
+        User admin = new User("admin", "hash", UserRole.ADMIN, SecurityLevel.ADMIN);
+        User alice = new User("alice", "hash", UserRole.TECHNICIAN, SecurityLevel.TOPLEVEL);
+        User bob = new User("bob", "hash", UserRole.TECHNICIAN, SecurityLevel.TOPLEVEL);
+        AuditLog audit = new AuditLog(dir, 64, false);
+        audit.setRotation(null, 3000, 0);
+        User before = SessionManager.getInstance().getCurrentUser();
+        try {
+            for (int i = 0; i < 600; i++) {
+                SessionManager.getInstance().setCurrentUser(i % 3 == 0 ? alice : bob);
+                audit.log("deleted ticket " + i + ", with a comma", i % 2 == 0 ? "TDELETE" : "TUPDATE", Durability.ASYNC);
+                if (i % 100 == 0) {
+                    audit.flush();
+                    Thread.sleep(3);
+                }
+            }
+        } finally {
+            SessionManager.getInstance().setCurrentUser(before);
+        }
+        audit.flush();
+
+        //Everything alice deleted in a window, checked against a full scan
+        List<String> all;
+        try (BufferedReader r = audit.reader("TDELETE", false)) {
+            all = r.lines().toList();
+        }
+        long from = millisOf(all.get(50)), to = millisOf(all.get(250));
+        List<String> expected = new ArrayList<>();
+        for (String line : all) {
+            long t = millisOf(line);
+            if (line.endsWith(",alice") && t >= from && t <= to) expected.add(line);
+        }
+        AuditQueryEngine engine = new AuditQueryEngine(audit);
+        AuditQuery q = new AuditQuery().logID("TDELETE").user("alice").between(from, to);
+        List<String> got = new ArrayList<>();
+        String cursor = null;
+        do {
+            AuditQueryEngine.Page page = engine.query(admin, q, cursor, 7);
+            assertTrue(page.getRecords().size() <= 7);
+            assertEquals(expected.size(), page.getTotalMatches());
+            for (AuditRecord r : page.getRecords()) {
+                assertEquals("alice", r.getUsername());
+                assertTrue(r.getDetails().endsWith(", with a comma"));
+                assertFalse(r.isDiverged());
+                got.add(r.toString());
+            }
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        assertEquals(expected, got);
+        try (var files = Files.list(dir)) {
+            assertTrue(files.anyMatch(p -> p.getFileName().toString().endsWith(".aidx")));
+        }
+
+        //A record only the primary copy has is returned once and flagged
+        String extra = all.get(all.size() - 1).replace("deleted ticket", "forged ticket");
+        Files.writeString(dir.resolve("ticket_deletions.logprimary.txt"), extra + System.lineSeparator(),
+                StandardOpenOption.APPEND);
+        AuditQueryEngine.Page page = engine.query(admin, new AuditQuery().logID("TDELETE"), null, 1000);
+        assertEquals(301, page.getTotalMatches());
+        assertEquals(1, page.getDiverged());
+        AuditRecord odd = page.getRecords().stream().filter(AuditRecord::isDiverged).findFirst().orElseThrow();
+        assertTrue(odd.isInPrimary());
+        assertFalse(odd.isInBackup());
+
+        //Both audit files, and nothing for a non-admin
+        assertEquals(601, engine.query(admin, new AuditQuery().logID("TDELETE").logID("TUPDATE"), null, 10).getTotalMatches());
+        assertEquals(0, engine.query(alice, new AuditQuery(), null, 10).getTotalMatches());
+        audit.close();
+    }
+
+    @Test
+    void cursorKeepsItsPlaceWhenTheActiveFileRotates() throws Exception {
+        User admin = new User("admin", "hash", UserRole.ADMIN, SecurityLevel.ADMIN);
+        AuditLog audit = new AuditLog(dir, 64, false);
+        for (int i = 0; i < 3; i++) audit.log("deleted ticket " + i, "TDELETE", Durability.SYNC);
+
+        //Three records in one millisecond, the last two identical, ahead of the logged ones
+        String at = LocalDateTime.now().minusHours(1).toString();
+        String first = at + ",deleted ticket a,127.0.0.1,00-00-00-00-00-00,alice" + System.lineSeparator();
+        String twin = at + ",deleted ticket b,127.0.0.1,00-00-00-00-00-00,alice" + System.lineSeparator();
+        for (String copy : new String[]{"primary", "backup"}) {
+            Files.writeString(dir.resolve("ticket_deletions.log" + copy + ".txt"), first + twin + twin,
+                    StandardOpenOption.APPEND);
+        }
+        AuditQueryEngine engine = new AuditQueryEngine(audit);
+        AuditQuery q = new AuditQuery().logID("TDELETE");
+        AuditQueryEngine.Page page = engine.query(admin, q, null, 2);
+        assertEquals(6, page.getTotalMatches());
+        assertTrue(page.getRecords().get(1).getDetails().endsWith("ticket b"));
+
+        //The active file becomes segment 1 before the next page is asked for
+        audit.setRotation("TDELETE", 1, 0);
+        audit.log("deleted ticket 3", "TDELETE", Durability.SYNC);
+        assertTrue(Files.exists(dir.resolve("ticket_deletions.logprimary.1.txt"))
+                || Files.exists(dir.resolve("ticket_deletions.logprimary.1.txt.gz")));
+        page = engine.query(admin, q, page.getNextCursor(), 10);
+        List<String> rest = new ArrayList<>();
+        for (AuditRecord r : page.getRecords()) rest.add(r.getDetails());
+        assertEquals(List.of("deleted ticket b", "deleted ticket 0", "deleted ticket 1", "deleted ticket 2",
+                "deleted ticket 3"), rest);
+        assertNull(page.getNextCursor());
+        audit.close();
+    }
+
+    //Record timestamp in epoch millis
+    private static long millisOf(String line) {
+        return LocalDateTime.parse(line.substring(0, line.indexOf(','))).atZone(ZoneId.systemDefault())
+                .toInstant().toEpochMilli();
+    }
+}
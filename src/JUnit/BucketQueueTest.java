@@ -0,0 +1,87 @@
+package JUnit;
+
+import Program.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BucketQueueTest {
+    private BucketQueue queue;
+    private User baseUser, techUser;
+
+    @BeforeEach
+    void setUp() {
+        queue = new BucketQueue(10);
+        baseUser = new User("alice", "h", UserRole.END_USER, SecurityLevel.BASE);
+        techUser = new User("bob",   "h", UserRole.TECHNICIAN, SecurityLevel.TOPLEVEL);
+    }
+
+    @Test
+    void equalPrioritiesComeOutInArrivalOrder() {
+        Ticket first  = new Ticket("first",  "alice", 2, SecurityLevel.BASE);
+        Ticket second = new Ticket("second", "alice", 2, SecurityLevel.BASE);
+        Ticket third  = new Ticket("third",  "alice", 2, SecurityLevel.BASE);
+        Ticket urgent = new Ticket("urgent", "alice", 1, SecurityLevel.BASE);
+        queue.addTicket(first,  baseUser);
+        queue.addTicket(second, baseUser);
+        queue.addTicket(third,  baseUser);
+        queue.addTicket(urgent, baseUser);
+
+        assertEquals(urgent, queue.pollTicket(baseUser));
+        assertEquals(first,  queue.pollTicket(baseUser));
+        assertEquals(second, queue.pollTicket(baseUser));
+        assertEquals(third,  queue.pollTicket(baseUser));
+        assertNull(queue.pollTicket(baseUser));
+    }
+
+    @Test
+    void outOfRangePrioritiesFallBackToHeap() {
+        Ticket normal  = new Ticket("normal",  "alice", 3, SecurityLevel.BASE);
+        Ticket zero    = new Ticket("zero",    "alice", 0, SecurityLevel.BASE);
+        Ticket backlog = new Ticket("backlog", "alice", 50, SecurityLevel.BASE);
+        queue.addTicket(backlog, baseUser);
+        queue.addTicket(normal,  baseUser);
+        queue.addTicket(zero,    baseUser);
+
+        assertEquals(zero,    queue.pollTicket(baseUser));
+        assertEquals(normal,  queue.pollTicket(baseUser));
+        assertEquals(backlog, queue.pollTicket(baseUser));
+    }
+
+    @Test
+    void updateMovesTicketBetweenBucketsAndHeap() {
+        Ticket a = new Ticket("A", "alice", 2, SecurityLevel.BASE);
+        Ticket b = new Ticket("B", "alice", 3, SecurityLevel.BASE);
+        queue.addTicket(a, baseUser);
+        queue.addTicket(b, baseUser);
+
+        assertTrue(queue.updateTicketPriority(a.getTicketID(), 99, baseUser));
+        assertEquals(b, queue.peek());
+        assertTrue(queue.updateTicketPriority(a.getTicketID(), 1, baseUser));
+        assertEquals(a, queue.peek());
+        assertTrue(queue.deleteTicket(a.getTicketID(), baseUser));
+        assertFalse(queue.updateTicketPriority(a.getTicketID(), 1, baseUser));
+        assertEquals(1, queue.getSize());
+    }
+
+    @Test
+    void pollRespectsSecurityLevels() {
+        Ticket secret = new Ticket("Secret", "alice", 1, SecurityLevel.TOPLEVEL);
+        Ticket pub    = new Ticket("Public", "alice", 4, SecurityLevel.BASE);
+        queue.addTicket(secret, baseUser);
+        queue.addTicket(pub,    baseUser);
+
+        assertEquals(1, queue.listAccessibleTickets(baseUser).size());
+        assertEquals(2, queue.listAccessibleTickets(techUser).size());
+        assertEquals(pub, queue.pollTicket(baseUser));
+        assertEquals(secret, queue.pollTicket(techUser));
+    }
+
+    @Test
+    void modeFactoryBuildsEitherQueue() {
+        assertTrue(QueueMode.fromName("bucket").create(5, null, null) instanceof BucketQueue);
+        assertTrue(QueueMode.fromName(null).create(5, null, null) instanceof PriorityQueue);
+        assertTrue(QueueMode.fromName("nonsense").create(5, null, null) instanceof PriorityQueue);
+    }
+}
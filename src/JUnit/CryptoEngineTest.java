@@ -0,0 +1,120 @@
+package JUnit;
+
+import Program.CryptoEngine;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CryptoEngineTest {
+    private final SecretKey key = new SecretKeySpec(new byte[16], "AES");
+
+    @Test
+    void messagesMatchTheOriginalNoncePrefixedFormat() throws Exception {
+        CryptoEngine engine = new CryptoEngine(key);
+        byte[] plain = "ticket snapshot".getBytes(StandardCharsets.UTF_8);
+        byte[] message = engine.encrypt(plain);
+        assertEquals(plain.length + CryptoEngine.OVERHEAD, message.length);
+
+        //Readable the way SecurityUtil used to decrypt, and the other way round
+        Cipher c = Cipher.getInstance("AES/GCM/NoPadding");
+        c.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(128, message, 0, 12));
+        assertArrayEquals(plain, c.doFinal(message, 12, message.length - 12));
+        byte[] nonce = new byte[12];
+        new SecureRandom().nextBytes(nonce);
+        c.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(128, nonce));
+        byte[] old = ByteBuffer.allocate(12 + plain.length + 16).put(nonce).put(c.doFinal(plain)).array();
+        assertArrayEquals(plain, engine.decrypt(old));
+
+        message[20] ^= 1;
+        assertThrows(AEADBadTagException.class, () -> engine.decrypt(message));
+    }
+
+    @Test
+    void inPlaceRoundTripLeavesPlaintextAfterTheNonce() throws Exception {
+        CryptoEngine engine = new CryptoEngine(key);
+        byte[] plain = new byte[10_000];
+        new SecureRandom().nextBytes(plain);
+        ByteBuffer buf = ByteBuffer.allocateDirect(plain.length + CryptoEngine.OVERHEAD + 5);
+        buf.position(5 + CryptoEngine.NONCE_BYTES);
+        buf.put(plain).flip().position(5);
+        engine.encryptInPlace(buf);
+        assertEquals(5, buf.position());
+        assertEquals(plain.length + CryptoEngine.OVERHEAD, buf.remaining());
+
+        byte[] copy = new byte[buf.remaining()];
+        buf.duplicate().get(copy);
+        assertArrayEquals(plain, engine.decrypt(copy));
+
+        engine.decryptInPlace(buf);
+        assertEquals(5 + CryptoEngine.NONCE_BYTES, buf.position());
+        byte[] back = new byte[buf.remaining()];
+        buf.get(back);
+        assertArrayEquals(plain, back);
+    }
+
+    @Test
+    void noncesStayUniqueAcrossNonceRanges() throws Exception {
+        CryptoEngine engine = new CryptoEngine(key, 100);
+        Set<String> nonces = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            byte[] m = engine.encrypt(new byte[1]);
+            assertTrue(nonces.add(Arrays.toString(Arrays.copyOf(m, CryptoEngine.NONCE_BYTES))));
+        }
+        assertEquals(10, engine.getNonceRanges());
+        assertThrows(IllegalArgumentException.class, () -> new CryptoEngine(key, 0));
+    }
+
+    @Test
+    void messageLimitCountsEveryRangeUnderTheKey() throws Exception {
+        CryptoEngine engine = new CryptoEngine(key, 10, 25);
+        for (int i = 0; i < 25; i++) engine.encrypt(new byte[1]);
+        assertEquals(3, engine.getNonceRanges());
+        assertEquals(25, engine.getMessages());
+        //New ranges do not reset it, the key has to change
+        assertThrows(IllegalStateException.class, () -> engine.encrypt(new byte[1]));
+        assertThrows(IllegalStateException.class, () -> engine.encryptingStream(new ByteArrayOutputStream()));
+        assertThrows(IllegalArgumentException.class, () -> new CryptoEngine(key, 10, CryptoEngine.MAX_MESSAGES_PER_KEY + 1));
+        //Decryption does not count
+        assertEquals(1, engine.decrypt(new CryptoEngine(key).encrypt(new byte[1])).length);
+    }
+
+    @Test
+    void streamsUseTheSameFormatAndRejectTampering() throws Exception {
+        CryptoEngine engine = new CryptoEngine(key);
+        byte[] plain = new byte[200_000];
+        new SecureRandom().nextBytes(plain);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        try (OutputStream out = engine.encryptingStream(sink)) {
+            for (int off = 0; off < plain.length; off += 7000) out.write(plain, off, Math.min(7000, plain.length - off));
+        }
+        byte[] message = sink.toByteArray();
+        assertArrayEquals(plain, engine.decrypt(message));
+        try (InputStream in = engine.decryptingStream(new ByteArrayInputStream(message))) {
+            assertArrayEquals(plain, in.readAllBytes());
+        }
+
+        message[message.length - 1] ^= 1;
+        assertThrows(IOException.class, () -> {
+            try (InputStream in = engine.decryptingStream(new ByteArrayInputStream(message))) {
+                in.readAllBytes();
+            }
+        });
+    }
+}
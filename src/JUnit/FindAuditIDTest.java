@@ -11,6 +11,8 @@ class FindAuditIDTest {
     void mapsKnownIdsCorrectly() {
         assertEquals("login_attempts.log",     FindAuditID.getAuditLogFileName("ATTEMPT"));
         assertEquals("successful_logins.log",  FindAuditID.getAuditLogFileName("LOGINSUCCESS"));
+        assertEquals("successful_logins.log",  FindAuditID.getAuditLogFileName("LOGIN"));
+        assertEquals("access_denied.log",      FindAuditID.getAuditLogFileName("ACCESSDENIED"));
         assertEquals("account_registered.log", FindAuditID.getAuditLogFileName("REGISTERED"));
         assertEquals("account_logout.log",     FindAuditID.getAuditLogFileName("LOGOUT"));
         assertEquals("ticket_creations.log",   FindAuditID.getAuditLogFileName("TCREATION"));
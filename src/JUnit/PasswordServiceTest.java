@@ -0,0 +1,105 @@
+package JUnit;
+
+import Program.PasswordHasher;
+import Program.PasswordService;
+import Program.Pbkdf2Hasher;
+import Program.SecurityUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PasswordServiceTest {
+
+    @Test
+    void pbkdf2HashesVerifyAndCarryTheirOwnIterations() throws Exception {
+        PasswordService service = new PasswordService(Pbkdf2Hasher.withIterations(20_000));
+        String stored = service.hash("Aa1@aaaa");
+        assertTrue(stored.startsWith("pbkdf2-sha256$20000$"));
+        assertFalse(stored.contains(","));
+        assertNotEquals(stored, service.hash("Aa1@aaaa"), "Every hash gets its own salt");
+        assertTrue(service.verify("Aa1@aaaa", stored));
+        assertFalse(service.verify("Aa1@aaab", stored));
+        assertFalse(service.needsRehash(stored));
+
+        //A host that now wants far more iterations still reads the old hash, and flags it
+        PasswordService stronger = new PasswordService(Pbkdf2Hasher.withIterations(100_000));
+        assertTrue(stronger.verify("Aa1@aaaa", stored));
+        assertTrue(stronger.needsRehash(stored));
+
+        String legacy = "c2FsdA==$" + SecurityUtil.hashWithSalt("Aa1@aaaa", "c2FsdA==");
+        assertTrue(service.verify("Aa1@aaaa", legacy));
+        assertFalse(service.verify("wrong", legacy));
+        assertTrue(service.needsRehash(legacy));
+        assertThrows(IllegalArgumentException.class, () -> service.verify("x", "nodelimiter"));
+    }
+
+    @Test
+    void unknownAccountsCostAVerifyAndSettingsAreWorkedOutOnThePool() throws Exception {
+        List<String> ranOn = new CopyOnWriteArrayList<>();
+        PasswordHasher recording = new PasswordHasher() {
+            public String hash(char[] password) {
+                ranOn.add("hash " + Thread.currentThread().getName());
+                return "rec$" + password.length;
+            }
+            public boolean verify(char[] password, String stored) {
+                ranOn.add("verify " + Thread.currentThread().getName());
+                return true;
+            }
+            public boolean handles(String stored) { return stored.startsWith("rec$"); }
+            public boolean needsRehash(String stored) {
+                ranOn.add("needsRehash");
+                return false;
+            }
+        };
+        PasswordService service = new PasswordService(recording, 1, 4);
+        //Even a hasher that accepts everything cannot let an unknown account in
+        assertFalse(service.verifyUnknown("Aa1@aaaa"));
+        assertFalse(service.needsRehash("rec$8"));
+        assertEquals(List.of("hash password-hash-1", "verify password-hash-1", "needsRehash"), ranOn);
+    }
+
+    @Test
+    void calibrationMeetsTheFloor() {
+        int n = new Pbkdf2Hasher(1).getIterations();
+        assertTrue(n >= Pbkdf2Hasher.MIN_ITERATIONS);
+        assertEquals(0, n % 1000);
+    }
+
+    @Test
+    void burstsBeyondTheQueueAreTurnedAway() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        PasswordHasher slow = new PasswordHasher() {
+            public String hash(char[] password) throws Exception {
+                release.await();
+                return "slow$" + password.length;
+            }
+            public boolean verify(char[] password, String stored) { return true; }
+            public boolean handles(String stored) { return stored.startsWith("slow$"); }
+            public boolean needsRehash(String stored) { return false; }
+        };
+        //One thread busy, one request waiting, the next is refused
+        PasswordService service = new PasswordService(slow, 1, 1);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = callers.submit(() -> service.hash("a"));
+            Future<String> second = callers.submit(() -> service.hash("bb"));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (service.queued() < 1 && System.currentTimeMillis() < deadline) Thread.sleep(5);
+            assertThrows(RejectedExecutionException.class, () -> service.hash("ccc"));
+            release.countDown();
+            assertEquals("slow$1", first.get());
+            assertEquals("slow$2", second.get());
+        } finally {
+            release.countDown();
+            callers.shutdown();
+        }
+    }
+}
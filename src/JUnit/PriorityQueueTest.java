@@ -3,8 +3,24 @@ package JUnit;
 import Program.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -92,6 +108,456 @@ class PriorityQueueTest {
         assertEquals(0, queue.searchAccessibleTickets("sec", baseUser).size());
     }
 
+    @Test
+    void pollReturnsBestTicketUserMaySee() {
+        Ticket secret = new Ticket("Secret", "alice", 1, SecurityLevel.TOPLEVEL);
+        Ticket low    = new Ticket("Low",    "alice", 4, SecurityLevel.BASE);
+        Ticket mid    = new Ticket("Mid",    "alice", 3, SecurityLevel.BASE);
+        Ticket high   = new Ticket("High",   "alice", 2, SecurityLevel.BASE);
+        queue.addTicket(secret, baseUser);
+        queue.addTicket(low,    baseUser);
+        queue.addTicket(mid,    baseUser);
+        queue.addTicket(high,   baseUser);
+
+        //BASE user skips the TOPLEVEL head and gets the best BASE ticket
+        assertEquals(high, queue.pollTicket(baseUser));
+        assertEquals(mid, queue.pollTicket(baseUser));
+        //Technician sees the secret ticket first
+        assertEquals(secret, queue.pollTicket(techUser));
+        assertEquals(low, queue.peek());
+        assertEquals(1, queue.getSize());
+    }
+
+    @Test
+    void rejectedAddsGiveTheirSlotBack() {
+        PriorityQueue q = new PriorityQueue(2);
+        Ticket a = new Ticket("A", "alice", 1, SecurityLevel.BASE);
+        q.addTicket(a, null);
+        for (int i = 0; i < 3; i++) assertThrows(IllegalArgumentException.class, () -> q.addTicket(a, null));
+        assertEquals(1, q.getSize());
+        //Still room for one more
+        q.addTicket(new Ticket("B", "alice", 2, SecurityLevel.BASE), null);
+        assertEquals(2, q.getSize());
+    }
+
+    @Test
+    void softCapRejectsOrWaitsForRoom() throws Exception {
+        PriorityQueue q = new PriorityQueue(2);
+        Ticket a = new Ticket("A", "alice", 1, SecurityLevel.BASE);
+        q.addTicket(a, null);
+        q.addTicket(new Ticket("B", "alice", 2, SecurityLevel.BASE), null);
+
+        Ticket c = new Ticket("C", "alice", 3, SecurityLevel.BASE);
+        assertThrows(QueueFullException.class, () -> q.addTicket(c, null));
+        assertFalse(q.offerTicket(c, null, 20, TimeUnit.MILLISECONDS));
+
+        //A poll from another thread frees the slot the offer is waiting on
+        Thread poller = new Thread(() -> {
+            try { Thread.sleep(100); } catch (InterruptedException ignored) {}
+            q.pollTicket(null);
+        });
+        poller.start();
+        assertTrue(q.offerTicket(c, null, 5, TimeUnit.SECONDS));
+        poller.join();
+        assertEquals(2, q.getSize());
+    }
+
+    @Test
+    void heapGrowsPastInitialSlotsAndDrainsInOrder() {
+        PriorityQueue q = new PriorityQueue(5000);
+        Random rnd = new Random(3);
+        for (int i = 0; i < 3000; i++) {
+            q.addTicket(new Ticket("G" + i, "alice", rnd.nextInt(100), SecurityLevel.BASE), null);
+        }
+        assertEquals(3000, q.getSize());
+        int last = Integer.MIN_VALUE;
+        while (!q.isEmpty()) {
+            int p = q.pollTicket(null).getPriority();
+            assertTrue(p >= last);
+            last = p;
+        }
+    }
+
+    @Test
+    void asyncMutationsReachLogInHeapOrderAfterFlush(@TempDir Path dir) throws Exception {
+        Path log = dir.resolve("tickets.log");
+        PriorityQueue q = new PriorityQueue(10, log.toString(), dir.resolve("tickets.snapshot").toString());
+        Ticket t = new Ticket("Async", "alice", 2, SecurityLevel.BASE);
+        q.addTicket(t, baseUser, Durability.ASYNC);
+        q.updateTicketPriority(t.getTicketID(), 1, baseUser, Durability.ASYNC);
+        q.deleteTicket(t.getTicketID(), baseUser, Durability.ASYNC);
+        q.flush();
+
+        MyList<LogRecord> records = new TicketFileHandler(log.toString(), null).readRecords();
+        assertEquals(3, records.size());
+        assertEquals(LogRecord.Op.ADD, records.get(0).getOp());
+        assertEquals("Async", records.get(0).getTicket().getTitle());
+        assertEquals(2, records.get(0).getTicket().getPriority());
+        //Update record holds the priority at the time of the change
+        assertEquals(LogRecord.Op.UPDATE, records.get(1).getOp());
+        assertEquals(1, records.get(1).getTicket().getPriority());
+        assertEquals(LogRecord.Op.DELETE, records.get(2).getOp());
+        assertEquals(t.getTicketID(), records.get(2).getTicketID());
+    }
+
+    @Test
+    void closeStopsTheCommitThreadAndTheQueueStaysUsable(@TempDir Path dir) throws Exception {
+        Path log = dir.resolve("tickets.log");
+        long before = threadsNamed("ticket-commit");
+        PriorityQueue q = new PriorityQueue(10, log.toString(), dir.resolve("tickets.snapshot").toString());
+        q.addTicket(new Ticket("First", "alice", 2, SecurityLevel.BASE), baseUser);
+        assertEquals(before + 1, threadsNamed("ticket-commit"));
+        q.close();
+        assertEquals(before, threadsNamed("ticket-commit"));
+
+        //The next mutation starts a new writer, close ends it again
+        q.addTicket(new Ticket("Second", "alice", 1, SecurityLevel.BASE), baseUser, Durability.ASYNC);
+        q.close();
+        assertEquals(before, threadsNamed("ticket-commit"));
+        assertEquals(2, new TicketFileHandler(log.toString(), null).readRecords().size());
+    }
+
+    @Test
+    void syncMutationThrowsWhenTheLogWriteFails(@TempDir Path dir) throws Exception {
+        //No such directory, so every append fails
+        String log = dir.resolve("missing").resolve("tickets.log").toString();
+        PriorityQueue q = new PriorityQueue(10, log, dir.resolve("tickets.snapshot").toString());
+        Ticket t = new Ticket("Lost", "alice", 2, SecurityLevel.BASE);
+        assertThrows(java.io.UncheckedIOException.class, () -> q.addTicket(t, baseUser));
+        //The change itself stands, only the durability promise failed
+        assertEquals(1, q.getSize());
+        q.addTicket(new Ticket("Quiet", "alice", 3, SecurityLevel.BASE), baseUser, Durability.ASYNC);
+        q.flush();
+        assertEquals(2, q.getSize());
+    }
+
+    private static long threadsNamed(String name) {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.isAlive() && t.getName().equals(name)).count();
+    }
+
+    @Test
+    void closeWritesThePendingSnapshotAndStopsTheSnapshotThread(@TempDir Path dir) throws Exception {
+        SecurityUtil.init(new SecretKeySpec(new byte[16], "AES"));
+        User admin = new User("root", "h", UserRole.ADMIN, SecurityLevel.ADMIN);
+        String snap = dir.resolve("tickets.snapshot").toString();
+        long before = threadsNamed("ticket-snapshot");
+        PriorityQueue q = new PriorityQueue(100, dir.resolve("log.csv").toString(), snap);
+        //Nothing would be written before close without it
+        q.setSnapshotPolicy(60_000, 1000);
+        for (int i = 0; i < 10; i++) q.addTicket(new Ticket("T" + i, "root", i, SecurityLevel.BASE), admin);
+        assertEquals(before + 1, threadsNamed("ticket-snapshot"));
+
+        q.close();
+        assertEquals(before, threadsNamed("ticket-snapshot"));
+        assertEquals(0, q.getSnapshotMetrics().getPendingMutations());
+        assertEquals(10, PriorityQueue.loadFromSnapshotBinary(snap).getSize());
+    }
+
+    @Test
+    void peekReflectsTheLatestWriter() throws Exception {
+        PriorityQueue q = new PriorityQueue(100);
+        Ticket a = new Ticket("A", "alice", 5, SecurityLevel.BASE);
+        Ticket b = new Ticket("B", "alice", 3, SecurityLevel.TOPLEVEL);
+        Ticket c = new Ticket("C", "alice", 4, SecurityLevel.BASE);
+        assertNull(q.peek());
+        q.addTicket(a, null);
+        assertEquals(a, q.peek());
+        q.addAll(List.of(b, c));
+        assertEquals(b, q.peek());
+        q.updateTicketPriority(a.getTicketID(), 1, null);
+        assertEquals(a, q.peek());
+        q.deleteTicket(a.getTicketID(), null);
+        assertEquals(b, q.peek());
+        //A BASE user's poll skips b, the head stays b
+        assertEquals(c, q.pollTicket(baseUser));
+        assertEquals(b, q.peek());
+        q.pollTicket(null);
+        assertNull(q.peek());
+
+        //Another thread spinning on peek sees each write without taking the lock
+        Ticket urgent = new Ticket("Urgent", "alice", 0, SecurityLevel.BASE);
+        q.addTicket(new Ticket("Routine", "alice", 9, SecurityLevel.BASE), null);
+        CountDownLatch sawUrgent = new CountDownLatch(1);
+        boolean[] sawPoll = {false};
+        Thread reader = new Thread(() -> {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (q.peek() != urgent) if (System.nanoTime() > deadline) return;
+            sawUrgent.countDown();
+            while (q.peek() == urgent) if (System.nanoTime() > deadline) return;
+            sawPoll[0] = true;
+        });
+        reader.start();
+        Thread.sleep(50);
+        q.addTicket(urgent, null);
+        assertTrue(sawUrgent.await(10, TimeUnit.SECONDS), "new head not seen");
+        q.pollTicket(null);
+        reader.join();
+        assertTrue(sawPoll[0], "polled head still seen");
+    }
+
+    @Test
+    void addAllBuildsHeapsInOneGo() {
+        PriorityQueue q = new PriorityQueue(5000);
+        Random rnd = new Random(5);
+        List<Ticket> batch = new java.util.ArrayList<>();
+        SecurityLevel[] lvls = SecurityLevel.values();
+        for (int i = 0; i < 2000; i++) {
+            batch.add(new Ticket("B" + i, "alice", rnd.nextInt(50), lvls[rnd.nextInt(lvls.length)]));
+        }
+        q.addAll(batch);
+        assertEquals(2000, q.getSize());
+
+        //Batch with an already queued ID is rejected whole
+        Ticket fresh = new Ticket("fresh", "alice", 1, SecurityLevel.BASE);
+        assertThrows(IllegalArgumentException.class, () -> q.addAll(List.of(fresh, batch.get(0))));
+        assertEquals(2000, q.getSize());
+
+        int last = Integer.MIN_VALUE;
+        while (!q.isEmpty()) {
+            int p = q.pollTicket(null).getPriority();
+            assertTrue(p >= last);
+            last = p;
+        }
+    }
+
+    @Test
+    void packedLayoutsMatchObjectHeapUnderRandomOperations() {
+        for (HeapLayout layout : new HeapLayout[]{HeapLayout.PACKED_BINARY, HeapLayout.PACKED_QUATERNARY}) {
+            PriorityQueue packed = new PriorityQueue(1000, null, null, layout);
+            Map<Integer, Ticket> model = new HashMap<>();
+            Random rnd = new Random(17);
+            for (int op = 0; op < 300; op++) {
+                if (model.isEmpty() || rnd.nextInt(3) > 0) {
+                    Ticket t = new Ticket("P" + op, "alice", rnd.nextInt(20), SecurityLevel.BASE);
+                    packed.addTicket(t, null);
+                    model.put(t.getTicketID(), t);
+                } else {
+                    Integer[] ids = model.keySet().toArray(new Integer[0]);
+                    int id = ids[rnd.nextInt(ids.length)];
+                    if (rnd.nextBoolean()) {
+                        assertTrue(packed.updateTicketPriority(id, rnd.nextInt(20), null));
+                    } else {
+                        assertTrue(packed.deleteTicket(id, null));
+                        model.remove(id);
+                    }
+                }
+            }
+            assertEquals(model.size(), packed.getSize());
+            int last = Integer.MIN_VALUE;
+            while (!packed.isEmpty()) {
+                Ticket t = packed.pollTicket(null);
+                assertSame(model.remove(t.getTicketID()), t);
+                assertTrue(t.getPriority() >= last);
+                last = t.getPriority();
+            }
+            assertTrue(model.isEmpty());
+        }
+    }
+
+    @Test
+    void packedLayoutBreaksTiesByArrival() {
+        PriorityQueue q = new PriorityQueue(10, null, null, HeapLayout.PACKED_QUATERNARY);
+        Ticket[] same = new Ticket[6];
+        for (int i = 0; i < same.length; i++) {
+            same[i] = new Ticket("S" + i, "alice", 3, SecurityLevel.BASE);
+            q.addTicket(same[i], null);
+        }
+        for (Ticket t : same) assertEquals(t, q.pollTicket(null));
+    }
+
+    @Test
+    void topKMatchesFullSortAndLeavesQueueAlone() {
+        User[] viewers = {baseUser, techUser};
+        for (QueueMode mode : QueueMode.values()) {
+            TicketQueue q = mode.create(1000, null, null);
+            Random rnd = new Random(23);
+            SecurityLevel[] lvls = SecurityLevel.values();
+            //Priorities 0..11 so BucketQueue uses both its buckets and its overflow heap
+            for (int i = 0; i < 200; i++) {
+                q.addTicket(new Ticket("T" + i, "alice", rnd.nextInt(12), lvls[rnd.nextInt(lvls.length)]), null);
+            }
+            MyList<Ticket> before = q.getAllTickets();
+
+            for (User u : viewers) {
+                List<Ticket> sorted = new ArrayList<>();
+                q.listAccessibleTickets(u).forEach(sorted::add);
+                sorted.sort(Comparator.comparingInt(Ticket::getPriority));
+                for (int k : new int[]{0, 1, 7, 50, sorted.size(), sorted.size() + 5}) {
+                    MyList<Ticket> top = q.topK(u, k);
+                    assertEquals(Math.min(k, sorted.size()), top.size(), mode + " k=" + k);
+                    for (int i = 0; i < top.size(); i++) {
+                        assertEquals(sorted.get(i).getPriority(), top.get(i).getPriority(), mode + " k=" + k);
+                        assertTrue(top.get(i).getSecurityLevel().ordinal() <= u.getSecurityLevel().ordinal());
+                    }
+                }
+            }
+
+            //Same tickets in the same storage order afterwards
+            MyList<Ticket> after = q.getAllTickets();
+            assertEquals(before.size(), after.size());
+            for (int i = 0; i < before.size(); i++) assertSame(before.get(i), after.get(i));
+        }
+    }
+
+    @Test
+    void adminChangesAreCoalescedIntoFewSnapshots(@TempDir Path dir) throws Exception {
+        SecurityUtil.init(new SecretKeySpec(new byte[16], "AES"));
+        User admin = new User("root", "h", UserRole.ADMIN, SecurityLevel.ADMIN);
+        String snap = dir.resolve("tickets.snapshot").toString();
+        PriorityQueue q = new PriorityQueue(1000, dir.resolve("log.csv").toString(), snap);
+        //Interval long enough that only the mutation count can trigger a write
+        q.setSnapshotPolicy(60_000, 25);
+
+        for (int i = 0; i < 100; i++) q.addTicket(new Ticket("T" + i, "root", i % 7, SecurityLevel.BASE), admin);
+        q.flush();
+        q.flushSnapshots();
+
+        SnapshotMetrics m = q.getSnapshotMetrics();
+        assertEquals(0, m.getFailures());
+        assertEquals(0, m.getPendingMutations());
+        assertEquals(100, m.getCoalescedMutations());
+        assertTrue(m.getSnapshots() >= 1 && m.getSnapshots() <= 4, "snapshots: " + m.getSnapshots());
+        assertTrue(m.getLastBytes() > 0);
+
+        //Latest state reached disk
+        PriorityQueue loaded = PriorityQueue.loadFromSnapshotBinary(snap);
+        assertEquals(100, loaded.getSize());
+        assertEquals(q.peek().getTicketID(), loaded.peek().getTicketID());
+    }
+
+    @Test
+    void snapshotRoundTripsEveryQueueMode(@TempDir Path dir) throws Exception {
+        SecurityUtil.init(new SecretKeySpec(new byte[16], "AES"));
+        User admin = new User("root", "h", UserRole.ADMIN, SecurityLevel.ADMIN);
+        for (QueueMode mode : QueueMode.values()) {
+            String snap = dir.resolve(mode + ".snapshot").toString();
+            TicketQueue q = mode.create(500, null, snap);
+            Random rnd = new Random(5);
+            SecurityLevel[] lvls = SecurityLevel.values();
+            for (int i = 0; i < 120; i++) {
+                Ticket t = new Ticket(RequestType.values()[i % RequestType.values().length],
+                        "Ticket é" + i, "user" + (i % 3), rnd.nextInt(21) - 5, lvls[rnd.nextInt(lvls.length)]);
+                if (i % 4 == 0) t.setOwner("tech" + (i % 2));
+                q.addTicket(t, null);
+            }
+            q.saveSnapshotBinary(admin);
+
+            AbstractTicketQueue loaded = mode == QueueMode.BUCKET
+                    ? BucketQueue.loadFromSnapshotBinary(snap)
+                    : PriorityQueue.loadFromSnapshotBinary(snap);
+            assertEquals(mode, loaded.getMode());
+            assertEquals(500, loaded.getSoftCap());
+            assertEquals(q.getSize(), loaded.getSize());
+            while (!q.isEmpty()) {
+                Ticket a = q.pollTicket(null), b = loaded.pollTicket(null);
+                assertEquals(a.getPriority(), b.getPriority(), mode.toString());
+                if (mode != QueueMode.HEAP) assertEquals(a.getTicketID(), b.getTicketID(), mode.toString());
+                Ticket orig = a.getTicketID() == b.getTicketID() ? a : null;
+                if (orig != null) {
+                    assertEquals(orig.getTitle(), b.getTitle());
+                    assertEquals(orig.getCreator(), b.getCreator());
+                    assertEquals(orig.getOwner(), b.getOwner());
+                    assertEquals(orig.getType(), b.getType());
+                    assertEquals(orig.getStatus(), b.getStatus());
+                    assertEquals(orig.getSecurityLevel(), b.getSecurityLevel());
+                }
+            }
+        }
+    }
+
+    @Test
+    void legacySnapshotIsReadAndRewrittenFramed(@TempDir Path dir) throws Exception {
+        SecurityUtil.init(new SecretKeySpec(new byte[16], "AES"));
+        User admin = new User("root", "h", UserRole.ADMIN, SecurityLevel.ADMIN);
+        Path snap = dir.resolve("tickets.snapshot");
+        PriorityQueue old = new PriorityQueue(100, null, snap.toString());
+        for (int i = 0; i < 20; i++) old.addTicket(new Ticket("Old " + i, "alice", i % 4, SecurityLevel.BASE), null);
+
+        //Base64 text of an encrypted Java-serialized queue, as earlier versions wrote it
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(old);
+        }
+        Files.writeString(snap, Base64.getEncoder().encodeToString(SecurityUtil.encryptGcm(bos.toByteArray())));
+
+        PriorityQueue migrated = PriorityQueue.loadFromSnapshotBinary(snap.toString());
+        assertEquals(20, migrated.getSize());
+        migrated.saveSnapshotBinary(admin);
+        assertArrayEquals("TQSE".getBytes(), Arrays.copyOf(Files.readAllBytes(snap), 4));
+        assertEquals(20, PriorityQueue.loadFromSnapshotBinary(snap.toString()).getSize());
+    }
+
+    //Java-serialized PriorityQueue(8) written by the class before the per-level heaps, holding
+    //Breach (ADMIN, 0), VPN down (TOPLEVEL, 1), Disk full (TOPLEVEL, 2), Printer jam (BASE, 3), New laptop (BASE, 5)
+    private static final String PRE_SPLIT_QUEUE =
+            "rO0ABXNyABVQcm9ncmFtLlByaW9yaXR5UXVldWUAAAAAAAAAAQIABUkABHNpemVbAARoZWFwdAARW0xQcm9ncmFtL1RpY2tldDtM" +
+            "AARsb2NrdAAhTGphdmEvdXRpbC9jb25jdXJyZW50L2xvY2tzL0xvY2s7TAALbG9nRmlsZVBhdGh0ABJMamF2YS9sYW5nL1N0cmlu" +
+            "ZztMABBzbmFwc2hvdEZpbGVQYXRocQB+AAN4cAAAAAV1cgARW0xQcm9ncmFtLlRpY2tldDu+O08S37glDwIAAHhwAAAACHNyAA5Q" +
+            "cm9ncmFtLlRpY2tldAAAAAAAAAABAgAISQAIcHJpb3JpdHlJAAh0aWNrZXRJREwAB2NyZWF0b3JxAH4AA0wABW93bmVycQB+AANM" +
+            "AA1zZWN1cml0eUxldmVsdAAXTFByb2dyYW0vU2VjdXJpdHlMZXZlbDtMAAZzdGF0dXN0ABZMUHJvZ3JhbS9UaWNrZXRTdGF0dXM7" +
+            "TAAFdGl0bGVxAH4AA0wABHR5cGV0ABVMUHJvZ3JhbS9SZXF1ZXN0VHlwZTt4cAAAAAAAAAAFdAAEZXJpbnB+cgAVUHJvZ3JhbS5T" +
+            "ZWN1cml0eUxldmVsAAAAAAAAAAASAAB4cgAOamF2YS5sYW5nLkVudW0AAAAAAAAAABIAAHhwdAAFQURNSU5+cgAUUHJvZ3JhbS5U" +
+            "aWNrZXRTdGF0dXMAAAAAAAAAABIAAHhxAH4ADnQABE9QRU50AAZCcmVhY2h+cgATUHJvZ3JhbS5SZXF1ZXN0VHlwZQAAAAAAAAAA" +
+            "EgAAeHEAfgAOdAAFT1RIRVJzcQB+AAcAAAABAAAAAnQAA2JvYnB+cQB+AA10AAhUT1BMRVZFTHEAfgASdAAIVlBOIGRvd25xAH4A" +
+            "FnNxAH4ABwAAAAIAAAADdAAFY2Fyb2xwcQB+ABpxAH4AEnQACURpc2sgZnVsbHEAfgAWc3EAfgAHAAAABQAAAAR0AARkYXZlcH5x" +
+            "AH4ADXQABEJBU0VxAH4AEnQACk5ldyBsYXB0b3BxAH4AFnNxAH4ABwAAAAMAAAABdAAFYWxpY2VwcQB+ACJxAH4AEnQAC1ByaW50" +
+            "ZXIgamFtcQB+ABZwcHBzcgAoamF2YS51dGlsLmNvbmN1cnJlbnQubG9ja3MuUmVlbnRyYW50TG9ja2ZVqCwsyGrrAgABTAAEc3lu" +
+            "Y3QAL0xqYXZhL3V0aWwvY29uY3VycmVudC9sb2Nrcy9SZWVudHJhbnRMb2NrJFN5bmM7eHBzcgA0amF2YS51dGlsLmNvbmN1cnJl" +
+            "bnQubG9ja3MuUmVlbnRyYW50TG9jayROb25mYWlyU3luY2WIMudTe78LAgAAeHIALWphdmEudXRpbC5jb25jdXJyZW50LmxvY2tz" +
+            "LlJlZW50cmFudExvY2skU3luY7geopSqRFp8AgAAeHIANWphdmEudXRpbC5jb25jdXJyZW50LmxvY2tzLkFic3RyYWN0UXVldWVk" +
+            "U3luY2hyb25pemVyZlWoQ3U/UuMCAAFJAAVzdGF0ZXhyADZqYXZhLnV0aWwuY29uY3VycmVudC5sb2Nrcy5BYnN0cmFjdE93bmFi" +
+            "bGVTeW5jaHJvbml6ZXIz36+5rW1vqQIAAHhwAAAAAHBw";
+
+    @Test
+    void preSplitPriorityQueueSnapshotIsMigrated(@TempDir Path dir) throws Exception {
+        SecurityUtil.init(new SecretKeySpec(new byte[16], "AES"));
+        Path snap = dir.resolve("tickets.snapshot");
+        byte[] serialized = Base64.getDecoder().decode(PRE_SPLIT_QUEUE);
+        Files.writeString(snap, Base64.getEncoder().encodeToString(SecurityUtil.encryptGcm(serialized)));
+
+        PriorityQueue migrated = PriorityQueue.loadFromSnapshotBinary(snap.toString());
+        assertEquals(QueueMode.HEAP, migrated.getMode());
+        assertEquals(5, migrated.getSize());
+        assertEquals(8, migrated.getSoftCap());
+        assertEquals("Breach", migrated.peek().getTitle());
+        //Tickets land in their level's heap
+        assertEquals(2, migrated.listAccessibleTickets(baseUser).size());
+        assertEquals("VPN down", migrated.pollTicket(techUser).getTitle());
+        assertEquals("Disk full", migrated.pollTicket(techUser).getTitle());
+        assertEquals("Printer jam", migrated.pollTicket(techUser).getTitle());
+    }
+
+    @Test
+    void framedSnapshotRejectsTamperingAndTruncation(@TempDir Path dir) throws Exception {
+        SecurityUtil.init(new SecretKeySpec(new byte[16], "AES"));
+        User admin = new User("root", "h", UserRole.ADMIN, SecurityLevel.ADMIN);
+        Path snap = dir.resolve("tickets.snapshot");
+        PriorityQueue q = new PriorityQueue(5000, null, snap.toString());
+        //Long titles so the snapshot spans several chunks
+        for (int i = 0; i < 2000; i++) q.addTicket(new Ticket("Printer on floor " + i + " ".repeat(100), "alice", i % 9, SecurityLevel.BASE), null);
+        q.saveSnapshotBinary(admin);
+        byte[] good = Files.readAllBytes(snap);
+        assertTrue(good.length > 3 * 64 * 1024);
+        assertEquals(2000, PriorityQueue.loadFromSnapshotBinary(snap.toString()).getSize());
+
+        byte[] flipped = good.clone();
+        flipped[good.length / 2] ^= 1;
+        Files.write(snap, flipped);
+        assertThrows(IOException.class, () -> PriorityQueue.loadFromSnapshotBinary(snap.toString()));
+
+        Files.write(snap, Arrays.copyOf(good, good.length - 10));
+        assertThrows(IOException.class, () -> PriorityQueue.loadFromSnapshotBinary(snap.toString()));
+
+        //Swap the first two frames: 13 byte header, then 5 + 64 KiB + 16 byte frames
+        int header = 13, frame = 5 + 64 * 1024 + 16;
+        byte[] swapped = good.clone();
+        System.arraycopy(good, header, swapped, header + frame, frame);
+        System.arraycopy(good, header + frame, swapped, header, frame);
+        Files.write(snap, swapped);
+        assertThrows(IOException.class, () -> PriorityQueue.loadFromSnapshotBinary(snap.toString()));
+    }
+
     @Test
     void getSizeAndIsEmptyReflectState() {
         assertTrue(queue.isEmpty());
@@ -100,4 +566,47 @@ class PriorityQueueTest {
         assertFalse(queue.isEmpty());
         assertEquals(1, queue.getSize());
     }
+
+    @Test
+    void indexStaysConsistentUnderRandomOperations() {
+        PriorityQueue q = new PriorityQueue(256);
+        Map<Integer, Ticket> model = new HashMap<>();
+        Random rnd = new Random(42);
+
+        for (int op = 0; op < 400; op++) {
+            int choice = rnd.nextInt(4);
+            if (choice == 0 || model.isEmpty()) {
+                Ticket t = new Ticket("R" + op, "alice", 1 + rnd.nextInt(5), SecurityLevel.BASE);
+                q.addTicket(t, null);
+                model.put(t.getTicketID(), t);
+            } else {
+                Integer[] ids = model.keySet().toArray(new Integer[0]);
+                int id = ids[rnd.nextInt(ids.length)];
+                if (choice == 1) {
+                    assertTrue(q.updateTicketPriority(id, 1 + rnd.nextInt(5), null));
+                } else if (choice == 2) {
+                    assertTrue(q.deleteTicket(id, null));
+                    model.remove(id);
+                    //Second delete must miss
+                    assertFalse(q.deleteTicket(id, null));
+                } else {
+                    Ticket polled = q.pollTicket(null);
+                    assertEquals(polled, model.remove(polled.getTicketID()));
+                }
+            }
+            assertEquals(model.size(), q.getSize());
+        }
+
+        //Every remaining ticket is still reachable by ID
+        for (Ticket t : q.getAllTickets()) {
+            assertSame(model.get(t.getTicketID()), t);
+        }
+        //Drain and check ordering held
+        int last = Integer.MIN_VALUE;
+        while (!q.isEmpty()) {
+            Ticket t = q.pollTicket(null);
+            assertTrue(t.getPriority() >= last);
+            last = t.getPriority();
+        }
+    }
 }
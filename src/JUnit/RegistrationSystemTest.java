@@ -59,4 +59,55 @@ class RegistrationSystemTest {
         //Create another BASE account
         assertTrue(RegistrationSystem.registerUser("y","Aa1@aaaa",UserRole.END_USER,SecurityLevel.BASE));
     }
+
+    @Test
+    void loginUpgradesLegacyHashes() throws Exception {
+        try (PrintWriter pw = new PrintWriter(new FileWriter(accountsFile.toFile(), true))) {
+            pw.println("carol,END_USER,BASE,c2FsdA==$" + SecurityUtil.hashWithSalt("Aa1@aaaa", "c2FsdA=="));
+        }
+        assertFalse(LoginSystem.login("carol", "Aa1@bbbb"));
+        assertTrue(LoginSystem.login("carol", "Aa1@aaaa"));
+        User carol = AccountPersistence.loadAccountsFromFile("accounts.csv").get(0);
+        assertTrue(carol.getPasswordHash().startsWith("pbkdf2-sha256$"));
+        assertFalse(SecurityUtil.needsRehash(carol.getPasswordHash()));
+        //Same password still works against the new hash
+        SessionManager.getInstance().clearSession();
+        assertTrue(LoginSystem.login("carol", "Aa1@aaaa"));
+        SessionManager.getInstance().clearSession();
+    }
+
+    @Test
+    void directoryFollowsRegistrationsAndOutsideEdits() throws Exception {
+        assertTrue(RegistrationSystem.registerUser("Dave","Aa1@aaaa",UserRole.END_USER,SecurityLevel.BASE));
+        AccountDirectory accounts = AccountDirectory.getInstance();
+        assertEquals(1, accounts.size());
+        assertTrue(accounts.exists("dAVE"));
+        assertNotNull(accounts.find("Dave"));
+        assertNull(accounts.find("dave"), "Login names are exact");
+        assertEquals(1, AccountPersistence.loadAccountsFromFile("accounts.csv").size());
+        assertTrue(accountsCopy.toFile().exists());
+
+        //A line added to the file by hand is seen without a restart
+        String hash = SecurityUtil.generateSaltedHash("Aa1@cccc");
+        try (PrintWriter pw = new PrintWriter(new FileWriter(accountsFile.toFile(), true))) {
+            pw.println("erin,TECHNICIAN,TOPLEVEL," + hash);
+        }
+        assertTrue(accounts.exists("ERIN"));
+        assertTrue(LoginSystem.login("erin", "Aa1@cccc"));
+        SessionManager.getInstance().clearSession();
+        assertFalse(RegistrationSystem.registerUser("Erin","Aa1@aaaa",UserRole.END_USER,SecurityLevel.BASE));
+    }
+
+    @Test
+    void failedSaveDoesNotRegisterTheAccount() throws Exception {
+        //The copy cannot be written, so the registration must not count
+        AccountPersistence.setPaths(accountsFile.toString(), tmp.resolve("missing").resolve("accounts2.csv").toString());
+        assertFalse(RegistrationSystem.registerUser("frank","Aa1@aaaa",UserRole.END_USER,SecurityLevel.BASE));
+        assertFalse(AccountDirectory.getInstance().exists("frank"));
+        assertEquals(0, AccountPersistence.loadAccountsFromFile("accounts.csv").size());
+
+        AccountPersistence.setPaths(accountsFile.toString(), accountsCopy.toString());
+        assertTrue(RegistrationSystem.registerUser("frank","Aa1@aaaa",UserRole.END_USER,SecurityLevel.BASE));
+        assertTrue(AccountDirectory.getInstance().exists("frank"));
+    }
 }
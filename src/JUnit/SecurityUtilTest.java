@@ -1,11 +1,27 @@
 package JUnit;
 
+import Program.AuditLog;
+import Program.AuditVerifier;
+import Program.Durability;
 import Program.SecurityUtil;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -57,4 +73,224 @@ class SecurityUtilTest {
         String allowed = "Hello_1@test.com!";
         assertEquals(allowed, SecurityUtil.sanitizeInput(allowed));
     }
+
+    @Test
+    void failedAuditBatchReleasesSyncCallersAndTheWriterCarriesOn(@TempDir Path dir) throws Exception {
+        AuditLog audit = new AuditLog(dir, 8, false);
+        try {
+            assertTimeoutPreemptively(java.time.Duration.ofSeconds(10), () -> {
+                //No audit ID makes the writer throw in the middle of the batch
+                assertFalse(audit.log("broken", null, Durability.SYNC));
+                assertTrue(audit.log("after", "ATTEMPT", Durability.SYNC));
+                audit.flush();
+            });
+            assertEquals(1, Files.readAllLines(dir.resolve("login_attempts.logprimary.txt")).size());
+        } finally {
+            audit.close();
+        }
+        //Closed, so refused rather than queued for nobody
+        assertFalse(audit.log("late", "ATTEMPT", Durability.SYNC));
+    }
+
+    @Test
+    void auditEventsReachPrimaryAndBackupAndSyncWaitsForDisk(@TempDir Path dir) throws Exception {
+        //Tiny ring so producers have to wait for the writer
+        SecurityUtil.setAuditLog(new AuditLog(dir, 8, false));
+        try {
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                int id = t;
+                threads[t] = new Thread(() -> {
+                    for (int i = 0; i < 250; i++) {
+                        assertTrue(SecurityUtil.logEvent("event " + id + "-" + i, i % 2 == 0 ? "TCREATION" : "TUPDATE"));
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread t : threads) t.join();
+            SecurityUtil.flushAudit();
+            int total = 0;
+            for (String file : new String[]{"ticket_creations.log", "ticket_updates.log"}) {
+                List<String> primary = Files.readAllLines(dir.resolve(file + "primary.txt"));
+                assertEquals(primary, Files.readAllLines(dir.resolve(file + "backup.txt")));
+                total += primary.size();
+            }
+            assertEquals(1000, total);
+
+            //SYNC returns only once the record is in both files
+            assertTrue(SecurityUtil.logEvent("gate", "ATTEMPT", Durability.SYNC));
+            for (String suffix : new String[]{"primary.txt", "backup.txt"}) {
+                List<String> lines = Files.readAllLines(dir.resolve("login_attempts.log" + suffix));
+                assertEquals(1, lines.size());
+                assertTrue(lines.get(0).contains(",gate,"));
+            }
+        } finally {
+            SecurityUtil.setAuditLog(new AuditLog());
+        }
+    }
+
+    @Test
+    void auditStreamsRotateIntoGzipSegmentsAndReadBackInOrder(@TempDir Path dir) throws Exception {
+        AuditLog audit = new AuditLog(dir, 64, false);
+        audit.setRotation("TUPDATE", 2000, 0);
+        for (int i = 0; i < 500; i++) assertTrue(audit.log("update " + i, "TUPDATE", Durability.ASYNC));
+        audit.flush();
+
+        List<Path> archives = new ArrayList<>();
+        long archived = 0;
+        try (var files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files::iterator) {
+                String name = p.getFileName().toString();
+                if (name.startsWith("ticket_updates.logprimary.") && name.endsWith(".manifest")) {
+                    for (String line : Files.readAllLines(p)) {
+                        if (line.startsWith("records=")) archived += Long.parseLong(line.substring(8));
+                    }
+                }
+                if (name.startsWith("ticket_updates.logprimary.") && name.endsWith(".gz")) archives.add(p);
+            }
+        }
+        assertTrue(archives.size() > 3);
+        long active = Files.readAllLines(dir.resolve("ticket_updates.logprimary.txt")).size();
+        assertEquals(500, archived + active);
+        try (GZIPInputStream in = new GZIPInputStream(Files.newInputStream(archives.get(0)))) {
+            assertTrue(new String(in.readAllBytes(), StandardCharsets.UTF_8).contains(",update "));
+        }
+
+        //Readers see one stream across compressed and active files, primary and backup alike
+        for (boolean backup : new boolean[]{false, true}) {
+            try (BufferedReader r = audit.reader("TUPDATE", backup)) {
+                List<String> lines = r.lines().toList();
+                assertEquals(500, lines.size());
+                for (int i = 0; i < 500; i++) assertTrue(lines.get(i).contains(",update " + i + ","));
+            }
+        }
+
+        //Byte retention keeps the newest archives only, the active file is never touched
+        audit.setRetention("TUPDATE", 0, 1);
+        for (int i = 500; i < 600; i++) audit.log("update " + i, "TUPDATE", Durability.ASYNC);
+        audit.flush();
+        try (BufferedReader r = audit.reader("TUPDATE", false)) {
+            List<String> lines = r.lines().toList();
+            assertTrue(lines.size() < 600);
+            assertTrue(lines.get(lines.size() - 1).contains(",update 599,"));
+        }
+        audit.close();
+        assertFalse(audit.log("late", "TUPDATE", Durability.ASYNC));
+    }
+
+    @Test
+    void auditVerifierFindsTheFirstAlteredRecordAndForgedSeals(@TempDir Path dir) throws Exception {
+        AuditLog audit = new AuditLog(dir, 64, false);
+        audit.setRotation("TUPDATE", 3000, 0);
+        audit.setSealPolicy(16, 60_000);
+        for (int i = 0; i < 400; i++) audit.log("update " + i, "TUPDATE", Durability.ASYNC);
+        AuditVerifier.Report report = audit.verify(ForkJoinPool.commonPool());
+        assertTrue(report.isClean(), report.toString());
+        assertEquals(800, report.getRecords());
+        assertEquals(0, report.getUnsealed());
+        assertTrue(report.getSegments() > 4);
+
+        //Editing one archived record is pinned to that record only
+        TreeMap<Long, Path> archives = new TreeMap<>();
+        try (var files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files::iterator) {
+                String name = p.getFileName().toString();
+                if (name.startsWith("ticket_updates.logprimary.") && name.endsWith(".txt.gz")) {
+                    archives.put(Long.parseLong(name.split("\\.")[2]), p);
+                }
+            }
+        }
+        long n = archives.higherKey(archives.firstKey());
+        Path gz = archives.get(n);
+        byte[] original = Files.readAllBytes(gz);
+        List<String> lines;
+        try (GZIPInputStream in = new GZIPInputStream(Files.newInputStream(gz))) {
+            lines = new ArrayList<>(new String(in.readAllBytes(), StandardCharsets.UTF_8).lines().toList());
+        }
+        lines.set(5, lines.get(5).replace("update", "upd8te"));
+        try (GZIPOutputStream out = new GZIPOutputStream(Files.newOutputStream(gz))) {
+            for (String line : lines) out.write((line + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+        }
+        report = audit.verify(ForkJoinPool.commonPool());
+        assertEquals(1, report.getBreaks().size());
+        AuditVerifier.Break b = report.getFirstBroken();
+        assertEquals("ticket_updates.logprimary", b.getStream());
+        assertEquals(n, b.getSegment());
+        assertEquals(5, b.getLine());
+        assertEquals("record altered", b.getReason());
+
+        //A record added after an archived segment's last seal is a break, not an unsealed record
+        lines.set(5, lines.get(5).replace("upd8te", "update"));
+        lines.add(lines.get(lines.size() - 1));
+        try (GZIPOutputStream out = new GZIPOutputStream(Files.newOutputStream(gz))) {
+            for (String line : lines) out.write((line + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+        }
+        report = audit.verify(ForkJoinPool.commonPool());
+        assertEquals(0, report.getUnsealed());
+        b = report.getFirstBroken();
+        assertEquals(n, b.getSegment());
+        assertEquals(lines.size() - 1, b.getLine());
+        assertTrue(b.getReason().contains("last seal"), b.getReason());
+
+        Files.write(gz, original);
+
+        //The archive is also checked against the SHA-256 its manifest recorded
+        Path manifest = dir.resolve("ticket_updates.logprimary." + n + ".manifest");
+        String recorded = Files.readString(manifest);
+        int at = recorded.indexOf("sha256=") + "sha256=".length();
+        Files.writeString(manifest, recorded.substring(0, at) + (recorded.charAt(at) == '0' ? '1' : '0') + recorded.substring(at + 1));
+        b = audit.verify(ForkJoinPool.commonPool()).getFirstBroken();
+        assertEquals(n, b.getSegment());
+        assertEquals("archive does not match its manifest", b.getReason());
+        Files.writeString(manifest, recorded);
+
+        //A seal changed without the key no longer matches its HMAC
+        Path seal = dir.resolve("ticket_updates.logbackup." + n + ".seal");
+        byte[] seals = Files.readAllBytes(seal);
+        seals[5 + 4 + 8 + 8 + 4 + 3] ^= 1;
+        Files.write(seal, seals);
+        b = audit.verify(ForkJoinPool.commonPool()).getFirstBroken();
+        assertEquals("ticket_updates.logbackup", b.getStream());
+        assertEquals(n, b.getSegment());
+        assertEquals(0, b.getLine());
+        assertTrue(b.getReason().contains("HMAC"));
+        seals[5 + 4 + 8 + 8 + 4 + 3] ^= 1;
+        Files.write(seal, seals);
+
+        //So does a segment dropped from the middle of the history
+        long later = archives.higherKey(n);
+        Files.delete(gz);
+        Files.delete(dir.resolve("ticket_updates.logprimary." + n + ".manifest"));
+        Files.delete(dir.resolve("ticket_updates.logprimary." + n + ".seal"));
+        b = audit.verify(ForkJoinPool.commonPool()).getFirstBroken();
+        assertEquals(later, b.getSegment());
+        assertEquals(0, b.getLine());
+        audit.close();
+    }
+
+    @Test
+    void unsealedTailOfTheActiveFileIsABreakOnceOlderThanTheSealInterval(@TempDir Path dir) throws Exception {
+        AuditLog audit = new AuditLog(dir, 64, false);
+        audit.setSealPolicy(16, 60_000);
+        for (int i = 0; i < 20; i++) audit.log("update " + i, "TUPDATE", Durability.ASYNC);
+        assertTrue(audit.verify(ForkJoinPool.commonPool()).isClean());
+
+        //A record the writer has not sealed yet is only counted
+        Path active = dir.resolve("ticket_updates.logprimary.txt");
+        String fresh = LocalDateTime.now() + ",update 20,127.0.0.1,00-00-00-00-00-00,admin" + System.lineSeparator();
+        Files.writeString(active, fresh, StandardOpenOption.APPEND);
+        AuditVerifier.Report report = audit.verify(ForkJoinPool.commonPool());
+        assertTrue(report.isClean(), report.toString());
+        assertEquals(1, report.getUnsealed());
+
+        //One that should have been sealed long ago was not written by the log
+        String stale = LocalDateTime.now().minusHours(1) + ",update 21,127.0.0.1,00-00-00-00-00-00,admin" + System.lineSeparator();
+        Files.writeString(active, stale, StandardOpenOption.APPEND);
+        AuditVerifier.Break b = audit.verify(ForkJoinPool.commonPool()).getFirstBroken();
+        assertEquals("ticket_updates.logprimary", b.getStream());
+        assertEquals(-1, b.getSegment());
+        assertEquals(21, b.getLine());
+        assertEquals("unsealed record older than the seal interval", b.getReason());
+        audit.close();
+    }
 }
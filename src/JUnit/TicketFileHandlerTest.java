@@ -5,9 +5,19 @@ import Program.*;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
+import javax.crypto.spec.SecretKeySpec;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -64,4 +74,350 @@ class TicketFileHandlerTest {
         assertNotNull(q);
         assertTrue(q.isEmpty());
     }
+    @Test
+    void replayDoesNotAppendToTheLog() throws IOException {
+        SessionManager.getInstance().setCurrentUser(
+                new User("tester", "hash", UserRole.ADMIN, SecurityLevel.ADMIN)
+        );
+        Path logPath = tempDir.resolve("replay.log");
+        TicketFileHandler h = new TicketFileHandler(logPath.toString(), tempDir.resolve("s.snapshot").toString());
+        h.logAdd(new Ticket("One", "alice", 1, SecurityLevel.BASE));
+        h.logAdd(new Ticket("Two", "bob", 2, SecurityLevel.TOPLEVEL));
+        long before = java.nio.file.Files.size(logPath);
+
+        //Two restarts in a row
+        assertEquals(2, h.loadQueueFromLog().getSize());
+        assertEquals(2, h.loadQueueFromLog().getSize());
+        assertEquals(before, java.nio.file.Files.size(logPath));
+    }
+
+    @Test
+    void recoveryLoadsSnapshotThenReplaysOnlyTheTail() throws Exception {
+        SecurityUtil.init(new SecretKeySpec(new byte[16], "AES"));
+        User admin = new User("tester", "hash", UserRole.ADMIN, SecurityLevel.ADMIN);
+        SessionManager.getInstance().setCurrentUser(admin);
+        String log = tempDir.resolve("tail.log").toString();
+        String snap = tempDir.resolve("tail.snapshot").toString();
+
+        PriorityQueue q = new PriorityQueue(100, log, snap);
+        Ticket a = new Ticket("A", "alice", 3, SecurityLevel.BASE);
+        Ticket b = new Ticket("B", "bob", 4, SecurityLevel.BASE);
+        q.addTicket(a, null);
+        q.addTicket(b, null);
+        //addAll does not log, so only the snapshot knows about D
+        Ticket d = new Ticket("D", "dave", 5, SecurityLevel.BASE);
+        q.addAll(List.of(d));
+        q.saveSnapshotBinary(admin);
+
+        //After the checkpoint: one add, one update, one delete
+        Ticket c = new Ticket("C", "carol", 2, SecurityLevel.TOPLEVEL);
+        q.addTicket(c, null);
+        q.updateTicketPriority(a.getTicketID(), 1, null);
+        q.deleteTicket(b.getTicketID(), null);
+        q.flush();
+
+        TicketQueue recovered = new TicketFileHandler(log, snap).recover(QueueMode.HEAP, 100);
+        assertEquals(3, recovered.getSize());
+        assertEquals(a.getTicketID(), recovered.peek().getTicketID());
+        assertEquals(1, recovered.peek().getPriority());
+        assertEquals(Set.of(a.getTicketID(), c.getTicketID(), d.getTicketID()), ids(recovered));
+    }
+
+    @Test
+    void compactionDropsCoveredRecordsAndRecoveryStillWorks() throws Exception {
+        SecurityUtil.init(new SecretKeySpec(new byte[16], "AES"));
+        User admin = new User("tester", "hash", UserRole.ADMIN, SecurityLevel.ADMIN);
+        User tech = new User("tech", "hash", UserRole.TECHNICIAN, SecurityLevel.TOPLEVEL);
+        SessionManager.getInstance().setCurrentUser(admin);
+        String log = tempDir.resolve("compact.log").toString();
+        String snap = tempDir.resolve("compact.snapshot").toString();
+
+        PriorityQueue q = new PriorityQueue(100, log, snap);
+        for (int i = 0; i < 50; i++) q.addTicket(new Ticket("T" + i, "alice", i % 5, SecurityLevel.BASE), null);
+        q.saveSnapshotBinary(admin);
+        for (int i = 0; i < 10; i++) q.pollTicket(null);
+        q.addTicket(new Ticket("Late", "bob", 0, SecurityLevel.BASE), null);
+        long before = Files.size(Path.of(log));
+
+        assertEquals(0, q.compactLog(tech));
+        long dropped = q.compactLog(admin);
+        assertTrue(dropped > 0);
+        assertTrue(Files.size(Path.of(log)) < before);
+        assertEquals(before - dropped, Files.size(Path.of(log)));
+
+        //Appends keep working after the swap and recovery sees all of it
+        q.addTicket(new Ticket("After", "bob", 7, SecurityLevel.BASE), null);
+        q.flush();
+        TicketQueue recovered = new TicketFileHandler(log, snap).recover(QueueMode.BUCKET, 100);
+        assertEquals(ids(q), ids(recovered));
+    }
+
+    @Test
+    void groupCommitLandsEveryRecordOnceUnderEachFsyncPolicy() throws Exception {
+        for (FsyncPolicy policy : FsyncPolicy.values()) {
+            String log = tempDir.resolve("group-" + policy + ".log").toString();
+            String snap = tempDir.resolve("group-" + policy + ".snapshot").toString();
+            PriorityQueue q = new PriorityQueue(1000, log, snap);
+            q.setFsyncPolicy(policy, 5);
+
+            //Concurrent writers share group commits, every SYNC add returns only once written
+            Thread[] writers = new Thread[4];
+            for (int w = 0; w < writers.length; w++) {
+                writers[w] = new Thread(() -> {
+                    for (int i = 0; i < 50; i++) q.addTicket(new Ticket("T" + i, "alice", i % 5, SecurityLevel.BASE), null);
+                });
+                writers[w].start();
+            }
+            for (Thread w : writers) w.join();
+            q.addTicket(new Ticket("Async", "bob", 1, SecurityLevel.BASE), null, Durability.ASYNC);
+            long seq = q.committed().get();
+            assertTrue(seq >= 201);
+            assertEquals(201, new TicketFileHandler(log, snap).loadQueueFromLog().getSize());
+
+            //Closed log reopens on the next append
+            q.close();
+            q.deleteTicket(q.peek().getTicketID(), null);
+            q.close();
+            TicketQueue recovered = new TicketFileHandler(log, snap).recover(QueueMode.HEAP, 1000);
+            assertEquals(200, recovered.getSize());
+            assertEquals(ids(q), ids(recovered));
+        }
+    }
+
+    @Test
+    void fsyncSettingsParseWithAnIntervalOrFallBack() {
+        assertEquals(FsyncPolicy.INTERVAL, FsyncPolicy.parse("interval").policy);
+        assertEquals(FsyncPolicy.DEFAULT_INTERVAL_MILLIS, FsyncPolicy.parse("Interval").intervalMillis);
+        assertEquals(250, FsyncPolicy.parse(" 250 ").intervalMillis);
+        assertEquals(FsyncPolicy.PER_COMMIT, FsyncPolicy.parse("0").policy);
+        assertEquals(FsyncPolicy.NONE, FsyncPolicy.parse("none").policy);
+        //Bad values fall back instead of stopping startup
+        assertEquals(FsyncPolicy.PER_COMMIT, FsyncPolicy.parse("99999999999999999999").policy);
+        assertEquals(FsyncPolicy.PER_COMMIT, FsyncPolicy.parse("sometimes").policy);
+        assertEquals(FsyncPolicy.PER_COMMIT, FsyncPolicy.parse(null).policy);
+        //Every result is accepted by the handler
+        TicketFileHandler h = new TicketFileHandler(tempDir.resolve("policy.log").toString(), null);
+        for (String s : new String[]{"interval", "5000000000", "none", "0", "junk"}) {
+            FsyncPolicy.Setting setting = FsyncPolicy.parse(s);
+            h.setFsyncPolicy(setting.policy, setting.intervalMillis);
+        }
+    }
+
+    @Test
+    void closeStopsTheIntervalSyncThreadAndTheNextAppendRestartsIt() throws IOException {
+        SessionManager.getInstance().setCurrentUser(
+                new User("tester", "hash", UserRole.ADMIN, SecurityLevel.ADMIN)
+        );
+        long before = syncThreads(-1);
+        TicketFileHandler h = new TicketFileHandler(tempDir.resolve("sync.log").toString(), null);
+        h.setFsyncPolicy(FsyncPolicy.INTERVAL, 50);
+        assertEquals(before + 1, syncThreads(before + 1));
+        h.close();
+        assertEquals(before, syncThreads(before));
+
+        h.logAdd(new Ticket("Again", "alice", 1, SecurityLevel.BASE));
+        assertEquals(before + 1, syncThreads(before + 1));
+        h.close();
+        assertEquals(before, syncThreads(before));
+        assertEquals(1, h.readRecords().size());
+    }
+
+    //Live "ticket-log-sync" threads, given up to a second to reach expected since a cancelled timer exits on its own
+    private static long syncThreads(long expected) throws IOException {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (true) {
+            long n = Thread.getAllStackTraces().keySet().stream()
+                    .filter(t -> t.isAlive() && t.getName().equals("ticket-log-sync")).count();
+            if (n == expected || expected < 0 || System.currentTimeMillis() > deadline) return n;
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                throw new java.io.InterruptedIOException();
+            }
+        }
+    }
+
+    @Test
+    void binaryLogKeepsAnyTitleAndStopsCleanlyAtATornTail() throws IOException {
+        Path log = tempDir.resolve("torn.wal");
+        TicketFileHandler h = new TicketFileHandler(log.toString(), null);
+        Ticket odd = new Ticket("a, b; c\nd", "al;ice", 3, SecurityLevel.TOPLEVEL);
+        odd.setOwner("bo,b");
+        Ticket gone = new Ticket("Gone", "bob", 4, SecurityLevel.BASE);
+        h.logAdd(odd);
+        h.logAdd(gone);
+        long intact = Files.size(log);
+        h.logDelete(gone.getTicketID());
+
+        //Crash halfway through the DELETE record
+        byte[] bytes = Files.readAllBytes(log);
+        Files.write(log, java.util.Arrays.copyOf(bytes, bytes.length - 3));
+
+        TicketFileHandler reopened = new TicketFileHandler(log.toString(), null);
+        assertEquals(intact, Files.size(log));
+        assertTrue(Files.exists(tempDir.resolve("torn.wal.torn")));
+        PriorityQueue q = reopened.loadQueueFromLog();
+        assertEquals(2, q.getSize());
+        Ticket back = q.getAllTickets().get(0).getTicketID() == odd.getTicketID()
+                ? q.getAllTickets().get(0) : q.getAllTickets().get(1);
+        assertEquals("a, b; c\nd", back.getTitle());
+        assertEquals("al;ice", back.getCreator());
+        assertEquals("bo,b", back.getOwner());
+        assertEquals(SecurityLevel.TOPLEVEL, back.getSecurityLevel());
+
+        //New records follow the last good one
+        reopened.logDelete(gone.getTicketID());
+        assertEquals(Set.of(odd.getTicketID()), ids(new TicketFileHandler(log.toString(), null).loadQueueFromLog()));
+    }
+
+    @Test
+    void csvLogIsConvertedToBinary() throws IOException {
+        Path csv = tempDir.resolve("ticketsLog.csv");
+        Files.writeString(csv, String.join(System.lineSeparator(),
+                "2025-04-16T09:00:00,ADD,200,Email outage,bob,2,,BASE",
+                "2025-04-16T09:01:00,ADD,201,VPN,carol,3,dave,TOPLEVEL",
+                "2025-04-16 09:05,UPDATE,200,Email outage,bob,1,bob,BASE",
+                "2025-04-16T08:10:00,DELETE,201",
+                "2025-04-16T09:11:00,ADD,20") + System.lineSeparator());
+        Path wal = tempDir.resolve("tickets.wal");
+
+        assertEquals(4, TicketFileHandler.convertCsvLog(csv.toString(), wal.toString()));
+        TicketFileHandler converted = new TicketFileHandler(wal.toString(), null);
+        PriorityQueue q = converted.loadQueueFromLog();
+        assertEquals(1, q.getSize());
+        assertEquals(200, q.peek().getTicketID());
+        assertEquals(1, q.peek().getPriority());
+        assertEquals("bob", q.peek().getOwner());
+
+        //An unreadable or earlier time takes the previous record's, never 0
+        MyList<LogRecord> records = converted.readRecords();
+        long second = LocalDateTime.parse("2025-04-16T09:01:00").atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        assertEquals(second, records.get(1).getTimestamp());
+        assertEquals(second, records.get(2).getTimestamp());
+        assertEquals(second, records.get(3).getTimestamp());
+    }
+
+    @Test
+    void parallelReplayMatchesSequentialReplay() throws IOException {
+        Random rnd = new Random(17);
+        for (int round = 0; round < 6; round++) {
+            Path log = tempDir.resolve("replay-" + round + ".wal");
+            TicketFileHandler h = new TicketFileHandler(log.toString(), null);
+            List<Ticket> live = new ArrayList<>();
+            for (int i = 0; i < 2000; i++) {
+                int op = rnd.nextInt(10);
+                if (live.isEmpty() || op < 4) {
+                    Ticket t = new Ticket("T" + i + (rnd.nextBoolean() ? ", with; punctuation" : ""), "user" + rnd.nextInt(5),
+                            rnd.nextInt(9), SecurityLevel.values()[rnd.nextInt(SecurityLevel.values().length)]);
+                    live.add(t);
+                    h.logAdd(t);
+                } else if (op < 8) {
+                    Ticket t = live.get(rnd.nextInt(live.size()));
+                    t.setPriority(rnd.nextInt(9));
+                    if (rnd.nextBoolean()) t.setOwner("owner" + rnd.nextInt(3));
+                    h.logUpdate(t);
+                } else {
+                    h.logDelete(live.remove(rnd.nextInt(live.size())).getTicketID());
+                }
+            }
+            //Later rounds damage the log: a flipped byte mid-file, then a cut-off tail
+            if (round >= 2) {
+                byte[] bytes = Files.readAllBytes(log);
+                if (round % 2 == 0) bytes[bytes.length / 2 + rnd.nextInt(bytes.length / 4)] ^= 0x5A;
+                else bytes = java.util.Arrays.copyOf(bytes, bytes.length - 1 - rnd.nextInt(40));
+                Files.write(log, bytes);
+            }
+
+            //Sequential: apply records one by one
+            Map<Integer, String> expected = new HashMap<>();
+            for (LogRecord r : h.readRecords()) {
+                if (r.getOp() == LogRecord.Op.DELETE) expected.remove(r.getTicketID());
+                else expected.put(r.getTicketID(), describe(r.getTicket()));
+            }
+            for (int chunk : new int[]{64, 1000, 4096, 1 << 20}) {
+                h.setReplayChunkBytes(chunk);
+                Map<Integer, String> replayed = new HashMap<>();
+                h.loadQueueFromLog().getAllTickets().forEach(t -> replayed.put(t.getTicketID(), describe(t)));
+                assertEquals(expected, replayed, "round " + round + ", chunk " + chunk);
+            }
+        }
+    }
+
+    @Test
+    void segmentedLogRollsServesHistoryAndRetainsCoveredSegmentsOnly() throws Exception {
+        Path log = tempDir.resolve("seg.wal");
+        TicketFileHandler h = new TicketFileHandler(log.toString(), null);
+        h.setSegmentBytes(4096);
+        List<Ticket> tickets = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Ticket t = new Ticket("T" + i, "alice", i % 5, SecurityLevel.BASE);
+            tickets.add(t);
+            h.logAdd(t);
+        }
+        Random rnd = new Random(18);
+        for (int i = 0; i < 3000; i++) {
+            Ticket t = tickets.get(rnd.nextInt(tickets.size()));
+            t.setPriority(rnd.nextInt(9));
+            h.logUpdate(t);
+            if (i % 500 == 0) Thread.sleep(2);
+        }
+        h.commit();
+        long segments;
+        try (var files = Files.list(tempDir)) {
+            segments = files.filter(p -> p.getFileName().toString().endsWith(".seg")).count();
+        }
+        assertTrue(segments > 10);
+
+        //Reopened from the sidecar indexes, replay and seeks see one continuous log
+        h.close();
+        TicketFileHandler reopened = new TicketFileHandler(log.toString(), null);
+        MyList<LogRecord> all = reopened.readRecords();
+        assertEquals(3020, all.size());
+        Map<Integer, String> expected = new HashMap<>();
+        for (Ticket t : tickets) expected.put(t.getTicketID(), describe(t));
+        Map<Integer, String> replayed = new HashMap<>();
+        reopened.loadQueueFromLog().getAllTickets().forEach(t -> replayed.put(t.getTicketID(), describe(t)));
+        assertEquals(expected, replayed);
+        assertEquals(all.get(1500).getSeq(), reopened.readRecordsFrom(all.get(1500).getSeq()).get(0).getSeq());
+        assertEquals(1520, reopened.readRecordsFrom(all.get(1500).getSeq()).size());
+
+        //History matches a brute-force filter for windows across segment boundaries
+        int id = tickets.get(3).getTicketID();
+        long first = all.get(0).getTimestamp(), last = all.get(all.size() - 1).getTimestamp();
+        for (int round = 0; round < 20; round++) {
+            long from = first + (long) (rnd.nextDouble() * (last - first));
+            long to = from + rnd.nextInt(6);
+            List<Long> want = new ArrayList<>();
+            for (LogRecord r : all) {
+                if (r.getTicketID() == id && r.getTimestamp() >= from && r.getTimestamp() <= to) want.add(r.getSeq());
+            }
+            List<Long> got = new ArrayList<>();
+            for (LogRecord r : reopened.history(id, from, to)) got.add(r.getSeq());
+            assertEquals(want, got, "window " + from + ".." + to);
+        }
+
+        //Size retention only deletes segments that end before the covered position
+        long covered = reopened.logPosition() / 2;
+        reopened.setRetention(0, 1);
+        assertTrue(reopened.enforceRetention(covered) > 0);
+        MyList<LogRecord> left = reopened.readRecords();
+        assertTrue(left.size() < 3020);
+        assertEquals(3021 - left.size(), left.get(0).getSeq());
+        assertEquals(3020, left.get(left.size() - 1).getSeq());
+        //Roughly the covered half went, the segment holding the covered position stayed
+        assertTrue(left.size() > 3020 / 2 - 100 && left.size() < 3020 / 2 + 100, "kept " + left.size());
+        assertEquals(0, reopened.enforceRetention(covered));
+        assertEquals(0, reopened.enforceRetention(0));
+    }
+
+    private static String describe(Ticket t) {
+        return t.getTicketID() + "|" + t.getTitle() + "|" + t.getCreator() + "|" + t.getOwner() + "|"
+                + t.getPriority() + "|" + t.getSecurityLevel() + "|" + t.getStatus();
+    }
+
+    private static Set<Integer> ids(TicketQueue q) {
+        Set<Integer> ids = new HashSet<>();
+        q.getAllTickets().forEach(t -> ids.add(t.getTicketID()));
+        return ids;
+    }
 }
@@ -0,0 +1,672 @@
+package Program;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+//Shared locking, logging and snapshot logic for ticket queues
+//Subclasses only decide how tickets are stored, every hook is called with lock held
+//Writers take the write lock, list/search share the read lock and peek reads the head writers publish
+public abstract class AbstractTicketQueue implements TicketQueue, Serializable {
+    private static final long serialVersionUID = 1L;
+    //Used when no cap is configured
+    public static final int DEFAULT_SOFT_CAP = 10000;
+    //Auto-snapshot once the oldest unsaved admin change is this old, or this many have piled up
+    public static final long DEFAULT_SNAPSHOT_INTERVAL_MS = 2000;
+    public static final int DEFAULT_SNAPSHOT_MUTATIONS = 100;
+
+    //Multithreading ticket lock, fair so a steady stream of readers cannot starve ticket creation
+    protected final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(true);
+    //Best ticket overall, republished by every writer so peek needs no lock
+    private transient volatile Ticket head;
+    private transient volatile boolean headValid = true;
+    //Storage grows and shrinks freely, softCap only limits how many tickets are queued
+    private final int softCap;
+    //One permit per free slot, taken before the lock so waiting adders never hold it
+    private transient Semaphore slots;
+    private int size;
+    private transient TicketFileHandler fileHandler;
+    //Writes log and audit records in heap order, off the lock
+    private transient CommitStage commits;
+    //Coalesces auto-snapshots, null without a snapshot path
+    private transient Snapshotter snapshots;
+
+    private String logFilePath;
+    private String snapshotFilePath;
+
+    //Used for time stamping
+    private static final DateTimeFormatter TIMESTAMP_FMT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+
+    protected AbstractTicketQueue(int softCap,
+                                  String logFilePath,
+                                  String snapshotFilePath) {
+        if (softCap <= 0) throw new IllegalArgumentException("Soft cap must be positive");
+        this.softCap = softCap;
+        this.slots = new Semaphore(softCap, true);
+        this.size = 0;
+        this.logFilePath = logFilePath;
+        this.snapshotFilePath = snapshotFilePath;
+
+        this.fileHandler = (logFilePath != null && snapshotFilePath != null)
+                ? newFileHandler()
+                : null;
+        this.commits = new CommitStage("ticket-commit", this::commitBatch);
+        this.snapshots = newSnapshotter();
+    }
+
+    //Records are buffered by the handler and written once per commit stage batch
+    private TicketFileHandler newFileHandler() {
+        TicketFileHandler h = new TicketFileHandler(logFilePath, snapshotFilePath);
+        h.setGroupCommit(true);
+        return h;
+    }
+
+    private void commitBatch() throws IOException {
+        if (fileHandler != null) fileHandler.commit();
+    }
+
+    private Snapshotter newSnapshotter() {
+        return snapshotFilePath == null ? null : new Snapshotter("ticket-snapshot", this::writeSnapshot,
+                DEFAULT_SNAPSHOT_INTERVAL_MS, DEFAULT_SNAPSHOT_MUTATIONS);
+    }
+
+    //STORAGE HOOKS
+
+    protected abstract void insert(Ticket ticket);
+    //Bulk load, implementations with a faster build override this
+    protected void insertAll(Collection<Ticket> tickets) {
+        for (Ticket t : tickets) insert(t);
+    }
+    protected abstract boolean contains(int ticketID);
+    //Returns the changed ticket or null if not stored
+    protected abstract Ticket reprioritize(int ticketID, int newPriority);
+    protected abstract boolean remove(int ticketID);
+    //Best ticket among levels 0..maxLevel, null if none
+    protected abstract Ticket peekBest(int maxLevel);
+    protected abstract Ticket pollBest(int maxLevel);
+    //Visit every ticket in levels 0..maxLevel, any order
+    protected abstract void scan(int maxLevel, Consumer<Ticket> visitor);
+    //Every ticket, in an order that insertAll turns back into the same queue
+    protected void scanForSnapshot(Consumer<Ticket> visitor) {
+        scan(topLevel(), visitor);
+    }
+    //Append up to k best tickets of levels 0..maxLevel in priority order, without changing storage
+    protected abstract void collectTopK(int maxLevel, int k, MyArrayList<Ticket> out);
+
+    public boolean isEmpty() { return size == 0; }
+    public int getSize() { return size; }
+    public int getSoftCap() { return softCap; }
+    //Which QueueMode rebuilds this queue from a snapshot
+    public abstract QueueMode getMode();
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        slots = new Semaphore(Math.max(0, softCap - size), true);
+        if (logFilePath != null && snapshotFilePath != null) {  // recreate helper
+            this.fileHandler = newFileHandler();
+        }
+        commits = new CommitStage("ticket-commit", this::commitBatch);
+        snapshots = newSnapshotter();
+    }
+
+    //save a snapshot whenever the queue changes
+    private void autoSnapshot(User user) {
+        if (user == null || snapshots == null) return;
+        //Cannot be done if not admin, the write itself happens later on the snapshot thread
+        if (SecurityUtil.hasRequiredPrivileges(user, SecurityLevel.ADMIN)) snapshots.markDirty();
+    }
+
+    public void addTicket(Ticket ticket, User user) {
+        addTicket(ticket, user, Durability.SYNC);
+    }
+
+    public void addTicket(Ticket ticket, User user, Durability durability) {
+        //Reject straight away at the cap
+        if (!slots.tryAcquire()) throw new QueueFullException(softCap);
+        enqueue(ticket, user, durability);
+    }
+
+    //Backpressure: wait for a poll or delete to free a slot
+    public boolean offerTicket(Ticket ticket, User user, long timeout, TimeUnit unit) throws InterruptedException {
+        if (!slots.tryAcquire(timeout, unit)) return false;
+        enqueue(ticket, user, Durability.SYNC);
+        return true;
+    }
+
+    //Caller already holds a slot permit
+    private void enqueue(Ticket ticket, User user, Durability durability) {
+        CompletableFuture<Long> committed;
+        lock.writeLock().lock();
+        try {
+            boolean inserted = false;
+            try {
+                if (contains(ticket.getTicketID())) {
+                    throw new IllegalArgumentException("Ticket " + ticket.getTicketID() + " already queued");
+                }
+                insert(ticket);
+                inserted = true;
+                //Disk work happens on the commit stage once the lock is released
+                Ticket frozen = new Ticket(ticket);
+                String actor = actorName(user);
+                committed = commits.submit(() -> {
+                    if (fileHandler != null) fileHandler.logAdd(frozen);
+                    //Log user
+                    SecurityUtil.logEvent("User " + actor + " created ticket...", "TCREATION");
+                });
+            } catch (RuntimeException | Error e) {
+                //Duplicate, rejected ID or failed submit: the permit goes back or the soft cap shrinks for good
+                if (inserted) remove(ticket.getTicketID());
+                slots.release();
+                throw e;
+            }
+            size++;
+        } finally {
+            //Lock thread
+            publishHead();
+            lock.writeLock().unlock();
+        }
+        try {
+            awaitIfSync(committed, durability);
+        } finally {
+            //Marked even if the log write failed, the snapshot still picks the change up
+            autoSnapshot(user);
+        }
+    }
+
+    public boolean updateTicketPriority(int ticketID, int newPriority, User user) {
+        return updateTicketPriority(ticketID, newPriority, user, Durability.SYNC);
+    }
+
+    public boolean updateTicketPriority(int ticketID, int newPriority, User user, Durability durability) {
+        CompletableFuture<Long> committed;
+        lock.writeLock().lock();
+        try {
+            //Take found Id and inputted priority and update
+            Ticket t = reprioritize(ticketID, newPriority);
+            if (t == null) return false;
+            Ticket frozen = new Ticket(t);
+            String actor = actorName(user);
+            committed = commits.submit(() -> {
+                //Log
+                SecurityUtil.logEvent("User " + actor + " updated ticket...", "TUPDATE");
+                if (fileHandler != null) fileHandler.logUpdate(frozen);
+            });
+        } finally {
+            //Lock thread
+            publishHead();
+            lock.writeLock().unlock();
+        }
+        try {
+            awaitIfSync(committed, durability);
+        } finally {
+            autoSnapshot(user);
+        }
+        return true;
+    }
+
+    public boolean deleteTicket(int ticketID, User user) {
+        return deleteTicket(ticketID, user, Durability.SYNC);
+    }
+
+    public boolean deleteTicket(int ticketID, User user, Durability durability) {
+        CompletableFuture<Long> committed;
+        lock.writeLock().lock();
+        try {
+            if (!remove(ticketID)) return false;
+            size--;
+            slots.release();
+            String actor = actorName(user);
+            committed = commits.submit(() -> {
+                if (fileHandler != null) fileHandler.logDelete(ticketID);
+                SecurityUtil.logEvent("User " + actor + " deleted ticket...", "TDELETE");
+            });
+        } finally {
+            publishHead();
+            lock.writeLock().unlock();
+        }
+        try {
+            awaitIfSync(committed, durability);
+        } finally {
+            autoSnapshot(user);
+        }
+        return true;
+    }
+
+    //Pop the head element
+    public Ticket pollTicket(User user) {
+        return pollTicket(user, Durability.SYNC);
+    }
+
+    public Ticket pollTicket(User user, Durability durability) {
+        Ticket result;
+        CompletableFuture<Long> committed;
+        //Lock to get around corruption
+        lock.writeLock().lock();
+        try {
+            if (size == 0) return null;
+            //Best ticket among the levels the user may see
+            result = pollBest(maxLevel(user));
+            if (result == null) return null;
+            size--;
+            slots.release();
+            int id = result.getTicketID();
+            String actor = actorName(user);
+            committed = commits.submit(() -> {
+                if (fileHandler != null) fileHandler.logDelete(id);
+                SecurityUtil.logEvent("User " + actor + " deleted ticket...", "TDELETE");
+                SecurityUtil.logEvent("User " + actor + " polled ticket...", "TUPDATE");
+            });
+        } finally {
+            publishHead();
+            lock.writeLock().unlock();
+        }
+        try {
+            awaitIfSync(committed, durability);
+        } finally {
+            autoSnapshot(user);
+        }
+        return result;
+    }
+
+    /**
+     * Bulk insert for log replay and restores: one heap build, no log lines,
+     * no audit records and no snapshot. Fails as a whole on a duplicate ID or if
+     * the batch does not fit under the soft cap.
+     */
+    public void addAll(Collection<Ticket> tickets) {
+        bulkInsert(tickets, null);
+    }
+
+    /**
+     * Bulk import of new tickets: same single heap build as addAll, then every ticket
+     * is logged in one batched append with one audit record for the whole import.
+     */
+    public void importTickets(Collection<Ticket> tickets, User user) {
+        CompletableFuture<Long> committed = bulkInsert(tickets, actorName(user));
+        try {
+            awaitIfSync(committed, Durability.SYNC);
+        } finally {
+            autoSnapshot(user);
+        }
+    }
+
+    //importer is null for addAll, which commits nothing
+    private CompletableFuture<Long> bulkInsert(Collection<Ticket> tickets, String importer) {
+        int n = tickets.size();
+        if (n == 0) return CompletableFuture.completedFuture(commits.getCommittedSeq());
+        if (!slots.tryAcquire(n)) throw new QueueFullException(softCap);
+        CompletableFuture<Long> committed;
+        lock.writeLock().lock();
+        try {
+            //Check the whole batch before touching the heaps
+            MyIntMap seen = new MyIntMap(n, -1);
+            for (Ticket t : tickets) {
+                if (contains(t.getTicketID()) || seen.put(t.getTicketID(), 1) != -1) {
+                    slots.release(n);
+                    throw new IllegalArgumentException("Ticket " + t.getTicketID() + " already queued");
+                }
+            }
+            insertAll(tickets);
+            size += n;
+            if (importer == null) {
+                committed = CompletableFuture.completedFuture(commits.getCommittedSeq());
+            } else {
+                MyArrayList<Ticket> frozen = new MyArrayList<>(n);
+                for (Ticket t : tickets) frozen.add(new Ticket(t));
+                committed = commits.submit(() -> {
+                    if (fileHandler != null) fileHandler.logAddAll(frozen);
+                    SecurityUtil.logEvent("User " + importer + " imported " + n + " tickets...", "TCREATION");
+                });
+            }
+        } finally {
+            publishHead();
+            lock.writeLock().unlock();
+        }
+        return committed;
+    }
+
+    //Block until every mutation so far is on disk, used before shutdown
+    public void flush() {
+        commits.flush();
+    }
+
+    //For ASYNC callers: completes with the sequence number once every mutation so far is committed
+    public CompletableFuture<Long> committed() {
+        return commits.lastSubmitted();
+    }
+
+    //How hard commits push the log to disk, see FsyncPolicy
+    public void setFsyncPolicy(FsyncPolicy policy, long intervalMillis) {
+        if (fileHandler != null) fileHandler.setFsyncPolicy(policy, intervalMillis);
+    }
+
+    /**
+     * Sealed log segments older than maxAgeMillis, or beyond maxBytes of log, are deleted
+     * after each snapshot once both kept snapshots cover them. 0 turns a limit off.
+     */
+    public void setLogRetention(long maxAgeMillis, long maxBytes) {
+        if (fileHandler != null) fileHandler.setRetention(maxAgeMillis, maxBytes);
+    }
+
+    /**
+     * Writes any pending auto-snapshot, commits everything pending, fsyncs and closes the log
+     * channel, then stops the snapshot and commit threads. The queue stays usable, the next
+     * mutation reopens the log and starts new ones.
+     */
+    public void close() throws IOException {
+        //First, its write still goes through the commit stage
+        if (snapshots != null) snapshots.shutdown();
+        if (fileHandler == null) {
+            commits.shutdown();
+            return;
+        }
+        //On the commit thread, after every record already queued
+        try {
+            commits.submit(() -> {
+                try {
+                    fileHandler.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException u) throw u.getCause();
+            throw e;
+        } finally {
+            commits.shutdown();
+        }
+    }
+
+    private static String actorName(User user) {
+        return user != null ? user.getUsername() : "SYSTEM";
+    }
+
+    //SYNC callers wait outside the lock. The queue change stands either way, but a failed
+    //write is thrown so the caller knows it is not on disk
+    private static void awaitIfSync(CompletableFuture<Long> committed, Durability durability) {
+        if (durability != Durability.SYNC) return;
+        try {
+            committed.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            IOException io = cause instanceof UncheckedIOException u ? u.getCause()
+                    : cause instanceof IOException i ? i : new IOException(cause);
+            throw new UncheckedIOException("Ticket change was applied but not written to the log", io);
+        }
+    }
+
+    //List tickets user can access
+    public MyList<Ticket> listAccessibleTickets(User user) {
+        MyArrayList<Ticket> acc = new MyArrayList<>();
+        lock.readLock().lock();
+        try {
+            //Whole levels above the user are skipped
+            scan(maxLevel(user), acc::add);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return acc;
+    }
+
+    //k best tickets the user may see, best first, read-only walk of the heaps
+    public MyList<Ticket> topK(User user, int k) {
+        MyArrayList<Ticket> best = new MyArrayList<>(Math.max(0, Math.min(k, size)));
+        if (k <= 0) return best;
+        lock.readLock().lock();
+        try {
+            collectTopK(maxLevel(user), k, best);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return best;
+    }
+
+    public MyList<Ticket> searchAccessibleTickets(String titleQuery, User user) {
+        MyArrayList<Ticket> matches = new MyArrayList<>();
+        lock.readLock().lock();
+        try {
+            String q = titleQuery.toLowerCase();
+            scan(maxLevel(user), t -> {
+                if (t.getTitle().toLowerCase().contains(q)) matches.add(t);
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+        return matches;
+    }
+
+    //Find top of queue
+    public Ticket peek() {
+        //Optimistic read of what the last writer published
+        if (headValid) return head;
+        //Only after deserialising, before the first write
+        lock.readLock().lock();
+        try {
+            return peekBest(topLevel());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //Called by writers just before releasing the write lock
+    private void publishHead() {
+        head = peekBest(topLevel());
+        headValid = true;
+    }
+
+    //Save queue as binary to condense space
+    public void saveSnapshotBinary(User currentUser) throws Exception {
+        if (!SecurityUtil.hasRequiredPrivileges(currentUser, SecurityLevel.ADMIN)) {
+            SecurityUtil.logEvent("Unauthorized snapshot attempt by user " + currentUser.getUsername(), "TCLOSE");
+            System.out.println("ERROR: You do not have privileges to snapshot!");
+            return;
+        }
+        if (snapshots == null) return;
+
+        try {
+            //Goes through the snapshot thread so it never races an auto-snapshot for the file
+            snapshots.flush(true);
+            System.out.println("Snapshot saved to " + snapshotFilePath);
+        } finally {
+            SecurityUtil.logEvent("User " + currentUser.getUsername() + " completed snapshot.", "TCLOSE");
+        }
+    }
+
+    //Write any coalesced auto-snapshot still pending and wait for it
+    public void flushSnapshots() throws Exception {
+        if (snapshots != null) snapshots.flush(false);
+    }
+
+    public void setSnapshotPolicy(long intervalMillis, int maxMutations) {
+        if (snapshots != null) snapshots.setPolicy(intervalMillis, maxMutations);
+    }
+
+    public SnapshotMetrics getSnapshotMetrics() {
+        return snapshots == null ? SnapshotMetrics.NONE : snapshots.metrics();
+    }
+
+    //Runs on the snapshot thread only, the read lock is held just while the queue is serialised
+    private long writeSnapshot() throws Exception {
+        SnapshotCodec.Encoded plain;
+        long[] logPosition = {-1};
+        CompletableFuture<Long> marker = null;
+        lock.readLock().lock();
+        try {
+            //Turn queue into bytes, live tickets only
+            plain = SnapshotCodec.encode(this);
+            //Writers are shut out, so this lands in the log right after the last record the bytes include
+            if (fileHandler != null) marker = commits.submit(() -> logPosition[0] = fileHandler.logPosition());
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (marker != null) marker.join();
+        SnapshotCodec.setCheckpoint(plain, logPosition[0]);
+        //Encrypted chunk by chunk into a temp file, then swapped in
+        long written = SnapshotFile.write(Paths.get(snapshotFilePath), plain.bytes, plain.length);
+        SecurityUtil.setFilePermissions(snapshotFilePath);
+        if (fileHandler != null) {
+            long covered = coveredLogPosition();
+            //Deletes whole sealed segments only, on the commit thread like compaction
+            if (covered >= 0) commits.submit(() -> {
+                try {
+                    fileHandler.enforceRetention(covered);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).join();
+        }
+        return written;
+    }
+
+    //Older of the current and previous snapshot's checkpoints, -1 if neither is usable
+    private long coveredLogPosition() {
+        long keepFrom = Long.MAX_VALUE;
+        for (String path : new String[]{snapshotFilePath, snapshotFilePath + ".prev"}) {
+            if (!new File(path).exists()) continue;
+            try {
+                keepFrom = Math.min(keepFrom, readSnapshotContents(path).checkpoint);
+            } catch (Exception e) {
+                //Unreadable copies are not used by recovery either
+            }
+        }
+        return keepFrom == Long.MAX_VALUE ? -1 : keepFrom;
+    }
+
+    /**
+     * Drops log records every kept snapshot already covers (TRUNCATE_LOG, admin only).
+     * Takes a fresh snapshot first, then cuts at the older of the current and previous
+     * snapshot's checkpoints so recovery can still fall back to either. Returns bytes dropped.
+     */
+    public long compactLog(User user) throws Exception {
+        if (!FindPrivilegeLevel.checkAndLogPrivilege(user, "TRUNCATE_LOG")) {
+            System.out.println("ERROR: You do not have privileges to compact the log!");
+            return 0;
+        }
+        if (fileHandler == null || snapshots == null) return 0;
+        snapshots.flush(true);
+        long cut = coveredLogPosition();
+        if (cut < 0) return 0;
+        long[] dropped = {0};
+        //On the commit thread, so no append races the copy
+        commits.submit(() -> {
+            try {
+                dropped[0] = fileHandler.compact(cut);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).join();
+        SecurityUtil.logEvent("User " + user.getUsername() + " compacted the ticket log, dropped "
+                + dropped[0] + " bytes before position " + cut, "TCLOSE");
+        return dropped[0];
+    }
+
+    //Decrypt and parse a snapshot file in any format it has been written in
+    static SnapshotCodec.Contents readSnapshotContents(String snapshotPath) throws Exception {
+        Path snap = Paths.get(snapshotPath);
+        if (SnapshotFile.isFramed(snap)) {
+            //Decrypt and decode one chunk at a time
+            try (InputStream in = SnapshotFile.open(snap)) {
+                return SnapshotCodec.read(in);
+            }
+        }
+        //Older Base64 snapshots, the next save rewrites them framed
+        String encoded = SecurityUtil.readFileAsString(snapshotPath);
+        byte[] cipherData = Base64.getDecoder().decode(encoded.trim());
+        byte[] raw = SecurityUtil.decryptGcm(cipherData);
+        if (SnapshotCodec.isCodecFormat(raw)) return SnapshotCodec.read(new ByteArrayInputStream(raw));
+        //Snapshots from before the codec are Java serialized
+        try (ObjectInputStream ois = new LegacySnapshotInputStream(new ByteArrayInputStream(raw))) {
+            Object read = ois.readObject();
+            if (read instanceof LegacyHeapQueue old) return old.contents();
+            AbstractTicketQueue q = (AbstractTicketQueue) read;
+            SnapshotCodec.Contents c = new SnapshotCodec.Contents();
+            c.mode = q.getMode();
+            c.softCap = q.softCap;
+            if (q instanceof BucketQueue b) {
+                c.minPriority = b.getMinPriority();
+                c.maxPriority = b.getMaxPriority();
+            }
+            c.tickets = new ArrayList<>(q.size);
+            q.scanForSnapshot(c.tickets::add);
+            return c;
+        }
+    }
+
+    //PriorityQueue as it was before the per-level heaps: one Ticket[] heap and no superclass
+    private static final class LegacyHeapQueue implements Serializable {
+        private static final long serialVersionUID = 1L;
+        //Same fields as the old class, so its stream data lines up
+        private Lock lock;
+        private Ticket[] heap;
+        private int size;
+        private String logFilePath;
+        private String snapshotFilePath;
+
+        //Its capacity was a hard cap, it becomes the soft cap
+        SnapshotCodec.Contents contents() {
+            SnapshotCodec.Contents c = new SnapshotCodec.Contents();
+            c.mode = QueueMode.HEAP;
+            c.softCap = Math.max(1, heap.length);
+            c.tickets = new ArrayList<>(Arrays.asList(heap).subList(0, size));
+            return c;
+        }
+    }
+
+    //Reads an old PriorityQueue into LegacyHeapQueue, every other class as written
+    private static final class LegacySnapshotInputStream extends ObjectInputStream {
+        LegacySnapshotInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+            ObjectStreamClass desc = super.readClassDescriptor();
+            if (desc.getName().equals(PriorityQueue.class.getName()) && desc.getField("heap") != null) {
+                return ObjectStreamClass.lookup(LegacyHeapQueue.class);
+            }
+            return desc;
+        }
+    }
+
+    //Load binary file, either queue type, either format
+    protected static AbstractTicketQueue readSnapshotBinary(String snapshotPath, String logFilePath) throws Exception {
+        if (!new File(snapshotPath).exists()) {
+            System.out.println("No snapshot file found at " + snapshotPath);
+            return null;
+        }
+        AbstractTicketQueue q = readSnapshotContents(snapshotPath).toQueue(logFilePath, snapshotPath);
+        System.out.println("Successfully loaded queue from snapshot: " + snapshotPath);
+        return q;
+    }
+
+    //Highest level ordinal the user may see, null user is the system
+    protected static int maxLevel(User user) {
+        return user == null ? topLevel() : user.getSecurityLevel().ordinal();
+    }
+    protected static int topLevel() { return SecurityLevel.values().length - 1; }
+
+    public int getMaxTicketID() {
+        int[] m = {0};
+        lock.readLock().lock();
+        try { scan(topLevel(), t -> m[0] = Math.max(m[0], t.getTicketID())); } finally { lock.readLock().unlock(); }
+        return m[0];
+    } //Finds lagest ID for searching parameter
+    public MyList<Ticket> getAllTickets() {
+        MyArrayList<Ticket> list = new MyArrayList<>(); //Own list
+        lock.readLock().lock();
+        try { scan(topLevel(), list::add); //Add all into list to use
+        } finally {
+            lock.readLock().unlock();
+        } return list;
+    }
+}
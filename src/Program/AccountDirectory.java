@@ -0,0 +1,140 @@
+package Program;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every account from accounts.csv, in memory and keyed by case-folded username, so login and
+ * the duplicate check at registration are one hash lookup instead of a scan of the file.
+ * Reads go to an immutable snapshot without locking. Changes are made on a copy under the
+ * lock, written to both account files, and published only once both writes succeeded. Every
+ * lookup compares the file's size and modification time with what was loaded, so an edit made
+ * outside the program, or a different path set through AccountPersistence, is picked up by the
+ * next call.
+ */
+public final class AccountDirectory {
+    private static final String ACCOUNTS_FILE = "accounts.csv";
+    private static final String ACCOUNTS_FILE_COPY = "accounts2.csv";
+    private static final AccountDirectory INSTANCE = new AccountDirectory();
+
+    //What was loaded, from which file at which size and modification time
+    private static final class Snapshot {
+        final String path;
+        final long size, modified;
+        final Map<String, User> byName;
+
+        Snapshot(String path, long size, long modified, Map<String, User> byName) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.byName = byName;
+        }
+
+        boolean matches(String path, long size, long modified) {
+            return this.path.equals(path) && this.size == size && this.modified == modified;
+        }
+    }
+
+    private volatile Snapshot current;
+
+    private AccountDirectory() { }
+
+    public static AccountDirectory getInstance() {
+        return INSTANCE;
+    }
+
+    //Account with exactly this username, null if there is none
+    public User find(String username) {
+        User u = snapshot().byName.get(fold(username));
+        return u != null && u.getUsername().equals(username) ? u : null;
+    }
+
+    //True if the name is taken, ignoring case
+    public boolean exists(String username) {
+        return snapshot().byName.containsKey(fold(username));
+    }
+
+    public int size() {
+        return snapshot().byName.size();
+    }
+
+    //Adds and saves a new account; false if the name was taken in the meantime
+    public synchronized boolean add(User user) throws IOException {
+        Snapshot s = snapshot();
+        String key = fold(user.getUsername());
+        if (s.byName.containsKey(key)) return false;
+        Map<String, User> next = new LinkedHashMap<>(s.byName);
+        next.put(key, user);
+        save(next);
+        return true;
+    }
+
+    //Saves a changed account, e.g. a new password hash; the username stays the same
+    public synchronized void replace(User user) throws IOException {
+        Snapshot s = snapshot();
+        String key = fold(user.getUsername());
+        if (!s.byName.containsKey(key)) throw new IllegalArgumentException("No account " + user.getUsername());
+        Map<String, User> next = new LinkedHashMap<>(s.byName);
+        next.put(key, user);
+        save(next);
+    }
+
+    //Drops what is loaded so the next call reads the file again
+    public synchronized void reload() {
+        current = null;
+    }
+
+    //Current accounts, reloaded first if the file changed since
+    private Snapshot snapshot() {
+        String path = AccountPersistence.pathFor(ACCOUNTS_FILE);
+        long[] stamp = stamp(path);
+        Snapshot s = current;
+        if (s != null && s.matches(path, stamp[0], stamp[1])) return s;
+        synchronized (this) {
+            s = current;
+            if (s != null && s.matches(path, stamp[0], stamp[1])) return s;
+            Map<String, User> byName = new LinkedHashMap<>();
+            if (stamp[0] >= 0) {
+                for (User u : AccountPersistence.loadAccountsFromFile(ACCOUNTS_FILE)) byName.putIfAbsent(fold(u.getUsername()), u);
+            }
+            //The file may have changed while it was read; then the next call loads it again
+            current = s = new Snapshot(path, stamp[0], stamp[1], Collections.unmodifiableMap(byName));
+            return s;
+        }
+    }
+
+    //Writes both files and publishes the new accounts under the stamp of the file just written.
+    //The copy goes first: if either write fails nothing is published and accounts.csv is unchanged
+    private void save(Map<String, User> next) throws IOException {
+        ArrayList<User> accounts = new ArrayList<>(next.values());
+        AccountPersistence.writeAccountsToFile(accounts, ACCOUNTS_FILE_COPY);
+        AccountPersistence.writeAccountsToFile(accounts, ACCOUNTS_FILE);
+        String path = AccountPersistence.pathFor(ACCOUNTS_FILE);
+        long[] stamp = stamp(path);
+        if (stamp[0] < 0) throw new IOException("Could not write " + path);
+        current = new Snapshot(path, stamp[0], stamp[1], Collections.unmodifiableMap(next));
+    }
+
+    //Size and modification time in nanoseconds, size -1 if the file does not exist
+    private static long[] stamp(String path) {
+        try {
+            BasicFileAttributes a = Files.readAttributes(Paths.get(path), BasicFileAttributes.class);
+            return new long[]{a.size(), a.lastModifiedTime().to(TimeUnit.NANOSECONDS)};
+        } catch (IOException e) {
+            //Missing or unreadable, there are no accounts to load
+            return new long[]{-1, 0};
+        }
+    }
+
+    private static String fold(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+}
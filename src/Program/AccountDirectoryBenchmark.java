@@ -0,0 +1,79 @@
+package Program;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Account lookup cost with many accounts: the old per-login scan of accounts.csv against
+ * AccountDirectory, then whole logins through LoginSystem. Accounts get a one-iteration PBKDF2
+ * hash so the lookup, not the password check, is what gets measured.
+ * Works in a temp directory, deleted at the end.
+ * Run: java Program.AccountDirectoryBenchmark [accounts] [lookups]
+ */
+public class AccountDirectoryBenchmark {
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        Path dir = Files.createTempDirectory("accountbench");
+        Path main = dir.resolve("accounts.csv"), copy = dir.resolve("accounts2.csv");
+        AccountPersistence.setPaths(main.toString(), copy.toString());
+        SecurityUtil.setPasswordService(new PasswordService(Pbkdf2Hasher.withIterations(1)));
+        SecurityUtil.setAuditLog(new AuditLog(Files.createDirectories(dir.resolve("audit")), 1024, false));
+
+        String hash = SecurityUtil.generateSaltedHash("Aa1@aaaa");
+        List<User> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) users.add(new User("user" + i, hash, UserRole.END_USER, SecurityLevel.BASE));
+        AccountPersistence.saveAccountsToFile(users, "accounts.csv");
+        System.out.printf("%,d accounts, %.1f MB file%n", count, Files.size(main) / 1e6);
+
+        Random rnd = new Random(1);
+        String[] names = new String[lookups];
+        for (int i = 0; i < lookups; i++) names[i] = "user" + rnd.nextInt(count);
+
+        long t0 = System.nanoTime();
+        for (String n : names) scan(main, n);
+        double scanMicros = (System.nanoTime() - t0) / 1e3 / lookups;
+
+        t0 = System.nanoTime();
+        AccountDirectory accounts = AccountDirectory.getInstance();
+        accounts.size();
+        double loadMillis = (System.nanoTime() - t0) / 1e6;
+        int rounds = Math.max(lookups, 100_000);
+        t0 = System.nanoTime();
+        for (int i = 0; i < rounds; i++) accounts.find(names[i % lookups]);
+        double findMicros = (System.nanoTime() - t0) / 1e3 / rounds;
+        System.out.printf("csv scan: %,.1f us per lookup   directory: %.2f us per lookup (one file stat), %.0f ms to load%n",
+                scanMicros, findMicros, loadMillis);
+
+        t0 = System.nanoTime();
+        for (String n : names) {
+            LoginSystem.login(n, "Aa1@aaaa");
+            SessionManager.getInstance().clearSession();
+        }
+        System.out.printf("login: %.2f ms each, audit writes included%n", (System.nanoTime() - t0) / 1e6 / lookups);
+        SecurityUtil.getAuditLog().close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    //What validateUser did before: read the file until the name turns up
+    private static String scan(Path file, String username) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(file.toFile()))) {
+            String line = reader.readLine();
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
+                if (parts.length >= 4 && parts[0].equals(username)) return parts[3];
+            }
+        }
+        return null;
+    }
+}
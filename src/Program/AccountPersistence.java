@@ -2,6 +2,10 @@
 package Program;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -14,14 +18,26 @@ public class AccountPersistence {
         copyPathOverride = copy;
     }
 
+    //File actually used for one of the two account files, after any override
+    static String pathFor(String filePath) {
+        if ("accounts.csv".equals(filePath) && mainPathOverride != null) return mainPathOverride;
+        if ("accounts2.csv".equals(filePath) && copyPathOverride != null) return copyPathOverride;
+        return filePath;
+    }
+
     public static void saveAccountsToFile(List<User> accounts, String filePath) {
-        String path = filePath;
-        if ("accounts.csv".equals(filePath) && mainPathOverride != null) {
-            path = mainPathOverride;
-        } else if ("accounts2.csv".equals(filePath) && copyPathOverride != null) {
-            path = copyPathOverride;
+        try {
+            writeAccountsToFile(accounts, filePath);
+        } catch (IOException e) {
+            e.printStackTrace();
         }
-        try (FileWriter writer = new FileWriter(path)) {
+    }
+
+    //Same as saveAccountsToFile but reports failure; the old file stays whole until the new one is complete
+    public static void writeAccountsToFile(List<User> accounts, String filePath) throws IOException {
+        Path path = Paths.get(pathFor(filePath));
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileWriter writer = new FileWriter(tmp.toFile())) {
             writer.write("username,role,securityLevel,passwordHash\n");
             for (User u : accounts) {
                 writer.write(
@@ -35,17 +51,13 @@ public class AccountPersistence {
             for (User u : accounts) {
                 writer.write(u.getUsername() + "," + u.getRole() + "," + u.getSecurityLevel() + "\n");
             }
-        } catch (IOException e) {
-            e.printStackTrace();
         }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
     }
 
     public static List<User> loadAccountsFromFile(String filePath) {
-        String path = filePath;
         //main account directory
-        if ("accounts.csv".equals(filePath) && mainPathOverride != null) {
-            path = mainPathOverride;
-        }
+        String path = "accounts.csv".equals(filePath) ? pathFor(filePath) : filePath;
         List<User> accounts = new ArrayList<>();
         try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
             String line = reader.readLine(); // skip header
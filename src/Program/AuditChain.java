@@ -0,0 +1,291 @@
+package Program;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Hash chain and seals of one audit stream.
+ * Every record's leaf is SHA-256(previous leaf || record bytes), one hash per record on the
+ * write path, so each leaf commits to the whole history before it. Every so often the
+ * pending leaves are sealed: a Merkle root over them plus the chain values around them,
+ * signed with an HMAC keyed from the keystore and chained to the previous seal's HMAC.
+ * Seals sit beside their segment in "<stream>.seal" (renamed with it on rotation):
+ *   magic "TQAS", version byte, then per seal
+ *   [int bodyLen][batch no long][first line long][count int][prev leaf][prev hmac][root][last leaf]
+ *   [count 8-byte leaf prefixes][hmac], hashes 32 bytes; the HMAC covers everything before it.
+ * A seal carries what its batch needs to be checked on its own, so batches verify in parallel,
+ * and the leaf prefixes point a failed batch to its first altered record.
+ */
+final class AuditChain {
+    static final int HASH = 32;
+    static final byte[] MAGIC = {'T', 'Q', 'A', 'S'};
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = MAGIC.length + 1;
+
+    static final class Seal {
+        long batchNo, firstLine;
+        int count;
+        byte[] prevLeaf, prevHmac, root, lastLeaf, hmac;
+        long[] prefixes;
+    }
+
+    private final MessageDigest sha = sha256();
+    //Chain state after the last record written and the last seal made
+    private byte[] lastLeaf = new byte[HASH];
+    private byte[] sealedLeaf = new byte[HASH];
+    private byte[] lastHmac = new byte[HASH];
+    private long batchNo;
+    //Records in the current segment, and where the unsealed ones start
+    private long lines, pendingFirst;
+    private final List<byte[]> pending = new ArrayList<>();
+    private long oldestPendingMillis;
+    private FileChannel sealCh;
+
+    //Adds one written record
+    void append(byte[] line, int off, int len) {
+        if (pending.isEmpty()) oldestPendingMillis = System.currentTimeMillis();
+        sha.update(lastLeaf);
+        sha.update(line, off, len);
+        lastLeaf = sha.digest();
+        pending.add(lastLeaf);
+        lines++;
+    }
+
+    int pending() {
+        return pending.size();
+    }
+
+    long oldestPendingMillis() {
+        return oldestPendingMillis;
+    }
+
+    //Writes one seal over every pending record; nothing to do without pending records or a key
+    void seal(Path sealFile, byte[] key) throws IOException {
+        if (pending.isEmpty() || key == null) return;
+        Seal s = new Seal();
+        s.batchNo = batchNo + 1;
+        s.firstLine = pendingFirst;
+        s.count = pending.size();
+        s.prevLeaf = sealedLeaf;
+        s.prevHmac = lastHmac;
+        s.root = merkleRoot(sha, pending);
+        s.lastLeaf = lastLeaf;
+        s.prefixes = new long[s.count];
+        for (int i = 0; i < s.count; i++) s.prefixes[i] = prefix(pending.get(i));
+        ByteBuffer buf = encode(s, key);
+        if (sealCh == null) {
+            boolean fresh = !Files.exists(sealFile) || Files.size(sealFile) == 0;
+            sealCh = FileChannel.open(sealFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            if (fresh) sealCh.write(ByteBuffer.wrap(header()));
+        }
+        while (buf.hasRemaining()) sealCh.write(buf);
+        batchNo = s.batchNo;
+        sealedLeaf = s.lastLeaf;
+        lastHmac = s.hmac;
+        pendingFirst = lines;
+        pending.clear();
+    }
+
+    //After each seal, so a seal the writer reported does not sit only in the page cache
+    void force() throws IOException {
+        if (sealCh != null) sealCh.force(false);
+    }
+
+    //Before the segment is renamed; the chain carries on into the next one
+    void closeSegment() throws IOException {
+        if (sealCh != null) {
+            sealCh.force(true);
+            sealCh.close();
+            sealCh = null;
+        }
+        //Records left unsealed (no key yet) stay so in the closed segment
+        pending.clear();
+        lines = 0;
+        pendingFirst = 0;
+    }
+
+    void close() {
+        try {
+            if (sealCh != null) {
+                try {
+                    sealCh.force(false);
+                } finally {
+                    sealCh.close();
+                }
+            }
+        } catch (IOException ignored) {
+        }
+        sealCh = null;
+    }
+
+    /**
+     * Picks the chain up after a restart: from the last seal of the active segment, or of the
+     * newest closed one, then re-hashes the active file's records written after that seal.
+     */
+    static AuditChain resume(Path dir, String stream, List<Long> segments) throws IOException {
+        AuditChain c = new AuditChain();
+        Path activeSeal = AuditSegments.activeSeal(dir, stream);
+        Seal last = null;
+        if (Files.exists(activeSeal)) {
+            List<Seal> seals = new ArrayList<>();
+            readSeals(activeSeal, seals);
+            //A seal torn by a crash is cut off so the next one follows a whole one
+            long good = seals.isEmpty() ? 0 : HEADER_SIZE;
+            for (Seal s : seals) good += 4 + bodySize(s.count);
+            try (FileChannel ch = FileChannel.open(activeSeal, StandardOpenOption.WRITE)) {
+                if (ch.size() > good) ch.truncate(good);
+            }
+            if (!seals.isEmpty()) last = seals.get(seals.size() - 1);
+        }
+        boolean inActive = last != null;
+        for (int i = segments.size() - 1; last == null && i >= 0; i--) {
+            last = lastSeal(AuditSegments.seal(dir, stream, segments.get(i)));
+        }
+        if (last != null) {
+            c.batchNo = last.batchNo;
+            c.lastLeaf = last.lastLeaf;
+            c.sealedLeaf = last.lastLeaf;
+            c.lastHmac = last.hmac;
+        }
+        long sealedLines = inActive ? last.firstLine + last.count : 0;
+        Path active = AuditSegments.active(dir, stream);
+        if (Files.exists(active)) {
+            long[] index = {0};
+            try (InputStream in = Files.newInputStream(active)) {
+                AuditSegments.forEachLine(in, 0, (offset, line, len) -> {
+                    if (index[0]++ >= sealedLines) c.append(line, 0, len);
+                });
+            }
+            c.lines = index[0];
+        }
+        c.pendingFirst = Math.min(sealedLines, c.lines);
+        return c;
+    }
+
+    private static Seal lastSeal(Path sealFile) throws IOException {
+        if (!Files.exists(sealFile)) return null;
+        List<Seal> seals = new ArrayList<>();
+        readSeals(sealFile, seals);
+        return seals.isEmpty() ? null : seals.get(seals.size() - 1);
+    }
+
+    /**
+     * Reads every whole seal into out; returns why reading stopped early (bad header, torn
+     * entry), or null. HMACs are not checked here.
+     */
+    static String readSeals(Path sealFile, List<Seal> out) throws IOException {
+        ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(sealFile));
+        if (b.remaining() == 0) return null;
+        byte[] magic = new byte[MAGIC.length];
+        if (b.remaining() < HEADER_SIZE) return "seal file header cut short";
+        b.get(magic);
+        if (!Arrays.equals(magic, MAGIC) || b.get() != VERSION) return "not a seal file";
+        while (b.hasRemaining()) {
+            if (b.remaining() < 4) return "seal cut short";
+            int len = b.getInt();
+            int fixed = bodySize(0);
+            if (len < fixed || len > b.remaining()) return "seal cut short or bad length";
+            Seal s = new Seal();
+            s.batchNo = b.getLong();
+            s.firstLine = b.getLong();
+            s.count = b.getInt();
+            if (s.count <= 0 || len != fixed + s.count * 8L) return "bad seal record count";
+            s.prevLeaf = hash(b);
+            s.prevHmac = hash(b);
+            s.root = hash(b);
+            s.lastLeaf = hash(b);
+            s.prefixes = new long[s.count];
+            for (int i = 0; i < s.count; i++) s.prefixes[i] = b.getLong();
+            s.hmac = hash(b);
+            out.add(s);
+        }
+        return null;
+    }
+
+    private static byte[] hash(ByteBuffer b) {
+        byte[] h = new byte[HASH];
+        b.get(h);
+        return h;
+    }
+
+    static byte[] header() {
+        return ByteBuffer.allocate(HEADER_SIZE).put(MAGIC).put((byte) VERSION).array();
+    }
+
+    //Bytes of one seal after its length field
+    static int bodySize(int count) {
+        return 8 + 8 + 4 + HASH * 5 + count * 8;
+    }
+
+    //Fills in the HMAC and returns the encoded seal
+    static ByteBuffer encode(Seal s, byte[] key) {
+        int body = bodySize(s.count);
+        ByteBuffer b = ByteBuffer.allocate(4 + body);
+        b.putInt(body).putLong(s.batchNo).putLong(s.firstLine).putInt(s.count);
+        b.put(s.prevLeaf).put(s.prevHmac).put(s.root).put(s.lastLeaf);
+        for (long p : s.prefixes) b.putLong(p);
+        s.hmac = hmac(key, b.array(), b.position());
+        b.put(s.hmac).flip();
+        return b;
+    }
+
+    //HMAC the seal should carry, recomputed from its fields
+    static byte[] expectedHmac(Seal s, byte[] key) {
+        byte[] saved = s.hmac;
+        byte[] expected = encode(s, key).array();
+        s.hmac = saved;
+        return Arrays.copyOfRange(expected, expected.length - HASH, expected.length);
+    }
+
+    static byte[] hmac(byte[] key, byte[] data, int len) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            mac.update(data, 0, len);
+            return mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    //Pairs hashed level by level, an odd node out moves up as is
+    static byte[] merkleRoot(MessageDigest sha, List<byte[]> leaves) {
+        List<byte[]> level = new ArrayList<>(leaves);
+        while (level.size() > 1) {
+            List<byte[]> up = new ArrayList<>((level.size() + 1) / 2);
+            for (int i = 0; i + 1 < level.size(); i += 2) {
+                sha.update(level.get(i));
+                sha.update(level.get(i + 1));
+                up.add(sha.digest());
+            }
+            if (level.size() % 2 == 1) up.add(level.get(level.size() - 1));
+            level = up;
+        }
+        return level.get(0);
+    }
+
+    static long prefix(byte[] leaf) {
+        return ByteBuffer.wrap(leaf).getLong();
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package Program;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Index of one audit segment: for every user, the (offset, time, hash) of each of their
+ * records, in file order. Offsets are into the plain text, so a plain file is read with a
+ * seek and a gzipped one by skipping ahead without parsing lines. The hash lets primary and
+ * backup copies be compared from their indexes alone.
+ * Archived segments never change, so their index is kept in a sidecar "<stream>.<n>.aidx":
+ *   magic "TQAI", version byte, archive size, records (long), min/max millis, user count (int),
+ *   per user: name (int length + UTF-8), count (int), entries of three longs; CRC32C at the end.
+ * Plain segments are indexed in memory and extended as the file grows.
+ */
+final class AuditIndex {
+    private static final byte[] MAGIC = {'T', 'Q', 'A', 'I'};
+    private static final int VERSION = 1;
+
+    //Posting list of one user: offset, millis, hash per record
+    static final class Postings {
+        long[] entries = new long[24];
+        int count;
+
+        void add(long offset, long millis, long hash) {
+            if (count * 3 == entries.length) entries = Arrays.copyOf(entries, entries.length * 2);
+            entries[count * 3] = offset;
+            entries[count * 3 + 1] = millis;
+            entries[count * 3 + 2] = hash;
+            count++;
+        }
+
+        long offset(int i) { return entries[i * 3]; }
+        long millis(int i) { return entries[i * 3 + 1]; }
+        long hash(int i) { return entries[i * 3 + 2]; }
+    }
+
+    final Map<String, Postings> byUser = new HashMap<>();
+    long records;
+    long minMillis = Long.MAX_VALUE, maxMillis = Long.MIN_VALUE;
+    //Plain text bytes indexed so far, a plain file is only scanned from here on
+    long indexedBytes;
+
+    boolean overlaps(long fromMillis, long toMillis) {
+        return records > 0 && maxMillis >= fromMillis && minMillis <= toMillis;
+    }
+
+    //Index of an archived segment, from its sidecar or by reading it once
+    static AuditIndex ofArchive(Path dir, String stream, long n) throws IOException {
+        Path gz = AuditSegments.archived(dir, stream, n);
+        Path sidecar = AuditSegments.queryIndex(dir, stream, n);
+        long size = Files.size(gz);
+        AuditIndex idx = read(sidecar, size);
+        if (idx != null) return idx;
+        idx = new AuditIndex();
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(gz), 64 * 1024)) {
+            idx.scan(in);
+        }
+        idx.write(sidecar, size);
+        return idx;
+    }
+
+    //Indexes whatever a plain file gained since the last call
+    void extend(Path plain) throws IOException {
+        try (InputStream raw = Files.newInputStream(plain)) {
+            raw.skipNBytes(indexedBytes);
+            scan(raw);
+        }
+    }
+
+    //Only the whole lines are indexed, a line still being written is picked up next time
+    private void scan(InputStream raw) throws IOException {
+        indexedBytes = AuditSegments.forEachLine(raw, indexedBytes, this::note);
+    }
+
+    private void note(long offset, byte[] line, int len) {
+        if (len == 0) return;
+        int firstComma = -1, lastComma = -1;
+        for (int i = 0; i < len; i++) {
+            if (line[i] == ',') {
+                if (firstComma < 0) firstComma = i;
+                lastComma = i;
+            }
+        }
+        if (firstComma < 0) return;
+        long millis = AuditSegments.parseMillis(new String(line, 0, firstComma, StandardCharsets.UTF_8));
+        String user = new String(line, lastComma + 1, len - lastComma - 1, StandardCharsets.UTF_8);
+        byUser.computeIfAbsent(user, u -> new Postings()).add(offset, millis, hash(line, len));
+        records++;
+        minMillis = Math.min(minMillis, millis);
+        maxMillis = Math.max(maxMillis, millis);
+    }
+
+    //CRC32C and length, enough to tell two copies of a line apart
+    static long hash(byte[] line, int len) {
+        CRC32C crc = new CRC32C();
+        crc.update(line, 0, len);
+        return crc.getValue() << 32 | len;
+    }
+
+    private void write(Path sidecar, long archiveSize) throws IOException {
+        int bytes = MAGIC.length + 1 + 8 * 4 + 4 + 4;
+        for (Map.Entry<String, Postings> e : byUser.entrySet()) {
+            bytes += 8 + e.getKey().getBytes(StandardCharsets.UTF_8).length + e.getValue().count * 24;
+        }
+        ByteBuffer b = ByteBuffer.allocate(bytes);
+        b.put(MAGIC).put((byte) VERSION).putLong(archiveSize).putLong(records).putLong(minMillis).putLong(maxMillis);
+        b.putInt(byUser.size());
+        for (Map.Entry<String, Postings> e : byUser.entrySet()) {
+            byte[] name = e.getKey().getBytes(StandardCharsets.UTF_8);
+            Postings p = e.getValue();
+            b.putInt(name.length).put(name).putInt(p.count);
+            for (int i = 0; i < p.count * 3; i++) b.putLong(p.entries[i]);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(b.array(), 0, b.position());
+        b.putInt((int) crc.getValue());
+        Path temp = sidecar.resolveSibling(sidecar.getFileName() + ".temp");
+        Files.write(temp, b.array());
+        Files.move(temp, sidecar, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    //Null when missing, damaged or written for a different archive
+    private static AuditIndex read(Path sidecar, long archiveSize) {
+        if (!Files.exists(sidecar)) return null;
+        try {
+            ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(sidecar));
+            if (b.remaining() < MAGIC.length + 1 + 8 * 4 + 4 + 4) return null;
+            CRC32C crc = new CRC32C();
+            crc.update(b.array(), 0, b.limit() - 4);
+            if ((int) crc.getValue() != b.getInt(b.limit() - 4)) return null;
+            byte[] magic = new byte[MAGIC.length];
+            b.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || b.get() != VERSION || b.getLong() != archiveSize) return null;
+            AuditIndex idx = new AuditIndex();
+            idx.records = b.getLong();
+            idx.minMillis = b.getLong();
+            idx.maxMillis = b.getLong();
+            int users = b.getInt();
+            for (int u = 0; u < users; u++) {
+                byte[] name = new byte[b.getInt()];
+                b.get(name);
+                Postings p = new Postings();
+                p.count = b.getInt();
+                p.entries = new long[Math.max(24, p.count * 3)];
+                for (int i = 0; i < p.count * 3; i++) p.entries[i] = b.getLong();
+                idx.byUser.put(new String(name, StandardCharsets.UTF_8), p);
+            }
+            return idx;
+        } catch (RuntimeException | IOException e) {
+            return null;
+        }
+    }
+}
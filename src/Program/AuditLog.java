@@ -0,0 +1,564 @@
+package Program;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asynchronous audit writer behind SecurityUtil.logEvent.
+ * Callers only take a timestamp and the session user and put the event on a bounded ring
+ * buffer; one daemon thread drains whatever has piled up, groups it per audit file and
+ * writes each group to the primary and backup file in one write apiece through channels
+ * kept open between batches. Host IP and MAC are resolved on that thread and cached for REFRESH_MILLIS.
+ * A full buffer makes callers wait rather than drop events. SYNC events return only once
+ * their batch is written and forced to both files, which is what login and registration
+ * gate on; ASYNC events return as soon as they are queued. A batch that fails in any way
+ * completes its SYNC events with false; should the writer thread end, everyone waiting on it
+ * is released and later events are refused.
+ * Every stream (one audit file, primary or backup) is rotated once its active file passes
+ * a size or its first record an age. The closed segment is gzipped with a manifest on a
+ * separate archiver thread and old archives are deleted by per-stream retention, see
+ * AuditSegments for the layout. reader() reads a stream across all of it.
+ * Each stream is also hash-chained and sealed every sealEvery records or sealMillis, see
+ * AuditChain; verify() checks every segment in parallel and points to the first bad record.
+ */
+public final class AuditLog {
+    static final int DEFAULT_CAPACITY = 4096;
+    //How long a resolved host identity is trusted before the writer looks it up again
+    static final long REFRESH_MILLIS = 5 * 60 * 1000;
+    static final long DEFAULT_ROTATE_BYTES = 16L * 1024 * 1024;
+    static final long DEFAULT_ROTATE_MILLIS = 24L * 60 * 60 * 1000;
+    static final int DEFAULT_SEAL_RECORDS = 1024;
+    static final long DEFAULT_SEAL_MILLIS = 1000;
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+
+    private final Path dir;
+    private final boolean echo;
+
+    //Ring buffer, guarded by this
+    private final Event[] ring;
+    private int head, count;
+    private long queued, written;
+    private boolean closed;
+    //The writer thread has ended, by close or by failing; nothing queued from now on would be written
+    private boolean writerGone;
+    //Seal requests made and served, see sealNow
+    private long sealRequests, sealsDone;
+    private volatile int sealEvery = DEFAULT_SEAL_RECORDS;
+    private volatile long sealMillis = DEFAULT_SEAL_MILLIS;
+
+    //Writer thread only: open primary/backup files per audit file
+    private final Map<String, Stream[]> streams = new HashMap<>();
+    //Rotation and retention per audit file name, "" holds the default; {rotateBytes, rotateMillis, keepMillis, keepBytes}
+    private final Map<String, long[]> policies = new ConcurrentHashMap<>();
+    private final ExecutorService archiver = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "audit-archiver");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Thread writer;
+    private String ip = "UNKNOWN_IP", mac = "UNKNOWN_MAC";
+    private long resolvedAt = Long.MIN_VALUE;
+    //Writer thread only: some stream has records waiting for a seal
+    private boolean unsealed;
+
+    private static final class Event {
+        final String timestamp, details, logID, user;
+        //Only SYNC events carry one
+        final CompletableFuture<Boolean> done;
+
+        Event(String timestamp, String details, String logID, String user, CompletableFuture<Boolean> done) {
+            this.timestamp = timestamp;
+            this.details = details;
+            this.logID = logID;
+            this.user = user;
+            this.done = done;
+        }
+    }
+
+    //One open audit file
+    private static final class Stream {
+        final String name;
+        FileChannel ch;
+        long bytes;
+        long firstMillis;
+        long nextSegment;
+        AuditChain chain;
+
+        Stream(String name) {
+            this.name = name;
+        }
+    }
+
+    //Audit files in the working directory, echoed to stdout as before
+    public AuditLog() {
+        this(Path.of(""), DEFAULT_CAPACITY, true);
+    }
+
+    public AuditLog(Path dir, int capacity, boolean echo) {
+        if (capacity < 1) throw new IllegalArgumentException("Audit buffer capacity must be positive");
+        this.dir = dir;
+        this.echo = echo;
+        this.ring = new Event[capacity];
+        policies.put("", new long[]{DEFAULT_ROTATE_BYTES, DEFAULT_ROTATE_MILLIS, 0, 0});
+        writer = new Thread(this::drain, "audit-writer");
+        writer.setDaemon(true); //close() is how callers make sure nothing is lost
+        writer.start();
+    }
+
+    /**
+     * Queues one event. ASYNC returns true once it is buffered; SYNC waits until it is
+     * forced to both the primary and backup file and returns whether that worked.
+     */
+    public boolean log(String details, String logID, Durability durability) {
+        String timestamp = LocalDateTime.now().format(TIME);
+        //Session is read now, it may have changed by the time the writer gets to it
+        String user = Optional.ofNullable(SessionManager.getInstance().getCurrentUser())
+                .map(User::getUsername).orElse("anonymous");
+        CompletableFuture<Boolean> done = durability == Durability.SYNC ? new CompletableFuture<>() : null;
+        Event e = new Event(timestamp, details, logID, user, done);
+        synchronized (this) {
+            while (count == ring.length && !closed && !writerGone) {
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            if (closed || writerGone) return false;
+            ring[(head + count) % ring.length] = e;
+            count++;
+            queued++;
+            notifyAll();
+        }
+        return done == null || done.join();
+    }
+
+    /**
+     * Rotation for one audit ID's files, or for every file without its own setting when
+     * logID is null: the active file is closed once it holds maxBytes or its first record
+     * is maxAgeMillis old. 0 turns a trigger off.
+     */
+    public void setRotation(String logID, long maxBytes, long maxAgeMillis) {
+        if (maxBytes < 0 || maxAgeMillis < 0) throw new IllegalArgumentException("Rotation limits cannot be negative");
+        policies.compute(key(logID), (k, p) -> {
+            long[] q = (p == null ? policies.get("") : p).clone();
+            q[0] = maxBytes;
+            q[1] = maxAgeMillis;
+            return q;
+        });
+    }
+
+    /**
+     * Retention for one audit ID's archived segments, or the default when logID is null:
+     * archives whose newest record is older than maxAgeMillis, or beyond maxBytes compressed,
+     * are deleted after each rotation. 0 turns a limit off; the active file is never deleted.
+     */
+    public void setRetention(String logID, long maxAgeMillis, long maxBytes) {
+        if (maxBytes < 0 || maxAgeMillis < 0) throw new IllegalArgumentException("Retention limits cannot be negative");
+        policies.compute(key(logID), (k, p) -> {
+            long[] q = (p == null ? policies.get("") : p).clone();
+            q[2] = maxAgeMillis;
+            q[3] = maxBytes;
+            return q;
+        });
+    }
+
+    private static String key(String logID) {
+        return logID == null ? "" : FindAuditID.getAuditLogFileName(logID);
+    }
+
+    private long[] policyFor(String fileName) {
+        long[] p = policies.get(fileName);
+        return p != null ? p : policies.get("");
+    }
+
+    //A seal is written once a stream has everyRecords unsealed records or the oldest is everyMillis old
+    public void setSealPolicy(int everyRecords, long everyMillis) {
+        if (everyRecords < 1 || everyMillis < 0) throw new IllegalArgumentException("Invalid seal policy");
+        sealEvery = everyRecords;
+        sealMillis = everyMillis;
+    }
+
+    //Writes everything queued so far and seals every stream up to its last record
+    public void sealNow() {
+        flushWrites();
+        synchronized (this) {
+            if (closed) return;
+            long want = ++sealRequests;
+            notifyAll();
+            while (sealsDone < want && !writerGone) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks every audit stream's hash chain and seals, all segments in parallel on pool.
+     * Everything queued is written and sealed first, so a clean report covers every record;
+     * an active file still ending in unsealed records older than the seal interval is a break.
+     */
+    public AuditVerifier.Report verify(ForkJoinPool pool) throws IOException {
+        //Anything logged before now is sealed below, later records are young enough to be left unsealed
+        long staleBefore = System.currentTimeMillis() - sealMillis;
+        sealNow();
+        flush();
+        return AuditVerifier.verify(dir, SecurityUtil.auditSealKey(), staleBefore, pool);
+    }
+
+    //Directory the audit files live in
+    Path dir() {
+        return dir;
+    }
+
+    /**
+     * Every record of one audit ID's primary (or backup) stream, oldest first, read through
+     * archived, closed and active files as one text stream. Flushes first.
+     */
+    public BufferedReader reader(String logID, boolean backup) throws IOException {
+        flush();
+        return AuditSegments.open(dir, FindAuditID.getAuditLogFileName(logID) + (backup ? "backup" : "primary"));
+    }
+
+    //Wait until every event queued so far is written, and every segment closed so far archived
+    public void flush() {
+        flushWrites();
+        try {
+            archiver.submit(() -> {}).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | RejectedExecutionException ignored) {
+            //Nothing to wait for
+        }
+    }
+
+    private void flushWrites() {
+        synchronized (this) {
+            long want = queued;
+            while (written < want && !writerGone) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    //Flushes, then waits for the writer to seal and close the files and the archiver to finish; later events are refused
+    public void close() {
+        flush();
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            if (Thread.currentThread() != writer) writer.join();
+            archiver.shutdown();
+            archiver.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        Event[] batch = new Event[ring.length];
+        try {
+            drainBatches(batch);
+        } catch (Throwable e) {
+            System.err.println("Audit writer stopped: " + e);
+        } finally {
+            writerStopped();
+        }
+    }
+
+    private void drainBatches(Event[] batch) {
+        while (true) {
+            int n;
+            boolean sealAll;
+            long served;
+            synchronized (this) {
+                if (count == 0 && !closed && sealsDone == sealRequests) {
+                    try {
+                        //With unsealed records, wake up in time to seal them even if nothing else comes
+                        wait(unsealed ? Math.max(1, sealMillis) : 0);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (count == 0 && closed) {
+                    sealStreams(true);
+                    closeStreams();
+                    return;
+                }
+                served = sealRequests;
+                sealAll = sealsDone < served;
+                //Take everything buffered in one go, callers blocked on a full ring can carry on
+                n = count;
+                for (int i = 0; i < n; i++) {
+                    batch[i] = ring[head];
+                    ring[head] = null;
+                    head = (head + 1) % ring.length;
+                }
+                count = 0;
+                notifyAll();
+            }
+            Set<String> failed = null;
+            try {
+                if (n > 0) failed = write(batch, n);
+                sealStreams(sealAll);
+            } catch (Throwable e) {
+                //Errors too, or SYNC callers wait forever; streams are resumed from disk by the next batch
+                System.err.println("Audit batch failed: " + e);
+                closeStreams();
+            }
+            for (int i = 0; i < n; i++) {
+                if (batch[i].done != null) batch[i].done.complete(failed != null && !failed.contains(batch[i].logID));
+                batch[i] = null;
+            }
+            synchronized (this) {
+                written += n;
+                if (sealAll) sealsDone = served;
+                notifyAll();
+            }
+        }
+    }
+
+    //However the writer ends, nobody is left waiting on it and later events are refused
+    private void writerStopped() {
+        synchronized (this) {
+            writerGone = true;
+            for (; count > 0; count--) {
+                Event e = ring[head];
+                ring[head] = null;
+                head = (head + 1) % ring.length;
+                if (e.done != null) e.done.complete(false);
+            }
+            written = queued;
+            sealsDone = sealRequests;
+            notifyAll();
+        }
+        try {
+            closeStreams();
+        } catch (Throwable ignored) {
+            //Already closed, or failing the same way again
+        }
+    }
+
+    //Seals streams whose unsealed records are due, or all of them
+    private void sealStreams(boolean all) {
+        byte[] key = SecurityUtil.auditSealKey();
+        long now = System.currentTimeMillis();
+        unsealed = false;
+        for (Map.Entry<String, Stream[]> e : streams.entrySet()) {
+            for (Stream st : e.getValue()) {
+                AuditChain c = st.chain;
+                if (c.pending() == 0 || key == null) continue;
+                if (all || c.pending() >= sealEvery || now - c.oldestPendingMillis() >= sealMillis) {
+                    try {
+                        c.seal(AuditSegments.activeSeal(dir, st.name), key);
+                        c.force();
+                    } catch (IOException ex) {
+                        //Tried again on the next pass, the records stay pending
+                        System.err.println("Sealing audit stream " + st.name + " failed: " + ex.getMessage());
+                    }
+                }
+                unsealed |= c.pending() > 0;
+            }
+        }
+    }
+
+    //One append per file per batch, forced only when a SYNC caller is waiting; returns the log IDs that failed
+    private Set<String> write(Event[] batch, int n) {
+        refreshHostIdentity();
+        Map<String, StringBuilder> byFile = new HashMap<>();
+        Map<String, String> fileOf = new HashMap<>();
+        boolean force = false;
+        StringBuilder echoed = echo ? new StringBuilder() : null;
+        for (int i = 0; i < n; i++) {
+            Event e = batch[i];
+            String record = String.join(",", e.timestamp, e.details, ip, mac, e.user);
+            if (echoed != null) echoed.append("[AUDIT] ").append(record).append(System.lineSeparator());
+            String file = fileOf.computeIfAbsent(e.logID, FindAuditID::getAuditLogFileName);
+            byFile.computeIfAbsent(file, k -> new StringBuilder()).append(record).append(System.lineSeparator());
+            force |= e.done != null;
+        }
+        if (echoed != null) System.out.print(echoed);
+        Set<String> failedFiles = new HashSet<>();
+        for (Map.Entry<String, StringBuilder> group : byFile.entrySet()) {
+            byte[] bytes = group.getValue().toString().getBytes(StandardCharsets.UTF_8);
+            try {
+                Stream[] pair = streamsFor(group.getKey());
+                for (Stream st : pair) {
+                    if (dueForRotation(st, policyFor(group.getKey()))) rotate(st, group.getKey());
+                    if (st.ch == null) open(st);
+                    ByteBuffer buf = ByteBuffer.wrap(bytes);
+                    while (buf.hasRemaining()) st.ch.write(buf);
+                    st.bytes += bytes.length;
+                    chain(st.chain, bytes);
+                }
+                if (force) for (Stream st : pair) st.ch.force(false);
+            } catch (IOException e) {
+                e.printStackTrace();
+                //Reopened by the next batch
+                closeStreams(group.getKey());
+                failedFiles.add(group.getKey());
+            }
+        }
+        Set<String> failed = new HashSet<>();
+        for (Map.Entry<String, String> id : fileOf.entrySet()) {
+            if (failedFiles.contains(id.getValue())) failed.add(id.getKey());
+        }
+        return failed;
+    }
+
+    //One chain hash per record just written
+    private static void chain(AuditChain chain, byte[] bytes) {
+        int start = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != '\n') continue;
+            int end = i > start && bytes[i - 1] == '\r' ? i - 1 : i;
+            chain.append(bytes, start, end - start);
+            start = i + 1;
+        }
+    }
+
+    private Stream[] streamsFor(String fileName) throws IOException {
+        Stream[] pair = streams.get(fileName);
+        if (pair == null) {
+            pair = new Stream[]{new Stream(fileName + "primary"), new Stream(fileName + "backup")};
+            for (Stream st : pair) {
+                List<Long> segments = AuditSegments.segments(dir, st.name);
+                st.nextSegment = segments.isEmpty() ? 1 : segments.get(segments.size() - 1) + 1;
+                st.chain = AuditChain.resume(dir, st.name, segments);
+                //Segments closed before a restart that never got archived
+                for (long n : segments) {
+                    if (Files.exists(AuditSegments.closed(dir, st.name, n))) archiveLater(st.name, n, fileName);
+                }
+            }
+            streams.put(fileName, pair);
+        }
+        return pair;
+    }
+
+    private void open(Stream st) throws IOException {
+        Path file = AuditSegments.active(dir, st.name);
+        st.ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        st.bytes = st.ch.size();
+        st.firstMillis = st.bytes == 0 ? System.currentTimeMillis()
+                : AuditSegments.firstRecordMillis(file, System.currentTimeMillis());
+    }
+
+    private boolean dueForRotation(Stream st, long[] policy) throws IOException {
+        if (st.ch == null) open(st);
+        if (st.bytes == 0) return false;
+        return policy[0] > 0 && st.bytes >= policy[0]
+                || policy[1] > 0 && System.currentTimeMillis() - st.firstMillis >= policy[1];
+    }
+
+    //Seals and closes the active file under the next segment number and hands it to the archiver
+    private void rotate(Stream st, String fileName) throws IOException {
+        st.chain.seal(AuditSegments.activeSeal(dir, st.name), SecurityUtil.auditSealKey());
+        st.chain.closeSegment();
+        st.ch.force(true);
+        st.ch.close();
+        st.ch = null;
+        long n = st.nextSegment++;
+        Files.move(AuditSegments.active(dir, st.name), AuditSegments.closed(dir, st.name, n),
+                StandardCopyOption.ATOMIC_MOVE);
+        //A crash before this leaves the segment without seals, which verify() reports
+        Path seals = AuditSegments.activeSeal(dir, st.name);
+        if (Files.exists(seals)) Files.move(seals, AuditSegments.seal(dir, st.name, n), StandardCopyOption.ATOMIC_MOVE);
+        archiveLater(st.name, n, fileName);
+    }
+
+    //Compression and retention stay off the writer thread
+    private void archiveLater(String stream, long n, String fileName) {
+        try {
+            archiver.execute(() -> {
+                try {
+                    AuditSegments.archive(dir, stream, n);
+                    long[] policy = policyFor(fileName);
+                    AuditSegments.enforceRetention(dir, stream, policy[2], policy[3]);
+                } catch (IOException e) {
+                    //The plain segment stays and is still read, the next start tries again
+                    System.err.println("Archiving audit segment " + stream + "." + n + " failed: " + e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //Closing, the next start archives it
+        }
+    }
+
+    private void closeStreams(String fileName) {
+        Stream[] pair = streams.remove(fileName);
+        if (pair == null) return;
+        for (Stream st : pair) {
+            if (st.chain != null) st.chain.close();
+            if (st.ch == null) continue;
+            try {
+                st.ch.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void closeStreams() {
+        for (String fileName : streams.keySet().toArray(new String[0])) closeStreams(fileName);
+    }
+
+    //The lookups can take a while (DNS, interface scan), so they are done here and cached
+    private void refreshHostIdentity() {
+        long now = System.currentTimeMillis();
+        if (resolvedAt != Long.MIN_VALUE && now - resolvedAt < REFRESH_MILLIS) return;
+        resolvedAt = now;
+        try {
+            InetAddress local = InetAddress.getLocalHost();
+            ip = local.getHostAddress();
+            mac = macOf(NetworkInterface.getByInetAddress(local));
+        } catch (Exception e) {
+            ip = "UNKNOWN_IP";
+            mac = "UNKNOWN_MAC";
+        }
+    }
+
+    static String macOf(NetworkInterface ni) throws IOException {
+        if (ni == null) return "UNKNOWN_MAC";
+        byte[] mac = ni.getHardwareAddress();
+        if (mac == null) return "UNKNOWN_MAC";
+        StringBuilder sb = new StringBuilder();
+        for (byte b : mac) sb.append(String.format("%02X", b));
+        return sb.toString();
+    }
+}
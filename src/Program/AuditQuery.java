@@ -0,0 +1,33 @@
+package Program;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * What to look for in the audit logs: any of some audit IDs (all streams when none are given),
+ * one username (any when null) and a time window in epoch millis, both ends inclusive.
+ * E.g. new AuditQuery().logID("TDELETE").user("alice").between(t1, t2)
+ */
+public final class AuditQuery {
+    final Set<String> logIDs = new LinkedHashSet<>();
+    String username;
+    long fromMillis = Long.MIN_VALUE;
+    long toMillis = Long.MAX_VALUE;
+
+    public AuditQuery logID(String logID) {
+        logIDs.add(logID);
+        return this;
+    }
+
+    public AuditQuery user(String username) {
+        this.username = username;
+        return this;
+    }
+
+    public AuditQuery between(long fromMillis, long toMillis) {
+        if (fromMillis > toMillis) throw new IllegalArgumentException("Empty time window");
+        this.fromMillis = fromMillis;
+        this.toMillis = toMillis;
+        return this;
+    }
+}
@@ -0,0 +1,394 @@
+package Program;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the audit logs back for VIEW_AUDIT_LOG.
+ * Matches are found from the per-segment indexes (AuditIndex) alone: segments outside the
+ * time window are skipped, and inside one only the asked-for user's postings are looked at.
+ * Primary and backup copies are merged by (time, line hash) so each record is returned once,
+ * flagged when only one copy has it. Results come in time order a page at a time; only the
+ * lines on the requested page are read from disk, by seek or, for gzipped segments, by
+ * skipping ahead without parsing. A cursor names its record by time, file, line hash and
+ * how many identical records came before it that millisecond, so it still points at the
+ * same record after the active file is rotated into a numbered segment.
+ */
+public final class AuditQueryEngine {
+    private static final Comparator<Hit> ORDER = Comparator.comparingLong((Hit h) -> h.millis)
+            .thenComparing(h -> h.logFile).thenComparingLong(h -> h.segment).thenComparingLong(h -> h.offset)
+            .thenComparing(h -> h.copy);
+
+    private final AuditLog log;
+    private final Path dir;
+    //Plain files change, so their index is kept with the file's identity and extended as it grows
+    private final Map<Path, PlainIndex> plainIndexes = new HashMap<>();
+    private final Map<Path, AuditIndex> archiveIndexes = new HashMap<>();
+
+    private static final class PlainIndex {
+        final Object fileKey;
+        final AuditIndex index = new AuditIndex();
+
+        PlainIndex(Object fileKey) {
+            this.fileKey = fileKey;
+        }
+    }
+
+    //One match in one copy; segment is Long.MAX_VALUE for the active file
+    private static final class Hit {
+        final String logFile, copy;
+        final Path file;
+        final boolean gz;
+        final long segment, offset, millis, hash;
+        boolean inPrimary, inBackup;
+        //Earlier hits with the same time, file, hash and copy
+        int occurrence;
+
+        Hit(String logFile, String copy, Path file, boolean gz, long segment, long offset, long millis, long hash) {
+            this.logFile = logFile;
+            this.copy = copy;
+            this.file = file;
+            this.gz = gz;
+            this.segment = segment;
+            this.offset = offset;
+            this.millis = millis;
+            this.hash = hash;
+        }
+
+        String cursor() {
+            return millis + ":" + logFile + ":" + hash + ":" + copy + ":" + occurrence;
+        }
+
+        boolean sameMoment(Hit o) {
+            return millis == o.millis && logFile.equals(o.logFile);
+        }
+
+        boolean sameRecord(Hit o) {
+            return sameMoment(o) && hash == o.hash && copy.equals(o.copy);
+        }
+    }
+
+    //One page of results and where the next one starts
+    public static final class Page {
+        private final List<AuditRecord> records;
+        private final String nextCursor;
+        private final int totalMatches;
+        private final int diverged;
+
+        Page(List<AuditRecord> records, String nextCursor, int totalMatches, int diverged) {
+            this.records = records;
+            this.nextCursor = nextCursor;
+            this.totalMatches = totalMatches;
+            this.diverged = diverged;
+        }
+
+        public List<AuditRecord> getRecords() { return records; }
+        //Pass to the next query call, null once everything was returned
+        public String getNextCursor() { return nextCursor; }
+        //Matches over the whole query, not just this page
+        public int getTotalMatches() { return totalMatches; }
+        //Of those, how many only one copy holds
+        public int getDiverged() { return diverged; }
+    }
+
+    public AuditQueryEngine(AuditLog log) {
+        this.log = log;
+        this.dir = log.dir();
+    }
+
+    /**
+     * Up to pageSize records matching the query, oldest first, after cursor (null for the
+     * first page). Admin only (VIEW_AUDIT_LOG); a denied user gets an empty page.
+     */
+    public synchronized Page query(User user, AuditQuery q, String cursor, int pageSize) throws IOException {
+        if (pageSize < 1) throw new IllegalArgumentException("Page size must be positive");
+        if (!FindPrivilegeLevel.checkAndLogPrivilege(user, "VIEW_AUDIT_LOG")) {
+            System.out.println("ERROR: You do not have privileges to view the audit log!");
+            return new Page(List.of(), null, 0, 0);
+        }
+        log.flush();
+        //A file can rotate between indexing and reading, the hash check notices and the query reruns
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return run(q, cursor, pageSize);
+            } catch (StaleIndexException e) {
+                plainIndexes.clear();
+                if (attempt == 2) throw new IOException("Audit files kept changing while being read", e);
+            }
+        }
+    }
+
+    private static final class StaleIndexException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        StaleIndexException(String message) {
+            super(message);
+        }
+    }
+
+    private Page run(AuditQuery q, String cursor, int pageSize) throws IOException {
+        List<Hit> merged = new ArrayList<>();
+        for (String logFile : logFiles(q)) {
+            merged.addAll(merge(hits(logFile, "primary", q), hits(logFile, "backup", q)));
+        }
+        merged.sort(ORDER);
+        int diverged = 0;
+        for (int i = 0; i < merged.size(); i++) {
+            Hit h = merged.get(i);
+            if (h.inPrimary != h.inBackup) diverged++;
+            for (int j = i - 1; j >= 0 && merged.get(j).sameMoment(h); j--) {
+                if (merged.get(j).sameRecord(h)) {
+                    h.occurrence = merged.get(j).occurrence + 1;
+                    break;
+                }
+            }
+        }
+
+        int start = cursor == null ? 0 : after(merged, cursor);
+        int end = Math.min(merged.size(), start + pageSize);
+        List<Hit> page = merged.subList(start, end);
+        String[] lines = read(page);
+        List<AuditRecord> records = new ArrayList<>(page.size());
+        for (int i = 0; i < page.size(); i++) {
+            Hit h = page.get(i);
+            records.add(new AuditRecord(h.logFile, lines[i], h.inPrimary, h.inBackup));
+        }
+        String next = end < merged.size() ? merged.get(end - 1).cursor() : null;
+        return new Page(records, next, merged.size(), diverged);
+    }
+
+    //Audit files asked for, or every one that has files in the directory
+    private List<String> logFiles(AuditQuery q) throws IOException {
+        TreeSet<String> files = new TreeSet<>();
+        if (!q.logIDs.isEmpty()) {
+            for (String id : q.logIDs) files.add(FindAuditID.getAuditLogFileName(id));
+            return new ArrayList<>(files);
+        }
+        try (Stream<Path> all = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) all::iterator) {
+                String name = p.getFileName().toString();
+                int at = name.indexOf("primary.");
+                if (at < 0) at = name.indexOf("backup.");
+                if (at > 0) files.add(name.substring(0, at));
+            }
+        }
+        return new ArrayList<>(files);
+    }
+
+    //Matching records of one copy, from indexes only, in file order
+    private List<Hit> hits(String logFile, String copy, AuditQuery q) throws IOException {
+        String stream = logFile + copy;
+        List<Hit> hits = new ArrayList<>();
+        for (long n : AuditSegments.segments(dir, stream)) {
+            Path gz = AuditSegments.archived(dir, stream, n);
+            Path plain = AuditSegments.closed(dir, stream, n);
+            try {
+                if (Files.exists(AuditSegments.manifest(dir, stream, n)) && Files.exists(gz)) {
+                    AuditIndex idx = archiveIndexes.get(gz);
+                    if (idx == null) {
+                        idx = AuditIndex.ofArchive(dir, stream, n);
+                        archiveIndexes.put(gz, idx);
+                    }
+                    collect(idx, logFile, copy, gz, true, n, q, hits);
+                } else if (Files.exists(plain)) {
+                    collect(plainIndex(plain), logFile, copy, plain, false, n, q, hits);
+                }
+            } catch (NoSuchFileException e) {
+                //Deleted by retention or archived just now; a plain segment that became a .gz is stale
+                throw new StaleIndexException(e.getMessage());
+            }
+        }
+        Path active = AuditSegments.active(dir, stream);
+        try {
+            if (Files.exists(active)) collect(plainIndex(active), logFile, copy, active, false, Long.MAX_VALUE, q, hits);
+        } catch (NoSuchFileException e) {
+            //Rotated between the listing above and here
+            throw new StaleIndexException(e.getMessage());
+        }
+        //Segments archived since they were indexed
+        archiveIndexes.keySet().removeIf(p -> !Files.exists(p));
+        return hits;
+    }
+
+    private AuditIndex plainIndex(Path file) throws IOException {
+        Object key = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+        PlainIndex pi = plainIndexes.get(file);
+        if (pi == null || key == null || !Objects.equals(pi.fileKey, key) || Files.size(file) < pi.index.indexedBytes) {
+            pi = new PlainIndex(key);
+            plainIndexes.put(file, pi);
+        }
+        pi.index.extend(file);
+        return pi.index;
+    }
+
+    private static void collect(AuditIndex idx, String logFile, String copy, Path file, boolean gz, long segment,
+                                AuditQuery q, List<Hit> out) {
+        if (!idx.overlaps(q.fromMillis, q.toMillis)) return;
+        if (q.username != null) {
+            AuditIndex.Postings p = idx.byUser.get(q.username);
+            if (p != null) collect(p, logFile, copy, file, gz, segment, q, out);
+            return;
+        }
+        int from = out.size();
+        for (AuditIndex.Postings p : idx.byUser.values()) collect(p, logFile, copy, file, gz, segment, q, out);
+        //Back into file order across users
+        out.subList(from, out.size()).sort(Comparator.comparingLong(h -> h.offset));
+    }
+
+    private static void collect(AuditIndex.Postings p, String logFile, String copy, Path file, boolean gz,
+                                long segment, AuditQuery q, List<Hit> out) {
+        for (int i = 0; i < p.count; i++) {
+            long millis = p.millis(i);
+            if (millis < q.fromMillis || millis > q.toMillis) continue;
+            out.add(new Hit(logFile, copy, file, gz, segment, p.offset(i), millis, p.hash(i)));
+        }
+    }
+
+    /**
+     * Each record once: a primary hit whose (time, hash) the backup also has is matched with
+     * it, the rest are flagged as found in one copy only.
+     */
+    private static List<Hit> merge(List<Hit> primary, List<Hit> backup) {
+        Map<Long, Map<Long, List<Hit>>> backupByTime = new HashMap<>();
+        for (Hit b : backup) {
+            backupByTime.computeIfAbsent(b.millis, k -> new HashMap<>()).computeIfAbsent(b.hash, k -> new ArrayList<>()).add(b);
+        }
+        List<Hit> merged = new ArrayList<>(Math.max(primary.size(), backup.size()));
+        for (Hit p : primary) {
+            p.inPrimary = true;
+            Map<Long, List<Hit>> sameTime = backupByTime.get(p.millis);
+            List<Hit> twins = sameTime == null ? null : sameTime.get(p.hash);
+            if (twins != null && !twins.isEmpty()) {
+                twins.remove(twins.size() - 1);
+                p.inBackup = true;
+            }
+            merged.add(p);
+        }
+        for (Map<Long, List<Hit>> sameTime : backupByTime.values()) {
+            for (List<Hit> left : sameTime.values()) {
+                for (Hit b : left) {
+                    b.inBackup = true;
+                    merged.add(b);
+                }
+            }
+        }
+        return merged;
+    }
+
+    //Index of the first hit after the cursor's record
+    private static int after(List<Hit> merged, String cursor) {
+        String[] parts = cursor.split(":", 5);
+        if (parts.length != 5) throw new IllegalArgumentException("Bad audit cursor: " + cursor);
+        Hit at;
+        int occurrence;
+        try {
+            at = new Hit(parts[1], parts[3], null, false, 0, 0, Long.parseLong(parts[0]), Long.parseLong(parts[2]));
+            occurrence = Integer.parseInt(parts[4]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad audit cursor: " + cursor);
+        }
+        int i = 0;
+        while (i < merged.size() && compareMoment(merged.get(i), at) < 0) i++;
+        for (int j = i; j < merged.size() && merged.get(j).sameMoment(at); j++) {
+            Hit h = merged.get(j);
+            if (h.sameRecord(at) && h.occurrence == occurrence) return j + 1;
+        }
+        //The record itself is gone (retention), carry on after its millisecond
+        while (i < merged.size() && merged.get(i).sameMoment(at)) i++;
+        return i;
+    }
+
+    private static int compareMoment(Hit h, Hit o) {
+        int c = Long.compare(h.millis, o.millis);
+        return c != 0 ? c : h.logFile.compareTo(o.logFile);
+    }
+
+    //The page's lines, one pass per file in offset order
+    private static String[] read(List<Hit> page) throws IOException {
+        String[] lines = new String[page.size()];
+        Map<Path, List<Integer>> byFile = new HashMap<>();
+        for (int i = 0; i < page.size(); i++) byFile.computeIfAbsent(page.get(i).file, k -> new ArrayList<>()).add(i);
+        for (Map.Entry<Path, List<Integer>> e : byFile.entrySet()) {
+            List<Integer> at = e.getValue();
+            at.sort(Comparator.comparingLong(i -> page.get(i).offset));
+            try {
+                if (page.get(at.get(0)).gz) readArchived(e.getKey(), page, at, lines);
+                else readPlain(e.getKey(), page, at, lines);
+            } catch (NoSuchFileException ex) {
+                throw new StaleIndexException(ex.getMessage());
+            }
+        }
+        return lines;
+    }
+
+    private static void readPlain(Path file, List<Hit> page, List<Integer> at, String[] lines) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate(512);
+            for (int i : at) {
+                Hit h = page.get(i);
+                buf.clear();
+                long pos = h.offset;
+                int len;
+                while (true) {
+                    int n = ch.read(buf, pos + buf.position());
+                    len = lineEnd(buf.array(), buf.position());
+                    if (len >= 0 || n < 0) break;
+                    if (!buf.hasRemaining()) buf = ByteBuffer.allocate(buf.capacity() * 2).put(buf.flip());
+                }
+                if (len < 0) throw new StaleIndexException(file + " changed");
+                lines[i] = checked(h, buf.array(), len, file);
+            }
+        }
+    }
+
+    private static void readArchived(Path file, List<Hit> page, List<Integer> at, String[] lines) throws IOException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file), 64 * 1024)) {
+            long pos = 0;
+            byte[] line = new byte[512];
+            for (int i : at) {
+                Hit h = page.get(i);
+                in.skipNBytes(h.offset - pos);
+                pos = h.offset;
+                int len = 0, b;
+                while ((b = in.read()) != -1 && b != '\n') {
+                    if (len == line.length) line = Arrays.copyOf(line, len * 2);
+                    line[len++] = (byte) b;
+                }
+                pos += len + (b == -1 ? 0 : 1);
+                if (len > 0 && line[len - 1] == '\r') len--;
+                lines[i] = checked(h, line, len, file);
+            }
+        }
+    }
+
+    //Length of the first line in bytes [0, limit), without its line end, or -1 if it is not complete
+    private static int lineEnd(byte[] bytes, int limit) {
+        for (int i = 0; i < limit; i++) {
+            if (bytes[i] == '\n') return i > 0 && bytes[i - 1] == '\r' ? i - 1 : i;
+        }
+        return -1;
+    }
+
+    private static String checked(Hit h, byte[] line, int len, Path file) throws StaleIndexException {
+        if (AuditIndex.hash(line, len) != h.hash) throw new StaleIndexException(file + " changed");
+        return new String(line, 0, len, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,51 @@
+package Program;
+
+//One audit record as read back by AuditQueryEngine, with which copies (primary/backup) hold it
+public final class AuditRecord {
+    private final String logFile;
+    private final String timestamp;
+    private final long millis;
+    private final String details;
+    private final String ip;
+    private final String mac;
+    private final String username;
+    private final boolean inPrimary;
+    private final boolean inBackup;
+
+    AuditRecord(String logFile, String line, boolean inPrimary, boolean inBackup) {
+        this.logFile = logFile;
+        //timestamp,details,ip,mac,user where only details may hold commas
+        int first = line.indexOf(',');
+        int userAt = line.lastIndexOf(',');
+        int macAt = line.lastIndexOf(',', userAt - 1);
+        int ipAt = line.lastIndexOf(',', macAt - 1);
+        this.timestamp = line.substring(0, first);
+        this.millis = AuditSegments.parseMillis(timestamp);
+        this.details = ipAt > first ? line.substring(first + 1, ipAt) : "";
+        this.ip = ipAt > first ? line.substring(ipAt + 1, macAt) : "";
+        this.mac = macAt > first ? line.substring(macAt + 1, userAt) : "";
+        this.username = line.substring(userAt + 1);
+        this.inPrimary = inPrimary;
+        this.inBackup = inBackup;
+    }
+
+    //Audit file the record came from, e.g. ticket_deletions.log
+    public String getLogFile() { return logFile; }
+    public String getTimestamp() { return timestamp; }
+    //Epoch milliseconds
+    public long getMillis() { return millis; }
+    public String getDetails() { return details; }
+    public String getIp() { return ip; }
+    public String getMac() { return mac; }
+    public String getUsername() { return username; }
+    public boolean isInPrimary() { return inPrimary; }
+    public boolean isInBackup() { return inBackup; }
+    //Found in only one of the two copies
+    public boolean isDiverged() { return inPrimary != inBackup; }
+
+    @Override
+    public String toString() {
+        return String.join(",", timestamp, details, ip, mac, username)
+                + (isDiverged() ? (inPrimary ? "  [missing from backup]" : "  [missing from primary]") : "");
+    }
+}
@@ -0,0 +1,346 @@
+package Program;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * On-disk layout of one rotated audit stream, e.g. "ticket_updates.logprimary":
+ *   <stream>.txt                     active file the writer appends to
+ *   <stream>.<n>.txt                 closed segment waiting to be archived
+ *   <stream>.<n>.txt.gz              archived segment
+ *   <stream>.<n>.manifest            its manifest, written last; a segment is archived once it exists.
+ *                                    Holds first/last record time, record count, plain size and SHA-256
+ *   <stream>.<n>.aidx                query index, see AuditIndex
+ *   <stream>.seal, <stream>.<n>.seal  seals of the active file and of each segment, see AuditChain
+ * Segment numbers only grow, so numeric order is record order.
+ */
+final class AuditSegments {
+    private AuditSegments() {}
+
+    static final class Manifest {
+        final Path segment;
+        final String first, last;
+        final long records, plainBytes, archivedBytes;
+        final String sha256;
+
+        Manifest(Path segment, String first, String last, long records, long plainBytes, long archivedBytes, String sha256) {
+            this.segment = segment;
+            this.first = first;
+            this.last = last;
+            this.records = records;
+            this.plainBytes = plainBytes;
+            this.archivedBytes = archivedBytes;
+            this.sha256 = sha256;
+        }
+
+        //Newest record's time, for age-based retention
+        long lastMillis() {
+            return parseMillis(last);
+        }
+    }
+
+    static Path active(Path dir, String stream) {
+        return dir.resolve(stream + ".txt");
+    }
+
+    static Path closed(Path dir, String stream, long n) {
+        return dir.resolve(stream + "." + n + ".txt");
+    }
+
+    static Path archived(Path dir, String stream, long n) {
+        return dir.resolve(stream + "." + n + ".txt.gz");
+    }
+
+    static Path manifest(Path dir, String stream, long n) {
+        return dir.resolve(stream + "." + n + ".manifest");
+    }
+
+    //Seals of the active file, see AuditChain
+    static Path activeSeal(Path dir, String stream) {
+        return dir.resolve(stream + ".seal");
+    }
+
+    static Path seal(Path dir, String stream, long n) {
+        return dir.resolve(stream + "." + n + ".seal");
+    }
+
+    //Sidecar of AuditIndex
+    static Path queryIndex(Path dir, String stream, long n) {
+        return dir.resolve(stream + "." + n + ".aidx");
+    }
+
+    //Numbers of every closed or archived segment of the stream, oldest first
+    static List<Long> segments(Path dir, String stream) throws IOException {
+        TreeMap<Long, Boolean> found = new TreeMap<>();
+        String prefix = stream + ".";
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files::iterator) {
+                String name = p.getFileName().toString();
+                if (!name.startsWith(prefix)) continue;
+                String rest = name.substring(prefix.length());
+                int dot = rest.indexOf('.');
+                if (dot <= 0) continue;
+                try {
+                    found.put(Long.parseLong(rest.substring(0, dot)), true);
+                } catch (NumberFormatException ignored) {
+                    //the active "<stream>.txt" or something unrelated
+                }
+            }
+        }
+        return new ArrayList<>(found.keySet());
+    }
+
+    /**
+     * Compresses a closed segment and writes its manifest, then deletes the plain file.
+     * Safe to run again after a crash at any step: the .gz and manifest go through temp
+     * files, and the plain file is only deleted once both are in place.
+     */
+    static Manifest archive(Path dir, String stream, long n) throws IOException {
+        Path plain = closed(dir, stream, n);
+        Path gz = archived(dir, stream, n);
+        Path mf = manifest(dir, stream, n);
+        if (!Files.exists(plain)) return Files.exists(mf) ? readManifest(dir, stream, n) : null;
+        MessageDigest sha = sha256();
+        long records = 0, bytes = 0;
+        String first = null, last = null;
+        Path gzTemp = gz.resolveSibling(gz.getFileName() + ".temp");
+        try (BufferedReader in = Files.newBufferedReader(plain, StandardCharsets.UTF_8);
+             OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzTemp), 64 * 1024)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                byte[] b = (line + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+                //Hashed as archived, a torn last line gets its line end here
+                out.write(b);
+                sha.update(b);
+                bytes += b.length;
+                records++;
+                String time = timestampOf(line);
+                if (first == null) first = time;
+                last = time;
+            }
+        }
+        Files.move(gzTemp, gz, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Manifest m = new Manifest(gz, first == null ? "" : first, last == null ? "" : last, records, bytes,
+                Files.size(gz), HexFormat.of().formatHex(sha.digest()));
+        writeManifest(mf, m);
+        Files.delete(plain);
+        return m;
+    }
+
+    private static void writeManifest(Path mf, Manifest m) throws IOException {
+        String text = "segment=" + m.segment.getFileName() + "\n"
+                + "first=" + m.first + "\n"
+                + "last=" + m.last + "\n"
+                + "records=" + m.records + "\n"
+                + "plainBytes=" + m.plainBytes + "\n"
+                + "archivedBytes=" + m.archivedBytes + "\n"
+                + "sha256=" + m.sha256 + "\n";
+        Path temp = mf.resolveSibling(mf.getFileName() + ".temp");
+        Files.writeString(temp, text, StandardCharsets.UTF_8);
+        Files.move(temp, mf, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static Manifest readManifest(Path dir, String stream, long n) throws IOException {
+        String first = "", last = "", sha = "";
+        long records = 0, plainBytes = 0, archivedBytes = 0;
+        for (String line : Files.readAllLines(manifest(dir, stream, n), StandardCharsets.UTF_8)) {
+            int eq = line.indexOf('=');
+            if (eq < 0) continue;
+            String v = line.substring(eq + 1);
+            switch (line.substring(0, eq)) {
+                case "first" -> first = v;
+                case "last" -> last = v;
+                case "records" -> records = Long.parseLong(v);
+                case "plainBytes" -> plainBytes = Long.parseLong(v);
+                case "archivedBytes" -> archivedBytes = Long.parseLong(v);
+                case "sha256" -> sha = v;
+                default -> { }
+            }
+        }
+        return new Manifest(archived(dir, stream, n), first, last, records, plainBytes, archivedBytes, sha);
+    }
+
+    //True when the archived segment still hashes to what its manifest says
+    static boolean verify(Path dir, String stream, long n) throws IOException {
+        Manifest m = readManifest(dir, stream, n);
+        MessageDigest sha = sha256();
+        try (InputStream in = new DigestInputStream(new GZIPInputStream(Files.newInputStream(m.segment)), sha)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(sha.digest()).equals(m.sha256);
+    }
+
+    /**
+     * Deletes the oldest archived segments whose newest record is older than maxAgeMillis, or
+     * while the archive is over maxBytes compressed. 0 turns a limit off. Closed segments not
+     * yet archived and the active file are never touched. Returns how many were deleted.
+     */
+    static int enforceRetention(Path dir, String stream, long maxAgeMillis, long maxBytes) throws IOException {
+        if (maxAgeMillis <= 0 && maxBytes <= 0) return 0;
+        List<Long> archivedSegments = new ArrayList<>();
+        long total = 0;
+        for (long n : segments(dir, stream)) {
+            if (!Files.exists(manifest(dir, stream, n)) || Files.exists(closed(dir, stream, n))) continue;
+            archivedSegments.add(n);
+            total += Files.size(archived(dir, stream, n));
+        }
+        long oldest = System.currentTimeMillis() - maxAgeMillis;
+        int deleted = 0;
+        for (long n : archivedSegments) {
+            Manifest m = readManifest(dir, stream, n);
+            boolean expired = maxAgeMillis > 0 && m.lastMillis() < oldest;
+            boolean over = maxBytes > 0 && total > maxBytes;
+            if (!expired && !over) break;
+            total -= m.archivedBytes;
+            //Manifest first: a segment without one is not treated as archived
+            Files.deleteIfExists(manifest(dir, stream, n));
+            Files.deleteIfExists(queryIndex(dir, stream, n));
+            Files.deleteIfExists(seal(dir, stream, n));
+            Files.deleteIfExists(archived(dir, stream, n));
+            deleted++;
+        }
+        return deleted;
+    }
+
+    /**
+     * Every record of the stream, oldest first, across archived, closed and active files.
+     * Each file is opened only when reading reaches it; a segment archived in the meantime
+     * is read from its .gz instead.
+     */
+    static BufferedReader open(Path dir, String stream) throws IOException {
+        List<Long> numbers = segments(dir, stream);
+        Iterator<Long> it = numbers.iterator();
+        boolean[] activeDone = {false};
+        Enumeration<InputStream> parts = new Enumeration<>() {
+            @Override
+            public boolean hasMoreElements() {
+                return it.hasNext() || !activeDone[0];
+            }
+
+            @Override
+            public InputStream nextElement() {
+                try {
+                    if (it.hasNext()) return openSegment(dir, stream, it.next());
+                    activeDone[0] = true;
+                    Path active = active(dir, stream);
+                    return Files.exists(active) ? Files.newInputStream(active) : InputStream.nullInputStream();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        return new BufferedReader(new InputStreamReader(new SequenceInputStream(parts), StandardCharsets.UTF_8));
+    }
+
+    private static InputStream openSegment(Path dir, String stream, long n) throws IOException {
+        try {
+            if (Files.exists(manifest(dir, stream, n))) {
+                return new GZIPInputStream(Files.newInputStream(archived(dir, stream, n)), 64 * 1024);
+            }
+            return Files.newInputStream(closed(dir, stream, n));
+        } catch (NoSuchFileException e) {
+            //Archived between the check and the open
+            if (Files.exists(manifest(dir, stream, n))) {
+                return new GZIPInputStream(Files.newInputStream(archived(dir, stream, n)), 64 * 1024);
+            }
+            //Deleted by retention while being read
+            return InputStream.nullInputStream();
+        }
+    }
+
+    //Called per complete line, len excludes the line end
+    interface LineVisitor {
+        void line(long offset, byte[] buf, int len) throws IOException;
+    }
+
+    /**
+     * Splits raw bytes into lines without decoding them. Offsets count from start; a last
+     * line with no line end yet is left out. Returns the offset just past the last whole line.
+     */
+    static long forEachLine(InputStream raw, long start, LineVisitor visitor) throws IOException {
+        byte[] chunk = new byte[64 * 1024];
+        byte[] line = new byte[256];
+        int len = 0;
+        long offset = start;
+        int n;
+        while ((n = raw.read(chunk)) != -1) {
+            int from = 0;
+            for (int i = 0; i < n; i++) {
+                if (chunk[i] != '\n') continue;
+                int part = i - from;
+                if (len + part > line.length) line = Arrays.copyOf(line, Math.max(line.length * 2, len + part));
+                System.arraycopy(chunk, from, line, len, part);
+                len += part;
+                visitor.line(offset, line, len > 0 && line[len - 1] == '\r' ? len - 1 : len);
+                offset += len + 1;
+                len = 0;
+                from = i + 1;
+            }
+            //Start of a line that goes on in the next chunk
+            int rest = n - from;
+            if (len + rest > line.length) line = Arrays.copyOf(line, Math.max(line.length * 2, len + rest));
+            System.arraycopy(chunk, from, line, len, rest);
+            len += rest;
+        }
+        return offset;
+    }
+
+    //The record's timestamp is its first field
+    static String timestampOf(String record) {
+        int comma = record.indexOf(',');
+        return comma < 0 ? record : record.substring(0, comma);
+    }
+
+    static long parseMillis(String timestamp) {
+        try {
+            return LocalDateTime.parse(timestamp).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (RuntimeException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    //Time of the first record in a file, or fallback if it is empty or unreadable
+    static long firstRecordMillis(Path file, long fallback) {
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = in.readLine();
+            if (line == null) return fallback;
+            long millis = parseMillis(timestampOf(line));
+            return millis == Long.MIN_VALUE ? fallback : millis;
+        } catch (IOException e) {
+            return fallback;
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package Program;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Checks the hash chains and seals of every audit stream (see AuditChain).
+ * Each segment, archived or not, is checked on its own on the pool: its records are
+ * re-hashed batch by batch from the chain value its seal starts from, and the Merkle root
+ * and HMAC are compared. Then the seals are checked to link up across segments. For every
+ * stream the report names the first record that was altered, removed or is covered by a
+ * forged seal. Only the active file may end in records written after its last seal; those are
+ * counted as unsealed, unless one is older than the seal interval allows, which means the
+ * writer stopped sealing or the tail was added by hand, so it is a break. Closed segments were sealed up to their last record on rotation, so
+ * anything after that is a break, and archives must also still match their manifest.
+ */
+public final class AuditVerifier {
+    //Segment number used for the active file
+    private static final long ACTIVE = Long.MAX_VALUE;
+
+    private AuditVerifier() {}
+
+    //First problem found in one stream
+    public static final class Break {
+        private final String stream;
+        private final long segment;
+        private final long line;
+        private final String reason;
+
+        Break(String stream, long segment, long line, String reason) {
+            this.stream = stream;
+            this.segment = segment;
+            this.line = line;
+            this.reason = reason;
+        }
+
+        //e.g. ticket_updates.logprimary
+        public String getStream() { return stream; }
+        //Rotated segment number, -1 for the active file
+        public long getSegment() { return segment == ACTIVE ? -1 : segment; }
+        //0-based record number within that file
+        public long getLine() { return line; }
+        public String getReason() { return reason; }
+
+        @Override
+        public String toString() {
+            return stream + (segment == ACTIVE ? " (active file)" : " segment " + segment) + " record " + (line + 1)
+                    + ": " + reason;
+        }
+    }
+
+    public static final class Report {
+        private final long records, unsealed;
+        private final int segments;
+        private final List<Break> breaks;
+
+        Report(long records, long unsealed, int segments, List<Break> breaks) {
+            this.records = records;
+            this.unsealed = unsealed;
+            this.segments = segments;
+            this.breaks = breaks;
+        }
+
+        public boolean isClean() { return breaks.isEmpty(); }
+        //Records re-hashed, sealed or not
+        public long getRecords() { return records; }
+        public long getUnsealed() { return unsealed; }
+        public int getSegments() { return segments; }
+        //At most one per stream, by stream name
+        public List<Break> getBreaks() { return breaks; }
+        public Break getFirstBroken() { return breaks.isEmpty() ? null : breaks.get(0); }
+
+        @Override
+        public String toString() {
+            return segments + " segments, " + records + " records, " + unsealed + " unsealed, "
+                    + (breaks.isEmpty() ? "no breaks" : breaks.size() + " broken: " + breaks);
+        }
+    }
+
+    //Outcome for one segment
+    private static final class Segment {
+        final String stream;
+        final long n;
+        List<AuditChain.Seal> seals = List.of();
+        long records, unsealed, brokenLine = -1;
+        String reason;
+
+        Segment(String stream, long n) {
+            this.stream = stream;
+            this.n = n;
+        }
+
+        void broken(long line, String why) {
+            if (brokenLine < 0) {
+                brokenLine = line;
+                reason = why;
+            }
+        }
+    }
+
+    //Unsealed records in an active file timestamped before staleBefore are breaks
+    static Report verify(Path dir, byte[] key, long staleBefore, ForkJoinPool pool) throws IOException {
+        if (key == null) throw new IllegalStateException("No audit seal key, SecurityUtil.init has not been called");
+        TreeMap<String, List<Segment>> byStream = new TreeMap<>();
+        List<Segment> all = new ArrayList<>();
+        for (String stream : streams(dir)) {
+            List<Segment> segs = new ArrayList<>();
+            for (long n : AuditSegments.segments(dir, stream)) segs.add(new Segment(stream, n));
+            if (Files.exists(AuditSegments.active(dir, stream))) segs.add(new Segment(stream, ACTIVE));
+            byStream.put(stream, segs);
+            all.addAll(segs);
+        }
+        try {
+            pool.submit(() -> IntStream.range(0, all.size()).parallel().forEach(i -> {
+                try {
+                    check(dir, all.get(i), key, staleBefore);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            })).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException u) throw u.getCause();
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Audit verification interrupted");
+        }
+
+        long records = 0, unsealed = 0;
+        List<Break> breaks = new ArrayList<>();
+        for (List<Segment> segs : byStream.values()) {
+            linkSegments(segs);
+            Break first = null;
+            for (Segment s : segs) {
+                records += s.records;
+                unsealed += s.unsealed;
+                if (first == null && s.brokenLine >= 0) first = new Break(s.stream, s.n, s.brokenLine, s.reason);
+            }
+            if (first != null) breaks.add(first);
+        }
+        return new Report(records, unsealed, all.size(), breaks);
+    }
+
+    //Every primary and backup stream with files in dir
+    private static TreeSet<String> streams(Path dir) throws IOException {
+        TreeSet<String> names = new TreeSet<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files::iterator) {
+                String name = p.getFileName().toString();
+                for (String copy : new String[]{"primary.", "backup."}) {
+                    int at = name.indexOf(copy);
+                    if (at > 0) names.add(name.substring(0, at + copy.length() - 1));
+                }
+            }
+        }
+        return names;
+    }
+
+    private static void check(Path dir, Segment seg, byte[] key, long staleBefore) throws IOException {
+        Path sealFile = seg.n == ACTIVE ? AuditSegments.activeSeal(dir, seg.stream) : AuditSegments.seal(dir, seg.stream, seg.n);
+        List<AuditChain.Seal> seals = new ArrayList<>();
+        String sealError = Files.exists(sealFile) ? AuditChain.readSeals(sealFile, seals) : null;
+        seg.seals = seals;
+        long expectFirst = 0;
+        for (AuditChain.Seal s : seals) {
+            if (s.firstLine != expectFirst) {
+                seg.broken(Math.min(s.firstLine, expectFirst), "seals do not cover the records in order");
+                break;
+            }
+            expectFirst += s.count;
+        }
+        //An archived segment is also checked against the SHA-256 its manifest took when it was archived
+        Path plain = AuditSegments.closed(dir, seg.stream, seg.n);
+        InputStream raw = open(dir, seg);
+        if (raw == null) {
+            if (!seals.isEmpty()) seg.broken(0, "segment file is missing");
+            return;
+        }
+        boolean archived = seg.n != ACTIVE && raw instanceof GZIPInputStream;
+        MessageDigest archiveSha = AuditChain.sha256();
+        if (archived) raw = new DigestInputStream(raw, archiveSha);
+        MessageDigest sha = AuditChain.sha256();
+        List<byte[]> leaves = new ArrayList<>();
+        int[] k = {0};
+        byte[][] prev = {null};
+        long[] line = {0};
+        long read;
+        try (InputStream in = raw) {
+            read = AuditSegments.forEachLine(in, 0, (offset, buf, len) -> {
+                long i = line[0]++;
+                seg.records++;
+                if (k[0] >= seals.size()) {
+                    //Rotation seals a segment before closing it, only the active file has an unsealed tail
+                    if (seg.n != ACTIVE) {
+                        seg.broken(i, "record after the closed segment's last seal");
+                        return;
+                    }
+                    seg.unsealed++;
+                    //One the writer should have sealed by now; an unreadable timestamp counts as stale
+                    int comma = 0;
+                    while (comma < len && buf[comma] != ',') comma++;
+                    long millis = AuditSegments.parseMillis(new String(buf, 0, comma, StandardCharsets.UTF_8));
+                    if (millis < staleBefore) seg.broken(i, "unsealed record older than the seal interval");
+                    return;
+                }
+                AuditChain.Seal s = seals.get(k[0]);
+                if (i == s.firstLine) {
+                    leaves.clear();
+                    prev[0] = s.prevLeaf;
+                }
+                sha.update(prev[0]);
+                sha.update(buf, 0, len);
+                prev[0] = sha.digest();
+                leaves.add(prev[0]);
+                if (leaves.size() == s.count) {
+                    checkBatch(seg, k[0], leaves, key, sha);
+                    k[0]++;
+                }
+            });
+            if (archived) in.transferTo(OutputStream.nullOutputStream());
+        }
+        if (archived) {
+            AuditSegments.Manifest m = AuditSegments.readManifest(dir, seg.stream, seg.n);
+            if (!HexFormat.of().formatHex(archiveSha.digest()).equals(m.sha256) || m.records != line[0]) {
+                seg.broken(Math.min(line[0], m.records), "archive does not match its manifest");
+            }
+        } else if (seg.n != ACTIVE && Files.exists(plain) && Files.size(plain) != read) {
+            seg.broken(line[0], "partial record after the closed segment's last line");
+        }
+        //The file ran out before the seals did: the next record it should have had is gone
+        if (k[0] < seals.size()) seg.broken(line[0], "sealed records are missing");
+        if (sealError != null) seg.broken(expectFirst, "seal file damaged: " + sealError);
+    }
+
+    private static void checkBatch(Segment seg, int k, List<byte[]> leaves, byte[] key, MessageDigest sha) {
+        AuditChain.Seal s = seg.seals.get(k);
+        if (!MessageDigest.isEqual(AuditChain.expectedHmac(s, key), s.hmac)) {
+            seg.broken(s.firstLine, "seal HMAC does not match, the seal was forged or altered");
+            return;
+        }
+        if (k > 0) {
+            AuditChain.Seal p = seg.seals.get(k - 1);
+            if (s.batchNo != p.batchNo + 1 || !Arrays.equals(s.prevHmac, p.hmac) || !Arrays.equals(s.prevLeaf, p.lastLeaf)) {
+                seg.broken(s.firstLine, "seal does not follow the one before it");
+                return;
+            }
+        }
+        //The root is only rebuilt once the chain itself matches
+        if (Arrays.equals(leaves.get(leaves.size() - 1), s.lastLeaf)
+                && Arrays.equals(AuditChain.merkleRoot(sha, leaves), s.root)) return;
+        //The first leaf that differs is the first altered record, every later one differs through the chain
+        for (int j = 0; j < leaves.size(); j++) {
+            if (AuditChain.prefix(leaves.get(j)) != s.prefixes[j]) {
+                seg.broken(s.firstLine + j, "record altered");
+                return;
+            }
+        }
+        seg.broken(s.firstLine, "record altered");
+    }
+
+    //Seals have to carry on from the previous segment's last seal
+    private static void linkSegments(List<Segment> segs) {
+        Segment prev = null;
+        for (Segment s : segs) {
+            if (s.seals.isEmpty()) continue;
+            AuditChain.Seal first = s.seals.get(0);
+            if (prev == null) {
+                //The oldest segment left; older ones may have gone to retention
+                if (first.batchNo == 1 && (!Arrays.equals(first.prevLeaf, new byte[AuditChain.HASH])
+                        || !Arrays.equals(first.prevHmac, new byte[AuditChain.HASH]))) {
+                    s.broken(0, "first seal does not start the chain");
+                }
+            } else {
+                AuditChain.Seal last = prev.seals.get(prev.seals.size() - 1);
+                if (first.batchNo != last.batchNo + 1 || !Arrays.equals(first.prevHmac, last.hmac)
+                        || !Arrays.equals(first.prevLeaf, last.lastLeaf)) {
+                    s.broken(0, "seals do not carry on from the previous segment, a segment was removed or replaced");
+                }
+            }
+            prev = s;
+        }
+    }
+
+    //Records of one segment as plain text, null if it has no file
+    private static InputStream open(Path dir, Segment seg) throws IOException {
+        if (seg.n == ACTIVE) return Files.newInputStream(AuditSegments.active(dir, seg.stream));
+        Path plain = AuditSegments.closed(dir, seg.stream, seg.n);
+        try {
+            if (Files.exists(plain)) return Files.newInputStream(plain);
+        } catch (NoSuchFileException e) {
+            //Archived between the check and the open
+        }
+        Path gz = AuditSegments.archived(dir, seg.stream, seg.n);
+        if (Files.exists(gz)) return new GZIPInputStream(Files.newInputStream(gz), 64 * 1024);
+        return null;
+    }
+}
@@ -0,0 +1,59 @@
+package Program;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+/**
+ * Hash-chained audit write rate and verification throughput against worker count.
+ * Logs records into a temp directory with 4MB segments, seals them, then verifies the whole
+ * history with pools of 1, 2, 4... up to the core count. Uses a throwaway key.
+ * Run: java Program.AuditVerifierBenchmark [records]
+ */
+public class AuditVerifierBenchmark {
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        SecurityUtil.init(new SecretKeySpec(new byte[16], "AES"));
+        Path dir = Files.createTempDirectory("auditbench");
+        AuditLog audit = new AuditLog(dir, 8192, false);
+        audit.setRotation(null, 4L * 1024 * 1024, 0);
+
+        long t0 = System.nanoTime();
+        for (int i = 0; i < records; i++) audit.log("updated ticket " + i + " status to in progress", "TUPDATE", Durability.ASYNC);
+        audit.sealNow();
+        long t1 = System.nanoTime();
+        System.out.printf("write: %,d records in %.2f s, %,.0f records/s (primary and backup, chained and sealed)%n",
+                records, (t1 - t0) / 1e9, records / ((t1 - t0) / 1e9));
+        audit.flush();
+        long bytes;
+        try (Stream<Path> files = Files.list(dir)) {
+            bytes = files.filter(p -> p.toString().endsWith(".txt") || p.toString().endsWith(".gz"))
+                    .mapToLong(p -> p.toFile().length()).sum();
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int workers = 1; workers <= cores; workers = workers == cores ? cores + 1 : Math.min(cores, workers * 2)) {
+            ForkJoinPool pool = new ForkJoinPool(workers);
+            long best = Long.MAX_VALUE;
+            AuditVerifier.Report report = null;
+            for (int r = 0; r < ROUNDS + 1; r++) {
+                long s = System.nanoTime();
+                report = audit.verify(pool);
+                //First round is warmup
+                if (r > 0) best = Math.min(best, System.nanoTime() - s);
+            }
+            pool.shutdown();
+            System.out.printf("%2d workers: verify %,d records in %d segments, %7.1f MB/s on disk (%s)%n", workers,
+                    report.getRecords(), report.getSegments(), bytes / 1e6 / (best / 1e9), report.isClean() ? "clean" : "BROKEN");
+        }
+        audit.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
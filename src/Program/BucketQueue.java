@@ -0,0 +1,276 @@
+package Program;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Bucketed (radix) ticket queue for small integer priorities.
+ * Each security level keeps one FIFO list per priority in [minPriority, maxPriority]
+ * plus a bitmask of non-empty buckets, so add, poll and delete are O(1) and tickets
+ * of equal priority come out in arrival order.
+ * Priorities outside the range fall back to a TicketHeap per level.
+ */
+public class BucketQueue extends AbstractTicketQueue {
+    private static final long serialVersionUID = 1L;
+
+    //Covers every RequestType default with room for manual overrides
+    public static final int DEFAULT_MIN_PRIORITY = 1;
+    public static final int DEFAULT_MAX_PRIORITY = 8;
+    //One bit per bucket in a long
+    private static final int MAX_BUCKETS = 64;
+
+    private final int minPriority;
+    private final int maxPriority;
+    //Rebuilt from the ticket list after deserialising
+    private transient Level[] levels;
+    private transient Map<Integer, Node> nodes;
+
+    //For JUnit testing
+    public BucketQueue(int capacity) {
+        this(capacity, null, null);
+    }
+
+    //Main instantiation
+    public BucketQueue(int capacity, String logFilePath, String snapshotFilePath) {
+        this(capacity, logFilePath, snapshotFilePath, DEFAULT_MIN_PRIORITY, DEFAULT_MAX_PRIORITY);
+    }
+
+    public BucketQueue(int capacity, String logFilePath, String snapshotFilePath,
+                       int minPriority, int maxPriority) {
+        super(capacity, logFilePath, snapshotFilePath);
+        if (maxPriority < minPriority || maxPriority - minPriority + 1 > MAX_BUCKETS)
+            throw new IllegalArgumentException("Bucket range must hold 1 to " + MAX_BUCKETS + " priorities");
+        this.minPriority = minPriority;
+        this.maxPriority = maxPriority;
+        initLevels();
+    }
+
+    //Load binary file, the restored queue does not log
+    public static BucketQueue loadFromSnapshotBinary(String snapshotPath) throws Exception {
+        return loadFromSnapshotBinary(snapshotPath, null);
+    }
+
+    public static BucketQueue loadFromSnapshotBinary(String snapshotPath, String logFilePath) throws Exception {
+        return (BucketQueue) readSnapshotBinary(snapshotPath, logFilePath);
+    }
+
+    @Override
+    public QueueMode getMode() { return QueueMode.BUCKET; }
+
+    int getMinPriority() { return minPriority; }
+    int getMaxPriority() { return maxPriority; }
+
+    private void initLevels() {
+        levels = new Level[SecurityLevel.values().length];
+        for (int i = 0; i < levels.length; i++) levels[i] = new Level(maxPriority - minPriority + 1);
+        nodes = new HashMap<>();
+    }
+
+    //Linked nodes are not serialised, write tickets in FIFO order instead
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(nodes.size());
+        scan(topLevel(), t -> {
+            try {
+                out.writeObject(t);
+            } catch (IOException e) {
+                throw new java.io.UncheckedIOException(e);
+            }
+        });
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        initLevels();
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) insert((Ticket) in.readObject());
+    }
+
+    @Override
+    protected void insert(Ticket ticket) {
+        Node n = new Node(ticket, ticket.getSecurityLevel().ordinal());
+        nodes.put(ticket.getTicketID(), n);
+        levels[n.level].link(n);
+    }
+
+    @Override
+    protected boolean contains(int ticketID) {
+        return nodes.containsKey(ticketID);
+    }
+
+    @Override
+    protected Ticket reprioritize(int ticketID, int newPriority) {
+        Node n = nodes.get(ticketID);
+        if (n == null) return null;
+        Level lvl = levels[n.level];
+        lvl.unlink(n);
+        n.ticket.setPriority(newPriority);
+        //Re-queued at the back of its new bucket
+        lvl.link(n);
+        return n.ticket;
+    }
+
+    @Override
+    protected boolean remove(int ticketID) {
+        Node n = nodes.remove(ticketID);
+        if (n == null) return false;
+        levels[n.level].unlink(n);
+        return true;
+    }
+
+    @Override
+    protected Ticket peekBest(int maxLevel) {
+        Level best = bestLevel(maxLevel);
+        return best == null ? null : best.head();
+    }
+
+    @Override
+    protected Ticket pollBest(int maxLevel) {
+        Level best = bestLevel(maxLevel);
+        if (best == null) return null;
+        Ticket t = best.head();
+        remove(t.getTicketID());
+        return t;
+    }
+
+    @Override
+    protected void scan(int maxLevel, Consumer<Ticket> visitor) {
+        for (int l = 0; l <= maxLevel; l++) {
+            Level lvl = levels[l];
+            for (Node head : lvl.heads)
+                for (Node n = head; n != null; n = n.next) visitor.accept(n.ticket);
+            for (int i = 0; i < lvl.overflow.size(); i++) visitor.accept(lvl.overflow.get(i));
+        }
+    }
+
+    //Merge every level's buckets (already in order) with a best-first walk of its overflow heap
+    @Override
+    protected void collectTopK(int maxLevel, int k, MyArrayList<Ticket> out) {
+        CandidateHeap<Cursor> frontier = new CandidateHeap<>(k + 2 * levels.length);
+        for (int l = 0; l <= maxLevel; l++) {
+            Level lvl = levels[l];
+            if (!lvl.overflow.isEmpty()) push(frontier, new Cursor(lvl, null, 0));
+            Node first = lvl.firstFrom(0);
+            if (first != null) push(frontier, new Cursor(lvl, first, -1));
+        }
+        while (out.size() < k && !frontier.isEmpty()) {
+            Cursor at = frontier.pop();
+            out.add(at.ticket());
+            if (at.node != null) {
+                //Next in this bucket, else head of the next non-empty bucket
+                Node next = at.node.next != null ? at.node.next : at.level.firstFrom(at.node.bucket + 1);
+                if (next != null) push(frontier, new Cursor(at.level, next, -1));
+            } else {
+                TicketHeap h = at.level.overflow;
+                int first = h.arity() * at.slot + 1;
+                for (int c = first; c < first + h.arity() && c < h.size(); c++) push(frontier, new Cursor(at.level, null, c));
+            }
+        }
+    }
+
+    private static void push(CandidateHeap<Cursor> frontier, Cursor c) {
+        frontier.push(c, c.ticket().getPriority());
+    }
+
+    //Position in one level: a bucket node, or a slot of the overflow heap when node is null
+    private static final class Cursor {
+        final Level level;
+        final Node node;
+        final int slot;
+
+        Cursor(Level level, Node node, int slot) {
+            this.level = level;
+            this.node = node;
+            this.slot = slot;
+        }
+
+        Ticket ticket() { return node != null ? node.ticket : level.overflow.get(slot); }
+    }
+
+    //Level whose head has the lowest priority among 0..maxLevel, null if all empty
+    private Level bestLevel(int maxLevel) {
+        Level best = null;
+        for (int l = 0; l <= maxLevel; l++) {
+            Ticket head = levels[l].head();
+            if (head != null && (best == null || head.getPriority() < best.head().getPriority())) best = levels[l];
+        }
+        return best;
+    }
+
+    private boolean inRange(int priority) {
+        return priority >= minPriority && priority <= maxPriority;
+    }
+
+    //Doubly linked so any ticket can be unlinked in O(1)
+    private static final class Node {
+        final Ticket ticket;
+        final int level;
+        int bucket = -1; //-1 while in the overflow heap
+        Node prev, next;
+
+        Node(Ticket ticket, int level) {
+            this.ticket = ticket;
+            this.level = level;
+        }
+    }
+
+    //FIFO buckets and overflow heap for one security level
+    private final class Level {
+        final Node[] heads, tails;
+        long nonEmpty; //bit b set when bucket b has tickets
+        final TicketHeap overflow = new TicketHeap(4);
+
+        Level(int buckets) {
+            heads = new Node[buckets];
+            tails = new Node[buckets];
+        }
+
+        void link(Node n) {
+            int p = n.ticket.getPriority();
+            if (!inRange(p)) {
+                n.bucket = -1;
+                overflow.add(n.ticket);
+                return;
+            }
+            int b = p - minPriority;
+            n.bucket = b;
+            n.prev = tails[b];
+            n.next = null;
+            if (tails[b] == null) heads[b] = n; else tails[b].next = n;
+            tails[b] = n;
+            nonEmpty |= 1L << b;
+        }
+
+        void unlink(Node n) {
+            if (n.bucket == -1) {
+                overflow.remove(n.ticket.getTicketID());
+                return;
+            }
+            int b = n.bucket;
+            if (n.prev == null) heads[b] = n.next; else n.prev.next = n.next;
+            if (n.next == null) tails[b] = n.prev; else n.next.prev = n.prev;
+            n.prev = n.next = null;
+            if (heads[b] == null) nonEmpty &= ~(1L << b);
+        }
+
+        //Head of the first non-empty bucket at or above b, null if none
+        Node firstFrom(int b) {
+            if (b >= heads.length) return null;
+            long rest = nonEmpty & (-1L << b);
+            return rest == 0 ? null : heads[Long.numberOfTrailingZeros(rest)];
+        }
+
+        //Lowest non-empty bucket unless the overflow holds something smaller
+        Ticket head() {
+            Ticket bucketHead = nonEmpty == 0 ? null : heads[Long.numberOfTrailingZeros(nonEmpty)].ticket;
+            Ticket overflowHead = overflow.peek();
+            if (overflowHead != null && (bucketHead == null || overflowHead.getPriority() < bucketHead.getPriority()))
+                return overflowHead;
+            return bucketHead;
+        }
+    }
+}
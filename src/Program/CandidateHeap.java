@@ -0,0 +1,61 @@
+package Program;
+
+//Small min-heap of frontier entries for topK walks, keyed by ticket priority
+//Ties go to whichever entry was pushed first
+final class CandidateHeap<T> {
+    private Object[] items;
+    private int[] prio;
+    private long[] order;
+    private int size;
+    private long pushed;
+
+    CandidateHeap(int capacity) {
+        capacity = Math.max(capacity, 4);
+        items = new Object[capacity];
+        prio = new int[capacity];
+        order = new long[capacity];
+    }
+
+    boolean isEmpty() { return size == 0; }
+
+    void push(T item, int priority) {
+        if (size == items.length) grow();
+        int i = size++;
+        long o = pushed++;
+        //Bubble the hole up
+        while (i > 0) {
+            int p = (i - 1) / 2;
+            if (prio[p] < priority || (prio[p] == priority && order[p] < o)) break;
+            items[i] = items[p]; prio[i] = prio[p]; order[i] = order[p];
+            i = p;
+        }
+        items[i] = item; prio[i] = priority; order[i] = o;
+    }
+
+    @SuppressWarnings("unchecked")
+    T pop() {
+        T top = (T) items[0];
+        int last = --size;
+        Object item = items[last]; int p = prio[last]; long o = order[last];
+        items[last] = null;
+        int i = 0;
+        //Sink the hole down
+        while (true) {
+            int c = 2 * i + 1;
+            if (c >= size) break;
+            if (c + 1 < size && (prio[c + 1] < prio[c] || (prio[c + 1] == prio[c] && order[c + 1] < order[c]))) c++;
+            if (p < prio[c] || (p == prio[c] && o < order[c])) break;
+            items[i] = items[c]; prio[i] = prio[c]; order[i] = order[c];
+            i = c;
+        }
+        if (size > 0) { items[i] = item; prio[i] = p; order[i] = o; }
+        return top;
+    }
+
+    private void grow() {
+        int cap = items.length * 2;
+        items = java.util.Arrays.copyOf(items, cap);
+        prio = java.util.Arrays.copyOf(prio, cap);
+        order = java.util.Arrays.copyOf(order, cap);
+    }
+}
@@ -0,0 +1,156 @@
+package Program;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Single writer thread for a queue's ticket log and audit records.
+ * Mutations are submitted while the queue's write lock is held, so sequence numbers
+ * and disk order always match the order the heap changed in, but the file I/O itself
+ * runs here after the lock is released.
+ * Whatever has queued up while the previous batch was being written goes out as one
+ * group commit: every record's I/O runs, then the batch hook makes it durable once,
+ * and only then are the batch's futures completed.
+ * The thread is started by the first submit and ended by shutdown(), which lets it finish
+ * everything queued first; a later submit starts a new one.
+ */
+class CommitStage {
+    //Upper bound on one group so a flood of records still gets acknowledged steadily
+    private static final int MAX_BATCH = 1024;
+    //Sequence number of the record shutdown() queues to end the writer
+    private static final long STOP = -1;
+
+    //Makes a batch durable, called once per group after its records ran
+    interface GroupCommit {
+        void commit() throws Exception;
+    }
+
+    private final BlockingQueue<Record> pending = new LinkedBlockingQueue<>();
+    private final String name;
+    private final GroupCommit afterBatch;
+    //Guarded by this, null while stopped
+    private Thread writer;
+    //Only touched under the owning queue's write lock
+    private long nextSeq;
+    private volatile long committedSeq;
+    //Future of the newest record, records complete in order so it covers all earlier ones
+    private volatile CompletableFuture<Long> last = CompletableFuture.completedFuture(0L);
+
+    CommitStage(String name) {
+        this(name, () -> {});
+    }
+
+    CommitStage(String name, GroupCommit afterBatch) {
+        this.name = name;
+        this.afterBatch = afterBatch;
+    }
+
+    //Queue the I/O for one mutation, future completes with its sequence number once written
+    synchronized CompletableFuture<Long> submit(Runnable io) {
+        if (writer == null) {
+            writer = new Thread(this::drain, name);
+            writer.setDaemon(true); //flush() and shutdown() are how callers make sure nothing is lost
+            writer.start();
+        }
+        Record r = new Record(++nextSeq, io);
+        last = r.done;
+        pending.add(r);
+        return r.done;
+    }
+
+    //Completes once everything submitted so far is committed
+    CompletableFuture<Long> lastSubmitted() {
+        return last;
+    }
+
+    //Wait until everything submitted so far has been written
+    void flush() {
+        CompletableFuture<Long> done;
+        synchronized (this) {
+            //Stopped, shutdown already waited for everything
+            if (writer == null) return;
+            done = submit(() -> {});
+        }
+        done.join();
+    }
+
+    /**
+     * Writes everything submitted so far, then ends the writer thread and waits for it.
+     * Submits made meanwhile wait and go to the next thread.
+     */
+    synchronized void shutdown() {
+        if (writer == null) return;
+        Thread t = writer;
+        writer = null;
+        pending.add(new Record(STOP, null));
+        boolean interrupted = false;
+        while (t.isAlive()) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    long getCommittedSeq() { return committedSeq; }
+
+    private void drain() {
+        List<Record> batch = new ArrayList<>();
+        List<Record> ran = new ArrayList<>();
+        boolean stop = false;
+        while (!stop) {
+            try {
+                batch.add(pending.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            pending.drainTo(batch, MAX_BATCH - 1);
+            for (Record r : batch) {
+                //Always the last record, shutdown holds off submits until this thread has ended
+                if (r.seq == STOP) {
+                    stop = true;
+                    continue;
+                }
+                //Errors too, or the caller waits on the future forever
+                try {
+                    r.io.run();
+                    ran.add(r);
+                } catch (Throwable e) {
+                    r.done.completeExceptionally(e);
+                }
+            }
+            Throwable failed = null;
+            try {
+                afterBatch.commit();
+            } catch (Throwable e) {
+                failed = e;
+            }
+            for (Record r : ran) {
+                if (failed != null) {
+                    r.done.completeExceptionally(failed);
+                } else {
+                    committedSeq = r.seq;
+                    r.done.complete(r.seq);
+                }
+            }
+            batch.clear();
+            ran.clear();
+        }
+    }
+
+    private static final class Record {
+        final long seq;
+        final Runnable io;
+        final CompletableFuture<Long> done = new CompletableFuture<>();
+
+        Record(long seq, Runnable io) {
+            this.seq = seq;
+            this.io = io;
+        }
+    }
+}
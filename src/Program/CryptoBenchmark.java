@@ -0,0 +1,76 @@
+package Program;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * Per-call cost of AES-GCM: the old encryptGcm/decryptGcm (Cipher.getInstance, new SecureRandom,
+ * nonce and ciphertext copies on every call) against CryptoEngine's byte[] and in-place forms.
+ * Reports ns per encrypt+decrypt round trip for a few message sizes, best of several rounds.
+ * Run: java Program.CryptoBenchmark [calls per round]
+ */
+public class CryptoBenchmark {
+    private static final int ROUNDS = 5;
+    private static final int[] SIZES = {64, 1024, 16 * 1024};
+
+    private interface RoundTrip {
+        void run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        SecretKey key = new SecretKeySpec(new byte[16], "AES");
+        CryptoEngine engine = new CryptoEngine(key);
+        for (int size : SIZES) {
+            byte[] plain = new byte[size];
+            new SecureRandom().nextBytes(plain);
+            ByteBuffer buf = ByteBuffer.allocate(size + CryptoEngine.OVERHEAD);
+            double old = time(calls, () -> legacyDecrypt(key, legacyEncrypt(key, plain)));
+            double arrays = time(calls, () -> engine.decrypt(engine.encrypt(plain)));
+            double inPlace = time(calls, () -> {
+                buf.clear().position(CryptoEngine.NONCE_BYTES);
+                buf.put(plain).flip();
+                engine.encryptInPlace(buf);
+                engine.decryptInPlace(buf);
+            });
+            System.out.printf("%6d bytes: old %8.0f ns  engine %8.0f ns  in place %8.0f ns%n", size, old, arrays, inPlace);
+        }
+    }
+
+    //Best ns per call over ROUNDS, after one warmup round
+    private static double time(int calls, RoundTrip op) throws Exception {
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < ROUNDS + 1; r++) {
+            long t0 = System.nanoTime();
+            for (int i = 0; i < calls; i++) op.run();
+            if (r > 0) best = Math.min(best, System.nanoTime() - t0);
+        }
+        return (double) best / calls;
+    }
+
+    //SecurityUtil.encryptGcm as it was
+    private static byte[] legacyEncrypt(SecretKey key, byte[] plaintext) throws Exception {
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        byte[] nonce = new byte[12];
+        new SecureRandom().nextBytes(nonce);
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(128, nonce));
+        byte[] ciphertext = cipher.doFinal(plaintext);
+        byte[] out = new byte[nonce.length + ciphertext.length];
+        System.arraycopy(nonce, 0, out, 0, nonce.length);
+        System.arraycopy(ciphertext, 0, out, nonce.length, ciphertext.length);
+        return out;
+    }
+
+    //SecurityUtil.decryptGcm as it was
+    private static byte[] legacyDecrypt(SecretKey key, byte[] input) throws Exception {
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        byte[] nonce = Arrays.copyOfRange(input, 0, 12);
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(128, nonce));
+        return cipher.doFinal(Arrays.copyOfRange(input, 12, input.length));
+    }
+}
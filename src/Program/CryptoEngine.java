@@ -0,0 +1,229 @@
+package Program;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AES-GCM for one key without the per-call setup cost.
+ * Every thread keeps one Cipher and re-inits it per message, and nonces come from a counter
+ * instead of a fresh SecureRandom: nonce = 4 random bytes || 8 byte counter that starts at a
+ * random value. After rekeyAfter messages the engine moves on to a new random nonce range; the
+ * key stays the same, so this only rotates nonces. The NIST SP 800-38D limit of 2^32 messages
+ * with randomly chosen nonces counts every message under the key, whatever range it came from,
+ * so the engine also counts them and refuses to encrypt past maxMessages. The count starts at
+ * zero per engine, messages sealed by earlier runs under the same key are not known, and
+ * neither are chunks sealed through cipher() with a nonce the caller picked (SnapshotFile).
+ * Messages are nonce || ciphertext || tag, the format SecurityUtil has always written, so
+ * existing snapshots still decrypt. The ByteBuffer methods work in place with no copies; the
+ * stream factories use the same format for data that should not be held as one array.
+ */
+public final class CryptoEngine {
+    public static final int NONCE_BYTES = 12;
+    public static final int TAG_BYTES = 16;
+    //Bytes a message adds to its plaintext
+    public static final int OVERHEAD = NONCE_BYTES + TAG_BYTES;
+    public static final long DEFAULT_REKEY_AFTER = 1L << 32;
+    //NIST SP 800-38D bound for randomly chosen nonces, all messages under one key
+    public static final long MAX_MESSAGES_PER_KEY = 1L << 32;
+    private static final String TRANSFORM = "AES/GCM/NoPadding";
+    private static final SecureRandom RANDOM = new SecureRandom();
+    //Re-initialised per message, only ever used between init and doFinal on its own thread
+    private static final ThreadLocal<Cipher> CIPHERS = ThreadLocal.withInitial(CryptoEngine::newCipher);
+
+    //One nonce range: fixed prefix and random start, messages taken from it so far
+    private static final class NonceRange {
+        final int fixed;
+        final long start;
+        final AtomicLong used = new AtomicLong();
+
+        NonceRange() {
+            fixed = RANDOM.nextInt();
+            start = RANDOM.nextLong();
+        }
+    }
+
+    private final SecretKey key;
+    private final long rekeyAfter;
+    private final long maxMessages;
+    private volatile NonceRange range = new NonceRange();
+    private final AtomicLong ranges = new AtomicLong(1);
+    //Nonces handed out under this key, across every range
+    private final AtomicLong messages = new AtomicLong();
+
+    public CryptoEngine(SecretKey key) {
+        this(key, DEFAULT_REKEY_AFTER);
+    }
+
+    //rekeyAfter: messages per nonce range before a new random range is started, at most DEFAULT_REKEY_AFTER
+    public CryptoEngine(SecretKey key, long rekeyAfter) {
+        this(key, rekeyAfter, MAX_MESSAGES_PER_KEY);
+    }
+
+    //maxMessages: messages under the key in total, at most MAX_MESSAGES_PER_KEY
+    public CryptoEngine(SecretKey key, long rekeyAfter, long maxMessages) {
+        if (key == null) throw new IllegalArgumentException("No key");
+        if (rekeyAfter < 1 || rekeyAfter > DEFAULT_REKEY_AFTER) throw new IllegalArgumentException("Invalid rekey limit");
+        if (maxMessages < 1 || maxMessages > MAX_MESSAGES_PER_KEY) throw new IllegalArgumentException("Invalid message limit");
+        this.key = key;
+        this.rekeyAfter = rekeyAfter;
+        this.maxMessages = maxMessages;
+    }
+
+    //Shared generator for nonces, salts and anything else that needs one
+    public static SecureRandom random() {
+        return RANDOM;
+    }
+
+    //Nonce ranges used so far, including the current one
+    public long getNonceRanges() {
+        return ranges.get();
+    }
+
+    //Messages encrypted under the key so far
+    public long getMessages() {
+        return Math.min(messages.get(), maxMessages);
+    }
+
+    //nonce || ciphertext || tag in one allocation
+    public byte[] encrypt(byte[] plain) throws GeneralSecurityException {
+        return encrypt(plain, 0, plain.length);
+    }
+
+    public byte[] encrypt(byte[] plain, int off, int len) throws GeneralSecurityException {
+        byte[] out = new byte[len + OVERHEAD];
+        nextNonce(out, 0);
+        Cipher c = cipher(Cipher.ENCRYPT_MODE, out, 0);
+        c.doFinal(plain, off, len, out, NONCE_BYTES);
+        return out;
+    }
+
+    //Plaintext of a message from encrypt, read where it lies without copying it first
+    public byte[] decrypt(byte[] message) throws GeneralSecurityException {
+        return decrypt(message, 0, message.length);
+    }
+
+    public byte[] decrypt(byte[] message, int off, int len) throws GeneralSecurityException {
+        if (len < OVERHEAD) throw new IllegalArgumentException("Message too short");
+        Cipher c = cipher(Cipher.DECRYPT_MODE, message, off);
+        return c.doFinal(message, off + NONCE_BYTES, len - NONCE_BYTES);
+    }
+
+    /**
+     * Encrypts in place. On entry buf holds NONCE_BYTES of room then the plaintext, from
+     * position to limit, with TAG_BYTES spare past the limit. On return position..limit is the
+     * whole message: nonce || ciphertext || tag.
+     */
+    public void encryptInPlace(ByteBuffer buf) throws GeneralSecurityException {
+        int start = buf.position(), end = buf.limit();
+        if (end - start < NONCE_BYTES || buf.capacity() - end < TAG_BYTES) {
+            throw new IllegalArgumentException("Buffer needs room for the nonce and tag");
+        }
+        byte[] nonce = new byte[NONCE_BYTES];
+        nextNonce(nonce, 0);
+        buf.put(start, nonce);
+        Cipher c = cipher(Cipher.ENCRYPT_MODE, nonce, 0);
+        ByteBuffer out = buf.duplicate().limit(end + TAG_BYTES).position(start + NONCE_BYTES);
+        c.doFinal(buf.duplicate().position(start + NONCE_BYTES), out);
+        buf.limit(end + TAG_BYTES);
+    }
+
+    /**
+     * Decrypts a whole message from position to limit in place. On return position..limit is
+     * the plaintext, starting NONCE_BYTES after the old position. Nothing is released if the
+     * tag does not match.
+     */
+    public void decryptInPlace(ByteBuffer buf) throws GeneralSecurityException {
+        int start = buf.position(), end = buf.limit();
+        if (end - start < OVERHEAD) throw new IllegalArgumentException("Message too short");
+        byte[] nonce = new byte[NONCE_BYTES];
+        buf.get(start, nonce);
+        Cipher c = cipher(Cipher.DECRYPT_MODE, nonce, 0);
+        ByteBuffer out = buf.duplicate().position(start + NONCE_BYTES);
+        int n = c.doFinal(buf.duplicate().position(start + NONCE_BYTES), out);
+        buf.limit(start + NONCE_BYTES + n).position(start + NONCE_BYTES);
+    }
+
+    /**
+     * Stream writing one message in the encrypt format; the tag is written on close.
+     * Each stream has its own Cipher, so it can stay open while the thread encrypts other things.
+     */
+    public OutputStream encryptingStream(OutputStream out) throws IOException {
+        byte[] nonce = new byte[NONCE_BYTES];
+        nextNonce(nonce, 0);
+        try {
+            Cipher c = newCipher();
+            c.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BYTES * 8, nonce));
+            out.write(nonce);
+            return new CipherOutputStream(out, c);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Could not start encryption", e);
+        }
+    }
+
+    /**
+     * Stream reading one message in the encrypt format. GCM only releases plaintext once the
+     * tag has been checked, so the message is held in memory until its end; large data belongs
+     * in SnapshotFile's separately sealed chunks. A bad tag fails the read with an IOException.
+     */
+    public InputStream decryptingStream(InputStream in) throws IOException {
+        byte[] nonce = in.readNBytes(NONCE_BYTES);
+        if (nonce.length < NONCE_BYTES) throw new EOFException("Encrypted stream cut short");
+        try {
+            Cipher c = newCipher();
+            c.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BYTES * 8, nonce));
+            return new CipherInputStream(in, c);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Could not start decryption", e);
+        }
+    }
+
+    //This thread's cipher set up for one message with the nonce at nonce[off]
+    Cipher cipher(int mode, byte[] nonce, int off) throws GeneralSecurityException {
+        Cipher c = CIPHERS.get();
+        c.init(mode, key, new GCMParameterSpec(TAG_BYTES * 8, nonce, off, NONCE_BYTES));
+        return c;
+    }
+
+    //Writes the next unused nonce at out[off], IllegalStateException once the key has sealed maxMessages
+    void nextNonce(byte[] out, int off) {
+        if (messages.getAndIncrement() >= maxMessages) {
+            throw new IllegalStateException("Key has encrypted " + maxMessages + " messages, replace it in the keystore");
+        }
+        while (true) {
+            NonceRange r = range;
+            long n = r.used.getAndIncrement();
+            if (n < rekeyAfter) {
+                ByteBuffer.wrap(out, off, NONCE_BYTES).putInt(r.fixed).putLong(r.start + n);
+                return;
+            }
+            //Range used up, the first thread here swaps in a fresh one
+            synchronized (this) {
+                if (range == r) {
+                    range = new NonceRange();
+                    ranges.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private static Cipher newCipher() {
+        try {
+            return Cipher.getInstance(TRANSFORM);
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package Program;
+
+//Whether a queue mutation returns before or after its log and audit records are written
+public enum Durability {
+    SYNC,  //wait for the commit stage (lock is already released), UncheckedIOException if the log write failed
+    ASYNC  //return straight away, records follow in order
+}
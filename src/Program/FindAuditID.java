@@ -14,11 +14,16 @@ public class FindAuditID {
                 // Audit ID 1: Login attempts
                 return "login_attempts.log";
             case "LOGINSUCCESS":
+            case "LOGIN":
                 // Audit ID 2: Successful login attempts
                 return "successful_logins.log";
+            case "ACCESSDENIED":
+                return "access_denied.log";
 
                 case "REGISTERED":
                 return "account_registered.log";
+            case "REHASH":
+                return "password_rehash.log";
 
             case "LOGOUT":
                 return "account_logout.log";
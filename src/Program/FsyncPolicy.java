@@ -0,0 +1,55 @@
+package Program;
+
+//When the ticket log is forced to disk, see TicketFileHandler.setFsyncPolicy
+public enum FsyncPolicy {
+    NONE,        //Left to the OS, a crash can lose recent records
+    INTERVAL,    //Background fsync every few ms, bounds what a crash can lose
+    PER_COMMIT;  //Every group commit is fsynced before its callers are told
+
+    //Used for "interval" without a number
+    public static final long DEFAULT_INTERVAL_MILLIS = 100;
+
+    //A policy with its interval, 0 unless INTERVAL
+    public static final class Setting {
+        public final FsyncPolicy policy;
+        public final long intervalMillis;
+
+        Setting(FsyncPolicy policy, long intervalMillis) {
+            this.policy = policy;
+            this.intervalMillis = intervalMillis;
+        }
+    }
+
+    public static FsyncPolicy fromName(String name) {
+        return parse(name).policy;
+    }
+
+    /**
+     * "none", "per_commit", "interval" (every DEFAULT_INTERVAL_MILLIS) or a number of milliseconds
+     * for INTERVAL, 0 meaning PER_COMMIT. Anything else is reported on stderr and PER_COMMIT is
+     * used, so a bad setting never stops the program from starting.
+     */
+    public static Setting parse(String name) {
+        if (name == null || name.isBlank()) return new Setting(PER_COMMIT, 0);
+        String n = name.trim().toUpperCase();
+        if (n.chars().allMatch(Character::isDigit)) {
+            try {
+                long millis = Long.parseLong(n);
+                return millis > 0 ? new Setting(INTERVAL, millis) : new Setting(PER_COMMIT, 0);
+            } catch (NumberFormatException e) {
+                return fallback(name);
+            }
+        }
+        try {
+            FsyncPolicy p = valueOf(n);
+            return new Setting(p, p == INTERVAL ? DEFAULT_INTERVAL_MILLIS : 0);
+        } catch (IllegalArgumentException e) {
+            return fallback(name);
+        }
+    }
+
+    private static Setting fallback(String name) {
+        System.err.println("Unknown fsync policy '" + name + "', using per_commit");
+        return new Setting(PER_COMMIT, 0);
+    }
+}
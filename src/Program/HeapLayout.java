@@ -0,0 +1,16 @@
+package Program;
+
+//Memory layout of the per-level heaps in PriorityQueue
+public enum HeapLayout {
+    OBJECT,           //TicketHeap, binary heap of Ticket references
+    PACKED_BINARY,    //PackedTicketHeap, parallel primitive arrays, 2 children per node
+    PACKED_QUATERNARY; //PackedTicketHeap, 4 children per node, shallower tree
+
+    LevelHeap create(int capacity) {
+        return switch (this) {
+            case OBJECT -> new TicketHeap(capacity);
+            case PACKED_BINARY -> new PackedTicketHeap(capacity, 2);
+            case PACKED_QUATERNARY -> new PackedTicketHeap(capacity, 4);
+        };
+    }
+}
@@ -0,0 +1,66 @@
+package Program;
+
+import java.util.Random;
+
+/**
+ * Compares the PriorityQueue heap layouts at 10k, 100k and 1M queued tickets.
+ * Each round fills the queue, then runs poll/add pairs and priority updates through
+ * the storage hooks so only heap work is timed. Tickets are created in shuffled order
+ * so their objects are scattered in memory like a long-running queue.
+ * Run: java -Xmx3g Program.HeapLayoutBenchmark [sizes...]
+ */
+public class HeapLayoutBenchmark {
+    //Small sizes get extra warmup rounds so the JIT has settled
+    private static final int WARMUP_TICKETS = 2_000_000;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) {
+        int[] sizes = args.length == 0 ? new int[]{10_000, 100_000, 1_000_000} : new int[args.length];
+        for (int i = 0; i < args.length; i++) sizes[i] = Integer.parseInt(args[i]);
+
+        for (int n : sizes) {
+            Ticket[] pool = buildPool(n * 2, new Random(n));
+            int[] priorities = new int[pool.length];
+            for (int i = 0; i < pool.length; i++) priorities[i] = pool[i].getPriority();
+            for (HeapLayout layout : HeapLayout.values()) {
+                for (int i = 0; i < Math.max(2, WARMUP_TICKETS / n); i++) run(layout, pool, priorities, n);
+                long best = Long.MAX_VALUE;
+                for (int i = 0; i < ROUNDS; i++) best = Math.min(best, run(layout, pool, priorities, n));
+                System.out.printf("%,10d tickets %-18s %,8.1f ms  (%.0f ns per op)%n",
+                        n, layout, best / 1e6, (double) best / (3L * n));
+            }
+        }
+    }
+
+    //n inserts, n poll+add pairs, n/2 updates... roughly 3n heap operations
+    private static long run(HeapLayout layout, Ticket[] pool, int[] priorities, int n) {
+        PriorityQueue q = new PriorityQueue(Integer.MAX_VALUE, null, null, layout);
+        Random rnd = new Random(99);
+        int top = AbstractTicketQueue.topLevel();
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i++) q.insert(pool[i]);
+        for (int i = 0; i < n; i++) {
+            q.pollBest(top);
+            q.insert(pool[n + i]);
+            if ((i & 1) == 0) q.reprioritize(pool[n + rnd.nextInt(i + 1)].getTicketID(), rnd.nextInt(1000));
+        }
+        long elapsed = System.nanoTime() - start;
+        for (int i = 0; i < pool.length; i++) pool[i].setPriority(priorities[i]);
+        return elapsed;
+    }
+
+    //Wide priority spread so the heap is deep, all one level to stress a single heap
+    private static Ticket[] buildPool(int n, Random rnd) {
+        Ticket[] pool = new Ticket[n];
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        for (int i = n - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            int t = order[i]; order[i] = order[j]; order[j] = t;
+        }
+        for (int i = 0; i < n; i++) {
+            pool[order[i]] = new Ticket("bench " + i, "bench", rnd.nextInt(1000), SecurityLevel.BASE);
+        }
+        return pool;
+    }
+}
@@ -0,0 +1,22 @@
+package Program;
+
+import java.util.function.Consumer;
+
+//One security level's tickets inside PriorityQueue, see HeapLayout for the implementations
+//Not thread safe, the owning queue holds the lock
+interface LevelHeap {
+    int size();
+    boolean isEmpty();
+    boolean contains(int ticketID);
+    Ticket get(int i); //Raw slot access for scans, not sorted order
+    int arity(); //Children of slot i are arity*i+1 .. arity*i+arity
+    //Every ticket in an order that rebuilds equal tie-breaking when fed back through addAll
+    void scanByArrival(Consumer<Ticket> visitor);
+    Ticket peek();
+    void add(Ticket t);
+    void addAll(MyList<Ticket> tickets);
+    Ticket poll();
+    //Returns the ticket whose priority changed, or null if not here
+    Ticket updatePriority(int ticketID, int newPriority);
+    boolean remove(int ticketID);
+}
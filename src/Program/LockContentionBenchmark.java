@@ -0,0 +1,89 @@
+package Program;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Dashboard-style readers (peek + list) against a steady stream of ticket writes.
+ * EXCLUSIVE wraps every call in one ReentrantLock to reproduce the old single-lock queue,
+ * SHARED uses the queue's own read/write lock. Writes go through the public API so they pay
+ * the same audit and log cost as in production; run from a scratch directory.
+ * The shared lock only pays off with readers on several cores; on a single core both modes
+ * come out within noise of each other, and what is left to check is the write rate holding.
+ * Run: java Program.LockContentionBenchmark [readers] [seconds] [writesPerSecond]
+ */
+public class LockContentionBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int readers = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int writesPerSecond = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        for (boolean exclusive : new boolean[]{true, false}) {
+            run(exclusive, readers, seconds, writesPerSecond);
+        }
+    }
+
+    private static void run(boolean exclusive, int readers, int seconds, int writesPerSecond) throws Exception {
+        PriorityQueue q = new PriorityQueue(Integer.MAX_VALUE);
+        User viewer = new User("dash", "h", UserRole.TECHNICIAN, SecurityLevel.TOPLEVEL);
+        //Realistic backlog for the list call to walk, through addAll so size and the cap are kept
+        List<Ticket> seed = new ArrayList<>(5_000);
+        for (int i = 0; i < 5_000; i++) seed.add(new Ticket(RequestType.NETWORK, "seed " + i, "bench"));
+        q.addAll(seed);
+
+        ReentrantLock global = new ReentrantLock();
+        AtomicBoolean stop = new AtomicBoolean();
+        LongAdder reads = new LongAdder();
+        LongAdder writes = new LongAdder();
+        CountDownLatch done = new CountDownLatch(readers + 1);
+
+        for (int r = 0; r < readers; r++) {
+            new Thread(() -> {
+                while (!stop.get()) {
+                    if (exclusive) global.lock();
+                    try {
+                        q.peek();
+                        q.listAccessibleTickets(viewer);
+                    } finally {
+                        if (exclusive) global.unlock();
+                    }
+                    reads.increment();
+                }
+                done.countDown();
+            }).start();
+        }
+
+        long intervalNanos = 1_000_000_000L / writesPerSecond;
+        new Thread(() -> {
+            long next = System.nanoTime();
+            boolean add = true;
+            while (!stop.get()) {
+                if (exclusive) global.lock();
+                try {
+                    if (add) q.addTicket(new Ticket(RequestType.OTHER, "load", "bench"), null);
+                    else q.pollTicket(null);
+                } finally {
+                    if (exclusive) global.unlock();
+                }
+                add = !add;
+                writes.increment();
+                next += intervalNanos;
+                long wait = next - System.nanoTime();
+                if (wait > 0) java.util.concurrent.locks.LockSupport.parkNanos(wait);
+            }
+            done.countDown();
+        }).start();
+
+        Thread.sleep(seconds * 1000L);
+        stop.set(true);
+        done.await();
+        System.out.printf("%-9s %d readers: %,.0f reads/s, %,.0f writes/s%n",
+                exclusive ? "EXCLUSIVE" : "SHARED", readers,
+                reads.sum() / (double) seconds, writes.sum() / (double) seconds);
+    }
+}
@@ -0,0 +1,33 @@
+package Program;
+
+//One record of the binary ticket log, as read back by TicketFileHandler.readRecords
+public final class LogRecord {
+    public enum Op { ADD, UPDATE, DELETE }
+
+    private final long seq;
+    private final long timestamp;
+    private final Op op;
+    private final int ticketID;
+    private final Ticket ticket;
+
+    LogRecord(long seq, long timestamp, Op op, int ticketID, Ticket ticket) {
+        this.seq = seq;
+        this.timestamp = timestamp;
+        this.op = op;
+        this.ticketID = ticketID;
+        this.ticket = ticket;
+    }
+
+    public long getSeq() { return seq; }
+    //Epoch milliseconds
+    public long getTimestamp() { return timestamp; }
+    public Op getOp() { return op; }
+    public int getTicketID() { return ticketID; }
+    //Ticket state the record carries, null for DELETE
+    public Ticket getTicket() { return ticket; }
+
+    @Override
+    public String toString() {
+        return "#" + seq + " " + op + " " + ticketID + (ticket == null ? "" : " " + ticket);
+    }
+}
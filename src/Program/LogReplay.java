@@ -0,0 +1,247 @@
+package Program;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32C;
+
+/**
+ * Parallel replay of the binary ticket log.
+ * The log is cut into chunks of about chunkBytes at record boundaries, found by walking
+ * only the length fields. Chunks are read with positional reads into heap buffers pooled
+ * per replay rather than memory-mapped, so nothing keeps the files open once replay
+ * returns and roll, compaction and retention can rename or delete them straight away
+ * (Windows refuses both while a mapping is alive). Chunks are checked in parallel, each into its
+ * own last-writer-wins map of ticket ID to the offset of its newest record there (or a
+ * delete); sequence order is checked within and across chunks. Merging walks the chunks
+ * newest first so each ticket's final record is found once, and only those records are
+ * turned into tickets, again in parallel, after reading their chunk once more. A record that is torn, fails its CRC or breaks
+ * the sequence order ends the replay exactly where sequential replay would stop.
+ */
+final class LogReplay {
+    static final int DEFAULT_CHUNK_BYTES = 8 * 1024 * 1024;
+    //Window the boundary walk reads at a time, bigger than any record
+    private static final int WALK_WINDOW = 4 * 1024 * 1024;
+
+    private LogReplay() {}
+
+    //Chunk map values: offset of the newest record in the chunk, or one of these
+    private static final int NONE = -1;
+    private static final int DELETED = -2;
+
+    private static final class Chunk {
+        final FileChannel ch;
+        final long start, end;
+        MyIntMap latest;
+        long firstSeq, lastSeq;
+        int records;
+        String torn;
+        long tornAt;
+        //Offsets of the records this chunk contributes to the final state, and their tickets
+        final MyArrayList<Integer> winners = new MyArrayList<>();
+        Ticket[] tickets;
+
+        Chunk(FileChannel ch, long start, long end) {
+            this.ch = ch;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    static int replay(Path log, long from, Map<Integer, Ticket> latestTickets,
+                      ForkJoinPool pool, int chunkBytes) throws IOException {
+        return replay(List.of(log), from, latestTickets, pool, chunkBytes);
+    }
+
+    /**
+     * Applies every record of the given log segments, oldest first, to latestTickets and returns
+     * how many were applied. The first segment is read from file offset "from", the others from
+     * their first record. A torn record is reported on stderr and ends the replay.
+     */
+    static int replay(List<Path> segments, long from, Map<Integer, Ticket> latestTickets,
+                      ForkJoinPool pool, int chunkBytes) throws IOException {
+        List<FileChannel> channels = new ArrayList<>();
+        //One buffer per worker at most, handed from chunk to chunk
+        Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+        try {
+            String[] walkTorn = new String[1];
+            List<Chunk> chunks = new ArrayList<>();
+            ByteBuffer window = ByteBuffer.allocate(WALK_WINDOW);
+            for (int i = 0; i < segments.size() && walkTorn[0] == null; i++) {
+                FileChannel ch = FileChannel.open(segments.get(i), StandardOpenOption.READ);
+                channels.add(ch);
+                split(ch, i == 0 ? from : TicketLogCodec.HEADER_SIZE, ch.size(), chunkBytes, chunks, walkTorn, window);
+            }
+            buffers.add(window);
+            forEachChunk(pool, chunks, buffers, LogReplay::check);
+
+            //Stop where a sequential reader would
+            int used = 0, applied = 0;
+            long lastSeq = 0;
+            String torn = walkTorn[0];
+            for (Chunk c : chunks) {
+                if (c.records > 0 && c.firstSeq <= lastSeq) {
+                    torn = "sequence " + c.firstSeq + " after " + lastSeq + " at offset " + c.start;
+                    break;
+                }
+                used++;
+                applied += c.records;
+                if (c.records > 0) lastSeq = c.lastSeq;
+                if (c.torn != null) {
+                    torn = c.torn + " at offset " + c.tornAt;
+                    break;
+                }
+            }
+
+            //Newest chunk first: the first record seen for a ticket is its final state
+            MyIntMap seen = new MyIntMap();
+            for (int i = used - 1; i >= 0; i--) {
+                Chunk c = chunks.get(i);
+                c.latest.forEach((id, offset) -> {
+                    if (seen.put(id, 1) != NONE) return;
+                    if (offset == DELETED) latestTickets.remove(id);
+                    else c.winners.add(offset);
+                });
+            }
+            forEachChunk(pool, chunks.subList(0, used), buffers, LogReplay::materialize);
+            for (int i = 0; i < used; i++) {
+                for (Ticket t : chunks.get(i).tickets) latestTickets.put(t.getTicketID(), t);
+            }
+            if (torn != null) System.err.println("Ticket log replay stopped at a torn record: " + torn);
+            return applied;
+        } finally {
+            for (FileChannel ch : channels) ch.close();
+        }
+    }
+
+    //Adds record-aligned chunks covering [from, end of the last whole record) of one file
+    private static void split(FileChannel ch, long from, long size, int chunkBytes,
+                              List<Chunk> chunks, String[] torn, ByteBuffer window) throws IOException {
+        long chunkStart = from, at = from;
+        while (at < size) {
+            read(ch, window, at, (int) Math.min(WALK_WINDOW, size - at));
+            int off = 0;
+            boolean cut = false;
+            while (true) {
+                int len = TicketLogCodec.recordLength(window, off);
+                if (len < 0 || window.limit() - off < len) {
+                    //Runs past the window: walk on from here in the next one, unless this was the file's end
+                    cut = at + window.limit() == size || len < 0 && window.limit() - off >= 8;
+                    break;
+                }
+                off += len;
+                if (at + off - chunkStart >= chunkBytes) {
+                    chunks.add(new Chunk(ch, chunkStart, at + off));
+                    chunkStart = at + off;
+                }
+            }
+            at += off;
+            if (cut) {
+                if (at < size) torn[0] = "record cut short or bad length at offset " + at;
+                break;
+            }
+            if (off == 0) break; //a single record larger than a window cannot happen, bodies are capped
+        }
+        if (at > chunkStart) chunks.add(new Chunk(ch, chunkStart, at));
+    }
+
+    //Check or materialize one chunk, run on pool workers with a buffer nobody else is using
+    private interface ChunkTask {
+        void run(Chunk c, ByteBuffer buf) throws IOException;
+    }
+
+    private static void forEachChunk(ForkJoinPool pool, List<Chunk> chunks, Queue<ByteBuffer> buffers,
+                                     ChunkTask task) throws IOException {
+        if (pool == null || chunks.size() <= 1) {
+            for (Chunk c : chunks) withBuffer(c, buffers, task);
+            return;
+        }
+        try {
+            pool.submit(() -> IntStream.range(0, chunks.size()).parallel().forEach(i -> {
+                try {
+                    withBuffer(chunks.get(i), buffers, task);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            })).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException u) throw u.getCause();
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Log replay interrupted");
+        }
+    }
+
+    private static void withBuffer(Chunk c, Queue<ByteBuffer> buffers, ChunkTask task) throws IOException {
+        int length = Math.toIntExact(c.end - c.start);
+        ByteBuffer buf = buffers.poll();
+        if (buf == null || buf.capacity() < length) buf = ByteBuffer.allocate(Math.max(length, WALK_WINDOW));
+        try {
+            task.run(c, buf);
+        } finally {
+            buffers.add(buf);
+        }
+    }
+
+    //Fills buf with length bytes from position, ready to read
+    private static void read(FileChannel ch, ByteBuffer buf, long position, int length) throws IOException {
+        buf.clear().limit(length);
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, position + buf.position()) < 0) {
+                throw new EOFException("Ticket log shrank during replay at offset " + (position + buf.position()));
+            }
+        }
+        buf.flip();
+    }
+
+    //Verifies every record and keeps the offset of each ticket's newest one, builds no tickets
+    private static void check(Chunk c, ByteBuffer buf) throws IOException {
+        read(c.ch, buf, c.start, (int) (c.end - c.start));
+        c.latest = new MyIntMap(1024, NONE);
+        TicketLogCodec.Decoded d = new TicketLogCodec.Decoded();
+        CRC32C crc = new CRC32C();
+        long previous = Long.MIN_VALUE;
+        while (buf.hasRemaining()) {
+            int at = buf.position();
+            String why = TicketLogCodec.decode(buf, previous, d, crc, false);
+            if (why != null) {
+                c.torn = why;
+                c.tornAt = c.start + at;
+                return;
+            }
+            if (c.records++ == 0) c.firstSeq = d.seq;
+            c.lastSeq = previous = d.seq;
+            c.latest.put(d.ticketID, d.op == TicketLogCodec.OP_DELETE ? DELETED : at);
+        }
+    }
+
+    //Reads the chunk again, only the records that survive the merge are decoded into tickets
+    private static void materialize(Chunk c, ByteBuffer buf) throws IOException {
+        TicketLogCodec.Decoded d = new TicketLogCodec.Decoded();
+        CRC32C crc = new CRC32C();
+        c.tickets = new Ticket[c.winners.size()];
+        if (c.tickets.length == 0) return;
+        read(c.ch, buf, c.start, (int) (c.end - c.start));
+        for (int i = 0; i < c.tickets.length; i++) {
+            buf.position(c.winners.get(i));
+            //Already checked, cannot fail now
+            TicketLogCodec.decode(buf, Long.MIN_VALUE, d, crc, true);
+            c.tickets[i] = d.ticket;
+        }
+    }
+}
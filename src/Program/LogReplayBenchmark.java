@@ -0,0 +1,74 @@
+package Program;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Ticket log replay throughput: the sequential record reader against LogReplay with
+ * pools of 1, 2, 4... up to the core count, over a generated log of ADD/UPDATE/DELETE records.
+ * Run from a scratch directory.
+ * Run: java -Xmx2g Program.LogReplayBenchmark [records]
+ */
+public class LogReplayBenchmark {
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        Path log = Files.createTempFile("bench", ".wal");
+        Files.delete(log);
+        TicketFileHandler h = new TicketFileHandler(log.toString(), null);
+        h.setGroupCommit(true);
+        Random rnd = new Random(1);
+        int nextId = 1;
+        for (int i = 0; i < n; i++) {
+            int op = rnd.nextInt(10);
+            if (op < 5 || nextId < 100) {
+                h.logAdd(new Ticket(nextId++, RequestType.OTHER, "Ticket title " + i, "user" + rnd.nextInt(50), null,
+                        rnd.nextInt(9), SecurityLevel.BASE, TicketStatus.OPEN));
+            } else if (op < 9) {
+                h.logUpdate(new Ticket(1 + rnd.nextInt(nextId - 1), RequestType.OTHER, "Ticket title " + i, "user1",
+                        "owner", rnd.nextInt(9), SecurityLevel.BASE, TicketStatus.OPEN));
+            } else {
+                h.logDelete(1 + rnd.nextInt(nextId - 1));
+            }
+            if (i % 10_000 == 0) h.commit();
+        }
+        h.close();
+        double mb = Files.size(log) / 1e6;
+        System.out.printf("%d records, %.1f MB%n", n, mb);
+
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < ROUNDS + 1; r++) {
+            long t0 = System.nanoTime();
+            Map<Integer, Ticket> latest = new HashMap<>();
+            try (var ch = java.nio.channels.FileChannel.open(log);
+                 TicketLogCodec.Reader reader = new TicketLogCodec.Reader(ch, TicketLogCodec.HEADER_SIZE, 0)) {
+                while (reader.next()) {
+                    if (reader.op == TicketLogCodec.OP_DELETE) latest.remove(reader.ticketID);
+                    else latest.put(reader.ticketID, reader.ticket);
+                }
+            }
+            //First round is warmup
+            if (r > 0) best = Math.min(best, System.nanoTime() - t0);
+        }
+        System.out.printf("sequential: %7.1f MB/s%n", mb / (best / 1e9));
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int workers = 1; workers <= cores; workers = workers == cores ? cores + 1 : Math.min(cores, workers * 2)) {
+            ForkJoinPool pool = new ForkJoinPool(workers);
+            best = Long.MAX_VALUE;
+            for (int r = 0; r < ROUNDS + 1; r++) {
+                long t0 = System.nanoTime();
+                LogReplay.replay(log, TicketLogCodec.HEADER_SIZE, new HashMap<>(), pool, LogReplay.DEFAULT_CHUNK_BYTES);
+                if (r > 0) best = Math.min(best, System.nanoTime() - t0);
+            }
+            pool.shutdown();
+            System.out.printf("%2d workers: %7.1f MB/s%n", workers, mb / (best / 1e9));
+        }
+        Files.deleteIfExists(log);
+    }
+}
@@ -0,0 +1,190 @@
+package Program;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * One file of the segmented ticket log and its sparse index.
+ * The index holds (file offset, seq, timestamp) of the record starting at about every
+ * INDEX_EVERY bytes. Sequence numbers and timestamps only grow within the log, so a binary
+ * search finds where to start reading for a sequence number or a time in O(log n).
+ * Sealed segments keep their index in a sidecar "<segment>.idx":
+ *   magic "TQIX", version byte, start, end, last seq, last millis (longs), entry count (int),
+ *   entries of three longs, CRC32C of everything before it.
+ * A missing or damaged sidecar is rebuilt by scanning the segment.
+ */
+final class LogSegment {
+    static final int INDEX_EVERY = 4096;
+    private static final byte[] MAGIC = {'T', 'Q', 'I', 'X'};
+    private static final int VERSION = 1;
+
+    Path path;
+    //Logical positions the segment's records cover, [start, end)
+    final long start;
+    long end;
+    long lastSeq;
+    long lastMillis = Long.MIN_VALUE;
+    private long[] offsets = new long[16], seqs = new long[16], millis = new long[16];
+    private int count;
+    private long nextIndexAt;
+
+    LogSegment(Path path, long start) {
+        this.path = path;
+        this.start = start;
+        this.end = start;
+    }
+
+    //Called for every record in file order, offset is where the record starts in the file
+    void note(long offset, int length, long seq, long recordMillis) {
+        if (offset >= nextIndexAt) {
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                seqs = Arrays.copyOf(seqs, count * 2);
+                millis = Arrays.copyOf(millis, count * 2);
+            }
+            offsets[count] = offset;
+            seqs[count] = seq;
+            millis[count] = recordMillis;
+            count++;
+            nextIndexAt = offset + INDEX_EVERY;
+        }
+        lastSeq = seq;
+        lastMillis = recordMillis;
+        end = start + offset + length - TicketLogCodec.HEADER_SIZE;
+    }
+
+    boolean isEmpty() { return count == 0; }
+
+    long firstMillis() { return count == 0 ? Long.MAX_VALUE : millis[0]; }
+
+    long firstSeq() { return count == 0 ? Long.MAX_VALUE : seqs[0]; }
+
+    //File offset to start reading from so no record with seq >= target is missed
+    long seekSeq(long target) {
+        return floor(seqs, target);
+    }
+
+    //File offset to start reading from so no record at or after time target is missed
+    long seekMillis(long target) {
+        return floor(millis, target);
+    }
+
+    //Offset of the last entry whose key is below target, everything before it is below too
+    private long floor(long[] keys, long target) {
+        int lo = 0, hi = count - 1, found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] < target) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found < 0 ? TicketLogCodec.HEADER_SIZE : offsets[found];
+    }
+
+    //File offset a logical position maps to
+    long offsetOf(long position) {
+        return TicketLogCodec.HEADER_SIZE + (position - start);
+    }
+
+    Path indexPath() {
+        return path.resolveSibling(path.getFileName() + ".idx");
+    }
+
+    //Written to a temp file and swapped in, so a crash leaves the old sidecar or none
+    void writeIndex() throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(MAGIC.length + 1 + 32 + 4 + count * 24 + 4);
+        b.put(MAGIC).put((byte) VERSION).putLong(start).putLong(end).putLong(lastSeq).putLong(lastMillis).putInt(count);
+        for (int i = 0; i < count; i++) b.putLong(offsets[i]).putLong(seqs[i]).putLong(millis[i]);
+        CRC32C crc = new CRC32C();
+        crc.update(b.array(), 0, b.position());
+        b.putInt((int) crc.getValue()).flip();
+        Path temp = indexPath().resolveSibling(indexPath().getFileName() + ".temp");
+        try (FileChannel ch = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (b.hasRemaining()) ch.write(b);
+            ch.force(true);
+        }
+        Files.move(temp, indexPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * A sealed segment: its sidecar index when that is intact and matches the file,
+     * otherwise a scan of the segment, after which the sidecar is rewritten.
+     */
+    static LogSegment openSealed(Path path) throws IOException {
+        long[] header;
+        long size;
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            header = TicketLogCodec.readHeader(ch);
+            size = ch.size();
+        }
+        LogSegment seg = new LogSegment(path, header[0]);
+        if (seg.readIndex(size)) return seg;
+        String torn = seg.scan();
+        if (torn != null) System.err.println("Sealed log segment " + path + " is damaged: " + torn);
+        seg.writeIndex();
+        return seg;
+    }
+
+    /**
+     * Rebuilds the index from the records, returns why reading stopped early or null.
+     * end is then just past the last intact record.
+     */
+    String scan() throws IOException {
+        count = 0;
+        nextIndexAt = 0;
+        end = start;
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ);
+             TicketLogCodec.Reader r = new TicketLogCodec.Reader(ch, TicketLogCodec.HEADER_SIZE, 0)) {
+            long at = TicketLogCodec.HEADER_SIZE;
+            while (r.next()) {
+                note(at, (int) (r.position() - at), r.seq, r.millis);
+                at = r.position();
+            }
+            return r.torn();
+        }
+    }
+
+    private boolean readIndex(long fileSize) {
+        Path idx = indexPath();
+        if (!Files.exists(idx)) return false;
+        try {
+            ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(idx));
+            if (b.remaining() < MAGIC.length + 1 + 36 + 4) return false;
+            CRC32C crc = new CRC32C();
+            crc.update(b.array(), 0, b.limit() - 4);
+            if ((int) crc.getValue() != b.getInt(b.limit() - 4)) return false;
+            byte[] magic = new byte[MAGIC.length];
+            b.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || b.get() != VERSION || b.getLong() != start) return false;
+            long e = b.getLong(), s = b.getLong(), m = b.getLong();
+            int n = b.getInt();
+            if (n < 0 || b.remaining() != n * 24L + 4 || offsetOf(e) != fileSize) return false;
+            offsets = new long[Math.max(16, n)];
+            seqs = new long[offsets.length];
+            millis = new long[offsets.length];
+            for (int i = 0; i < n; i++) {
+                offsets[i] = b.getLong();
+                seqs[i] = b.getLong();
+                millis[i] = b.getLong();
+            }
+            count = n;
+            end = e;
+            lastSeq = s;
+            lastMillis = m;
+            return true;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+}
@@ -1,20 +1,19 @@
 package Program;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
 
 public class LoginSystem {
 
    //Set the current session to user details and return boolean
     public static boolean login(String username, String password) throws IOException {
         //Log attempt
-        if (SecurityUtil.logEvent("LOGIN ATTEMPT: " + username, "ATTEMPT")) {
+        if (SecurityUtil.logEvent("LOGIN ATTEMPT: " + username, "ATTEMPT", Durability.SYNC)) {
             //checks against saved details from given login parameters
             User user = validateUser(username, password);
             if (user != null) {
                 //Do not allow login if not logged into audit, even if standard, security standard
-                if (SecurityUtil.logEvent("Account Login " + user.getUsername(), "LOGIN")) {
+                if (SecurityUtil.logEvent("Account Login " + user.getUsername(), "LOGIN", Durability.SYNC)) {
                     // Set the current user in the session (only one active session allowed)
                     SessionManager.getInstance().setCurrentUser(user);
                     System.out.println("Login successful. Welcome, " + user.getUsername());
@@ -36,47 +35,42 @@ public class LoginSystem {
 
     //Validate users by given details
     private static User validateUser(String username, String password) {
-        //Find main account filebase
-        try (BufferedReader reader = new BufferedReader(new FileReader("accounts.csv"))) {
-            String line;
-            // Read header line (assumed to be present) and ignore it.
-            line = reader.readLine();
-            if (line == null) {
-                System.out.println("Account file is empty.");
+        try {
+            //One lookup in the account directory instead of a scan of the account file
+            User stored = AccountDirectory.getInstance().find(username);
+            //Unknown names cost a full hash too, so timing does not tell which names exist
+            if (stored == null) {
+                SecurityUtil.verifyUnknownUser(password);
                 return null;
             }
-            while ((line = reader.readLine()) != null) {
-                // Expected CSV format: username,role,securityLevel,passwordHash
-                String[] parts = line.split(",");
-                if (parts.length >= 4) {
-                    String fileUsername = parts[0];
-                    String roleString = parts[1];
-                    String securityLevelString = parts[2];
-                    String storedPasswordHash = parts[3];
-                    if (fileUsername.equals(username)) {
-                        // Security util verifys against hash which cannot be done directly
-                        if (SecurityUtil.verifyPassword(password, storedPasswordHash)) {
-                            // Create a user object from the file data.
-                            User user = new User(
-                                    fileUsername,
-                                    storedPasswordHash,
-                                    UserRole.valueOf(roleString),
-                                    SecurityLevel.valueOf(securityLevelString)
-                            );
-                            return user;
-                        }
-                    }
-                }
+            // Security util verifys against hash which cannot be done directly
+            if (SecurityUtil.verifyPassword(password, stored.getPasswordHash())) {
+                if (SecurityUtil.needsRehash(stored.getPasswordHash())) return upgradeHash(stored, password);
+                return stored;
             }
-        } catch (IOException e) {
-            System.out.println("Error reading accounts file:");
-            e.printStackTrace();
+        } catch (RejectedExecutionException e) {
+            System.out.println("Too many logins in progress, try again shortly.");
         } catch (Exception e) {
             System.out.println("Error during password verification:");
             e.printStackTrace();
         }
         return null;
     }
+
+    //Replaces a legacy or weak hash now that the password is known; the login goes ahead either way
+    private static User upgradeHash(User user, String password) {
+        try {
+            User upgraded = new User(user.getUsername(), SecurityUtil.generateSaltedHash(password), user.getRole(),
+                    user.getSecurityLevel());
+            AccountDirectory.getInstance().replace(upgraded);
+            SecurityUtil.logEvent("Password hash upgraded: " + user.getUsername(), "REHASH");
+            return upgraded;
+        } catch (Exception e) {
+            System.out.println("Could not upgrade password hash: " + e.getMessage());
+            return user;
+        }
+    }
+
     //Log user out
     public static void logout() throws IOException {
         // Retrieve the current user from the sessionManager.
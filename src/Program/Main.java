@@ -3,10 +3,13 @@ package Program;
 import javax.crypto.SecretKey;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.KeyStore;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 
 public class Main {
@@ -16,7 +19,30 @@ public class Main {
     private static final Path KEYSTORE_FILE = Path.of(System.getenv("KEYSTORE_FILE"));
 
     private static final String SNAPSHOT_PATH = "tickets.snapshot";
-    private static final String LOG_PATH = "ticketsLog.csv";
+    private static final String LOG_PATH = "tickets.wal";
+    //CSV log written by older versions, converted once on first start
+    private static final String LEGACY_LOG_PATH = "ticketsLog.csv";
+    //HEAP (default), HEAP_PACKED, HEAP_PACKED4 or BUCKET, see QueueMode
+    private static final QueueMode QUEUE_MODE = QueueMode.fromName(System.getenv("TICKET_QUEUE"));
+    //Most tickets queued before new ones wait, and how long create waits for room
+    private static final int SOFT_CAP = parseOrDefault(System.getenv("TICKET_SOFT_CAP"), AbstractTicketQueue.DEFAULT_SOFT_CAP);
+    private static final long FULL_WAIT_SECONDS = 5;
+    //Auto-snapshot at most this often, or sooner after this many admin changes
+    private static final int SNAPSHOT_MS = parseOrDefault(System.getenv("TICKET_SNAPSHOT_MS"),
+            (int) AbstractTicketQueue.DEFAULT_SNAPSHOT_INTERVAL_MS);
+    private static final int SNAPSHOT_EVERY = parseOrDefault(System.getenv("TICKET_SNAPSHOT_EVERY"),
+            AbstractTicketQueue.DEFAULT_SNAPSHOT_MUTATIONS);
+    //Ticket log durability: "per_commit" (default), "none", "interval", or fsync every N milliseconds
+    private static final FsyncPolicy.Setting FSYNC = FsyncPolicy.parse(System.getenv("TICKET_FSYNC"));
+    //Built on first use, keeps the audit indexes between queries
+    private static AuditQueryEngine auditQueries;
+    //Sealed log segments older than this are deleted once snapshots cover them, 0 keeps them all
+    private static final int LOG_RETAIN_DAYS = parseOrDefault(System.getenv("TICKET_LOG_RETAIN_DAYS"), 0);
+    //Archived audit segments older than this are deleted, 0 keeps them all
+    private static final int AUDIT_RETAIN_DAYS = parseOrDefault(System.getenv("TICKET_AUDIT_RETAIN_DAYS"), 0);
+    //About how long one password hash should take on this host, the PBKDF2 iterations are tuned to it
+    private static final int PASSWORD_HASH_MS = parseOrDefault(System.getenv("TICKET_PASSWORD_HASH_MS"),
+            (int) Pbkdf2Hasher.DEFAULT_TARGET_MILLIS);
 
     private static boolean exitApp = false;   // single flag controlling whether quit occurs
 
@@ -35,17 +61,43 @@ public class Main {
                 "ticketing-aes", new KeyStore.PasswordProtection(ksPwd)
         )).getSecretKey();
         SecurityUtil.init(aesKey);
+        SecurityUtil.getAuditLog().setRetention(null, AUDIT_RETAIN_DAYS * 86_400_000L, 0);
+        SecurityUtil.setPasswordService(new PasswordService(new Pbkdf2Hasher(PASSWORD_HASH_MS)));
+        //Load the accounts once now rather than on the first login
+        AccountDirectory.getInstance().size();
 
         // Load prerequisite logs and queue data
+        if (!Files.exists(Path.of(LOG_PATH)) && Files.exists(Path.of(LEGACY_LOG_PATH))) {
+            int records = TicketFileHandler.convertCsvLog(LEGACY_LOG_PATH, LOG_PATH);
+            System.out.println("Converted " + records + " records from " + LEGACY_LOG_PATH + " to " + LOG_PATH);
+        }
+        //Newest snapshot plus the log written after it, full replay if there is none.
+        //Only used for recovery, the queue opens its own handler on the same log
+        final TicketQueue ticketQueue;
         TicketFileHandler fileHandler = new TicketFileHandler(LOG_PATH, SNAPSHOT_PATH);
-        final PriorityQueue ticketQueue = fileHandler.loadQueueFromLog();
+        try {
+            ticketQueue = fileHandler.recover(QUEUE_MODE, SOFT_CAP);
+        } finally {
+            fileHandler.close();
+        }
         Ticket.syncGlobalIDCounter(ticketQueue.getMaxTicketID());
+        ticketQueue.setSnapshotPolicy(SNAPSHOT_MS, SNAPSHOT_EVERY);
+        ticketQueue.setFsyncPolicy(FSYNC.policy, FSYNC.intervalMillis);
+        ticketQueue.setLogRetention(LOG_RETAIN_DAYS * 86_400_000L, 0);
 
         //Ensures crash stable encrypted queue
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             try {
+                //Pending log records first so the snapshot never runs ahead of the log
+                ticketQueue.flush();
                 User u = SessionManager.getInstance().getCurrentUser();
                 if (u != null) ticketQueue.saveSnapshotBinary(u);
+                //Coalesced auto-snapshot still waiting on its interval
+                ticketQueue.flushSnapshots();
+                //Last so the log is forced and closed after everything above
+                ticketQueue.close();
+                //Audit records the steps above queued, sealed before the JVM goes
+                SecurityUtil.closeAudit();
             } catch (Exception e) {
                 System.err.println("Shutdown snapshot failed: " + e.getMessage());
             }
@@ -103,7 +155,7 @@ public class Main {
     }
 
     //Once logged into verified account
-    private static void mainMenu(Scanner sc, PriorityQueue q) throws IOException {
+    private static void mainMenu(Scanner sc, TicketQueue q) throws IOException {
         User cur = SessionManager.getInstance().getCurrentUser();
         System.out.println("\n=== Main Menu (User: " + cur.getUsername() + ") ===");
         System.out.println("0. Register User"); //Allows user to register other users of relative security
@@ -118,22 +170,35 @@ public class Main {
         System.out.println("9. Save Queue Snapshot"); //Final non-auto snapshot reserved only for admins
         System.out.println("10. Logout");
         System.out.println("11. Exit");
+        System.out.println("12. Top Tickets"); //Best k tickets in priority order
+        System.out.println("13. Compact Ticket Log"); //Admin, drops log already in snapshots
+        System.out.println("14. View Audit Log"); //Admin, indexed search over every audit file
+        System.out.println("15. Verify Audit Log"); //Admin, checks the audit hash chains and seals
         System.out.print("Select an option: ");
 
-        switch (sc.nextLine().trim()) {
-            case "0" -> registerUser(sc);
-            case "1" -> createTicket(sc, q, cur);
-            case "2" -> claimTicket(q, cur);
-            case "3" -> viewTopTicket(q);
-            case "4" -> updatePriority(sc, q, cur);
-            case "5" -> deleteTicket(sc, q, cur);
-            case "6" -> completeTicket(sc, q, cur);
-            case "7" -> listTickets(q, cur);
-            case "8" -> searchTickets(sc, q, cur);
-            case "9" -> saveSnapshot(q);
-            case "10" -> LoginSystem.logout();
-            case "11" -> exitApp = true;
-            default -> System.out.println("Invalid option.");
+        try {
+            switch (sc.nextLine().trim()) {
+                case "0" -> registerUser(sc);
+                case "1" -> createTicket(sc, q, cur);
+                case "2" -> claimTicket(q, cur);
+                case "3" -> viewTopTicket(q);
+                case "4" -> updatePriority(sc, q, cur);
+                case "5" -> deleteTicket(sc, q, cur);
+                case "6" -> completeTicket(sc, q, cur);
+                case "7" -> listTickets(q, cur);
+                case "8" -> searchTickets(sc, q, cur);
+                case "9" -> saveSnapshot(q);
+                case "10" -> LoginSystem.logout();
+                case "11" -> exitApp = true;
+                case "12" -> topTickets(sc, q, cur);
+                case "13" -> compactLog(q, cur);
+                case "14" -> viewAuditLog(sc, cur);
+                case "15" -> verifyAuditLog(cur);
+                default -> System.out.println("Invalid option.");
+            }
+        } catch (UncheckedIOException e) {
+            //SYNC mutation that made it into the queue but not into the ticket log
+            System.out.println("Change applied but NOT saved to disk: " + e.getCause().getMessage());
         }
     }
 
@@ -161,7 +226,7 @@ public class Main {
     }
 
     //Use priority queue snapshot
-    private static void createTicket(Scanner sc, PriorityQueue q, User cur) {
+    private static void createTicket(Scanner sc, TicketQueue q, User cur) {
         System.out.println("Select request type:");
         for (int i = 0; i < RequestType.values().length; i++) {
             System.out.printf("  %d. %s%n", i + 1, RequestType.values()[i]);
@@ -191,12 +256,21 @@ public class Main {
         // --- 4) create & enqueue --------------------------------------------------
         Ticket t = new Ticket(type, title, cur.getUsername(), priority,
                 type.getDefaultLvl());
-        q.addTicket(t, cur);
-        System.out.println("Created: " + t);
+        try {
+            //Wait a little for room rather than dropping the ticket
+            if (q.offerTicket(t, cur, FULL_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                System.out.println("Created: " + t);
+            } else {
+                System.out.println("Queue is full, ticket not created. Please try again shortly.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.println("Ticket creation interrupted.");
+        }
     }
 
     // Main.claimTicket()
-    private static void claimTicket(PriorityQueue q, User cur) {
+    private static void claimTicket(TicketQueue q, User cur) {
         if (!SecurityUtil.hasRequiredPrivileges(cur, SecurityLevel.TOPLEVEL)) {
             System.out.println("Access denied."); return;
         }
@@ -212,12 +286,12 @@ public class Main {
         System.out.println("Claimed: " + t);
     }
 
-    private static void viewTopTicket(PriorityQueue q) {
+    private static void viewTopTicket(TicketQueue q) {
         Ticket t = q.peek();
         System.out.println(t != null ? "Top: " + t : "No tickets.");
     }
 
-    private static void updatePriority(Scanner sc, PriorityQueue q, User cur) {
+    private static void updatePriority(Scanner sc, TicketQueue q, User cur) {
         if (!SecurityUtil.hasRequiredPrivileges(cur, SecurityLevel.ADMIN)) {
             System.out.println("Access denied.");
             return;
@@ -234,7 +308,7 @@ public class Main {
         }
     }
 
-    private static void deleteTicket(Scanner sc, PriorityQueue q, User cur) {
+    private static void deleteTicket(Scanner sc, TicketQueue q, User cur) {
         if (!SecurityUtil.hasRequiredPrivileges(cur, SecurityLevel.ADMIN)) {
             System.out.println("Access denied.");
             return;
@@ -249,7 +323,7 @@ public class Main {
         }
     }
 
-    private static void completeTicket(Scanner sc, PriorityQueue q, User cur) {
+    private static void completeTicket(Scanner sc, TicketQueue q, User cur) {
         if (!SecurityUtil.hasRequiredPrivileges(cur, SecurityLevel.TOPLEVEL)) {
             System.out.println("Access denied.");
             return;
@@ -264,7 +338,7 @@ public class Main {
         }
     }
 
-    private static void listTickets(PriorityQueue q, User cur) {
+    private static void listTickets(TicketQueue q, User cur) {
         // grab the results first
         MyList<Ticket> tickets = q.listAccessibleTickets(cur);
         if (tickets.size() == 0) {
@@ -274,18 +348,92 @@ public class Main {
         }
     }
 
-    private static void searchTickets(Scanner sc, PriorityQueue q, User cur) {
+    private static void searchTickets(Scanner sc, TicketQueue q, User cur) {
         System.out.print("Keyword: ");
         String kw = sc.nextLine();
         q.searchAccessibleTickets(kw, cur).forEach(System.out::println);
     }
 
-    private static void saveSnapshot(PriorityQueue q) {
+    private static void topTickets(Scanner sc, TicketQueue q, User cur) {
+        System.out.print("How many: ");
+        int k = parseOrDefault(sc.nextLine(), 10);
+        MyList<Ticket> tickets = q.topK(cur, k);
+        if (tickets.size() == 0) {
+            System.out.println("No tickets found");
+        } else {
+            tickets.forEach(System.out::println);
+        }
+    }
+
+    private static void compactLog(TicketQueue q, User cur) {
+        try {
+            long dropped = q.compactLog(cur);
+            System.out.println("Log compacted, " + dropped + " bytes dropped.");
+        } catch (Exception e) {
+            System.out.println("Compaction error: " + e.getMessage());
+        }
+    }
+
+    private static void viewAuditLog(Scanner sc, User cur) {
+        System.out.print("Audit ID (blank for all): ");
+        String id = sc.nextLine().trim();
+        System.out.print("Username (blank for any): ");
+        String user = sc.nextLine().trim();
+        System.out.print("Hours back (blank for all): ");
+        int hours = parseOrDefault(sc.nextLine(), 0);
+        AuditQuery query = new AuditQuery();
+        if (!id.isEmpty()) query.logID(id.toUpperCase());
+        if (!user.isEmpty()) query.user(user);
+        if (hours > 0) query.between(System.currentTimeMillis() - hours * 3_600_000L, Long.MAX_VALUE);
+        if (auditQueries == null) auditQueries = new AuditQueryEngine(SecurityUtil.getAuditLog());
+        try {
+            String cursor = null;
+            do {
+                AuditQueryEngine.Page page = auditQueries.query(cur, query, cursor, 20);
+                page.getRecords().forEach(System.out::println);
+                if (page.getRecords().isEmpty()) System.out.println("No audit records found");
+                if (page.getDiverged() > 0) {
+                    System.out.println(page.getDiverged() + " of " + page.getTotalMatches()
+                            + " matches are missing from the primary or backup copy");
+                }
+                cursor = page.getNextCursor();
+                if (cursor != null) System.out.print("More? (y/n): ");
+            } while (cursor != null && sc.nextLine().trim().equalsIgnoreCase("y"));
+        } catch (IOException e) {
+            System.out.println("Audit query error: " + e.getMessage());
+        }
+    }
+
+    private static void verifyAuditLog(User cur) {
+        if (!FindPrivilegeLevel.checkAndLogPrivilege(cur, "VIEW_AUDIT_LOG")) {
+            System.out.println("Access denied.");
+            return;
+        }
+        try {
+            AuditVerifier.Report report = SecurityUtil.getAuditLog().verify(ForkJoinPool.commonPool());
+            System.out.println("Audit log checked: " + report.getRecords() + " records in " + report.getSegments() + " files");
+            if (report.isClean()) System.out.println("No tampering found.");
+            report.getBreaks().forEach(b -> System.out.println("BROKEN " + b));
+        } catch (IOException e) {
+            System.out.println("Audit verify error: " + e.getMessage());
+        }
+    }
+
+    private static int parseOrDefault(String value, int def) {
+        try {
+            return value == null ? def : Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    private static void saveSnapshot(TicketQueue q) {
         try {
             User u = SessionManager.getInstance().getCurrentUser();
             if (u != null) {
                 q.saveSnapshotBinary(u);
                 System.out.println("Snapshot saved.");
+                System.out.println("Snapshot stats: " + q.getSnapshotMetrics());
             }
         } catch (Exception e) {
             System.out.println("Snapshot error: " + e.getMessage());
@@ -0,0 +1,133 @@
+package Program;
+//Replacement for Map<Integer,Integer> without boxing
+
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from int keys to int values.
+ * Used by the queue to find a ticket's heap slot from its ID in O(1)
+ * without allocating an Integer per entry.
+ */
+public final class MyIntMap {
+    private static final int DEFAULT_CAP = 16;
+    //Marks an empty slot, ticket IDs are always positive
+    private static final int FREE = 0;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+    private final int missing; //returned by get when key not present
+
+    public MyIntMap(int expected, int missing) {
+        int cap = DEFAULT_CAP;
+        //keep load factor under 0.5 for short probe chains
+        while (cap < expected * 2) cap <<= 1;
+        keys = new int[cap];
+        values = new int[cap];
+        this.missing = missing;
+    }
+    //assigns default
+    public MyIntMap() { this(DEFAULT_CAP, -1); }
+
+    public int size() { return size; }
+
+    public int get(int key) {
+        checkKey(key);
+        int mask = keys.length - 1;
+        //Probe until key or empty slot found
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            if (keys[i] == key) return values[i];
+            if (keys[i] == FREE) return missing;
+        }
+    }
+
+    public boolean containsKey(int key) { return get(key) != missing; }
+
+    //Returns previous value or missing
+    public int put(int key, int value) {
+        checkKey(key);
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        for (; keys[i] != FREE; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                int old = values[i];
+                values[i] = value;
+                return old;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        //Grow once half full
+        if (++size * 2 > keys.length) rehash(keys.length << 1);
+        return missing;
+    }
+
+    //Returns removed value or missing
+    public int remove(int key) {
+        checkKey(key);
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (keys[i] != key) {
+            if (keys[i] == FREE) return missing;
+            i = (i + 1) & mask;
+        }
+        int old = values[i];
+        //Backward shift so later probes are not broken by the hole
+        int hole = i;
+        for (int j = (hole + 1) & mask; keys[j] != FREE; j = (j + 1) & mask) {
+            int home = mix(keys[j]) & mask;
+            //Move entry only if its home slot is not between hole and j
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+        }
+        keys[hole] = FREE;
+        size--;
+        //Shrink when mostly empty so a drained queue does not keep peak memory
+        if (keys.length > DEFAULT_CAP && size * 8 < keys.length) rehash(keys.length >> 1);
+        return old;
+    }
+
+    //Visits every entry, in no particular order
+    public void forEach(EntryVisitor visitor) {
+        for (int k = 0; k < keys.length; k++) {
+            if (keys[k] != FREE) visitor.visit(keys[k], values[k]);
+        }
+    }
+
+    public interface EntryVisitor {
+        void visit(int key, int value);
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        size = 0;
+    }
+
+    private void rehash(int newCap) {
+        int[] oldKeys = keys, oldValues = values;
+        keys = new int[newCap];
+        values = new int[newCap];
+        int mask = newCap - 1;
+        for (int k = 0; k < oldKeys.length; k++) {
+            if (oldKeys[k] == FREE) continue;
+            int i = mix(oldKeys[k]) & mask;
+            while (keys[i] != FREE) i = (i + 1) & mask;
+            keys[i] = oldKeys[k];
+            values[i] = oldValues[k];
+        }
+    }
+
+    //Spread sequential IDs across the table
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static void checkKey(int key) {
+        if (key == FREE) throw new IllegalArgumentException("Key 0 is reserved");
+    }
+}
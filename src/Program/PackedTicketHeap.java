@@ -0,0 +1,176 @@
+package Program;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * d-ary min-heap kept as parallel primitive arrays (structure of arrays).
+ * Sift comparisons only read prio[] and seq[], so they stay in cache instead of
+ * dereferencing a Ticket per step; the Ticket objects ride along in a side array.
+ * Ties on priority are broken by arrival sequence, so equal tickets come out FIFO.
+ */
+final class PackedTicketHeap implements LevelHeap, Serializable {
+    private static final long serialVersionUID = 1L;
+    //Never shrink below this many slots
+    private static final int MIN_SLOTS = 16;
+
+    private final int arity;
+    private int[] prio;
+    private long[] seq;
+    private int[] ids;
+    private Ticket[] tickets;
+    private int size;
+    private long nextSeq;
+    //ticketID -> heap slot, rebuilt after deserialising
+    private transient MyIntMap index;
+
+    PackedTicketHeap(int capacity, int arity) {
+        if (arity < 2) throw new IllegalArgumentException("Arity must be at least 2");
+        this.arity = arity;
+        allocate(Math.max(capacity, 1));
+        this.index = new MyIntMap(capacity, -1);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        index = new MyIntMap(ids.length, -1);
+        for (int i = 0; i < size; i++) index.put(ids[i], i);
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+    public boolean contains(int ticketID) { return index.containsKey(ticketID); }
+    public Ticket get(int i) { return tickets[i]; }
+    public Ticket peek() { return size == 0 ? null : tickets[0]; }
+    public int arity() { return arity; }
+
+    //Oldest sequence first, so a rebuilt heap breaks ties the same way
+    public void scanByArrival(Consumer<Ticket> visitor) {
+        Integer[] slots = new Integer[size];
+        for (int i = 0; i < size; i++) slots[i] = i;
+        Arrays.sort(slots, (a, b) -> Long.compare(seq[a], seq[b]));
+        for (int i : slots) visitor.accept(tickets[i]);
+    }
+
+    public void add(Ticket t) {
+        if (size == ids.length) resize(ids.length + (ids.length >>> 1) + 1);
+        siftUp(size++, t.getPriority(), nextSeq++, t.getTicketID(), t);
+    }
+
+    //Append everything then one bottom-up heapify, O(n)
+    public void addAll(MyList<Ticket> batch) {
+        int total = size + batch.size();
+        if (total > ids.length) resize(total + (total >>> 1));
+        for (Ticket t : batch) set(size++, t.getPriority(), nextSeq++, t.getTicketID(), t);
+        for (int i = (size - 2) / arity; i >= 0; i--) siftDown(i, prio[i], seq[i], ids[i], tickets[i]);
+    }
+
+    public Ticket poll() {
+        if (size == 0) return null;
+        Ticket top = tickets[0];
+        removeAt(0);
+        return top;
+    }
+
+    public Ticket updatePriority(int ticketID, int newPriority) {
+        int i = index.get(ticketID);
+        if (i == -1) return null;
+        Ticket t = tickets[i];
+        t.setPriority(newPriority);
+        //Keep arrival sequence so it still wins ties it used to win
+        if (newPriority < prio[i]) siftUp(i, newPriority, seq[i], ticketID, t);
+        else siftDown(i, newPriority, seq[i], ticketID, t);
+        return t;
+    }
+
+    public boolean remove(int ticketID) {
+        int i = index.get(ticketID);
+        if (i == -1) return false;
+        removeAt(i);
+        return true;
+    }
+
+    //HELPERS, sifts move a hole instead of swapping so each step is one write per array
+
+    private void removeAt(int i) {
+        index.remove(ids[i]);
+        int last = --size;
+        if (i != last) {
+            int p = prio[last]; long s = seq[last]; int id = ids[last]; Ticket t = tickets[last];
+            tickets[last] = null;
+            if (siftUp(i, p, s, id, t) == i) siftDown(i, p, s, id, t);
+        } else {
+            tickets[last] = null;
+        }
+        //Give memory back after a peak drains
+        if (ids.length > MIN_SLOTS && size < ids.length / 4) resize(Math.max(MIN_SLOTS, ids.length / 2));
+    }
+
+    //Returns final slot
+    private int siftUp(int i, int p, long s, int id, Ticket t) {
+        while (i > 0) {
+            int parent = (i - 1) / arity;
+            if (!less(p, s, prio[parent], seq[parent])) break;
+            move(parent, i);
+            i = parent;
+        }
+        set(i, p, s, id, t);
+        return i;
+    }
+
+    private void siftDown(int i, int p, long s, int id, Ticket t) {
+        while (true) {
+            int first = arity * i + 1;
+            if (first >= size) break;
+            int end = Math.min(first + arity, size);
+            //Smallest child, only primitive reads
+            int best = first;
+            for (int c = first + 1; c < end; c++) {
+                if (less(prio[c], seq[c], prio[best], seq[best])) best = c;
+            }
+            if (!less(prio[best], seq[best], p, s)) break;
+            move(best, i);
+            i = best;
+        }
+        set(i, p, s, id, t);
+    }
+
+    private static boolean less(int p1, long s1, int p2, long s2) {
+        return p1 < p2 || (p1 == p2 && s1 < s2);
+    }
+
+    private void move(int from, int to) {
+        prio[to] = prio[from];
+        seq[to] = seq[from];
+        ids[to] = ids[from];
+        tickets[to] = tickets[from];
+        index.put(ids[to], to);
+    }
+
+    private void set(int i, int p, long s, int id, Ticket t) {
+        prio[i] = p;
+        seq[i] = s;
+        ids[i] = id;
+        tickets[i] = t;
+        index.put(id, i);
+    }
+
+    private void allocate(int slots) {
+        prio = new int[slots];
+        seq = new long[slots];
+        ids = new int[slots];
+        tickets = new Ticket[slots];
+    }
+
+    private void resize(int slots) {
+        int[] p = prio; long[] s = seq; int[] d = ids; Ticket[] t = tickets;
+        allocate(slots);
+        System.arraycopy(p, 0, prio, 0, size);
+        System.arraycopy(s, 0, seq, 0, size);
+        System.arraycopy(d, 0, ids, 0, size);
+        System.arraycopy(t, 0, tickets, 0, size);
+    }
+}
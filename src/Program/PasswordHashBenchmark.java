@@ -0,0 +1,56 @@
+package Program;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Password hashing cost on this host: the calibrated PBKDF2 iteration count and what one hash
+ * really takes, then a login storm of concurrent verifies through the bounded PasswordService,
+ * counting how many get through and how many are turned away.
+ * Run: java Program.PasswordHashBenchmark [target millis] [concurrent logins]
+ */
+public class PasswordHashBenchmark {
+    public static void main(String[] args) throws Exception {
+        long target = args.length > 0 ? Long.parseLong(args[0]) : Pbkdf2Hasher.DEFAULT_TARGET_MILLIS;
+        int logins = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        long t0 = System.nanoTime();
+        Pbkdf2Hasher hasher = new Pbkdf2Hasher(target);
+        int iterations = hasher.getIterations();
+        System.out.printf("calibrated %,d iterations for %d ms in %.0f ms%n", iterations, target, (System.nanoTime() - t0) / 1e6);
+
+        PasswordService service = new PasswordService(hasher);
+        String stored = service.hash("Aa1@aaaa");
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long s = System.nanoTime();
+            service.verify("Aa1@aaaa", stored);
+            best = Math.min(best, System.nanoTime() - s);
+        }
+        System.out.printf("one verify: %.1f ms (legacy single SHA-256: well under 0.01 ms)%n", best / 1e6);
+
+        //Everyone logs in at once
+        ExecutorService callers = Executors.newFixedThreadPool(Math.min(logins, 256));
+        List<Future<Boolean>> results = new ArrayList<>();
+        long s = System.nanoTime();
+        for (int i = 0; i < logins; i++) results.add(callers.submit(() -> service.verify("Aa1@aaaa", stored)));
+        int ok = 0, busy = 0;
+        for (Future<Boolean> f : results) {
+            try {
+                if (f.get()) ok++;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RejectedExecutionException) busy++;
+                else throw e;
+            }
+        }
+        double secs = (System.nanoTime() - s) / 1e9;
+        callers.shutdown();
+        System.out.printf("storm of %d: %d verified, %d turned away in %.2f s (%.1f verifies/s)%n",
+                logins, ok, busy, secs, ok / secs);
+    }
+}
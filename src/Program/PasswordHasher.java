@@ -0,0 +1,18 @@
+package Program;
+
+/**
+ * Turns passwords into stored hashes and checks them, see PasswordService.
+ * Stored hashes carry their own salt and parameters and never contain ',' so they fit accounts.csv.
+ */
+public interface PasswordHasher {
+    String hash(char[] password) throws Exception;
+
+    //Only called for hashes this hasher handles
+    boolean verify(char[] password, String stored) throws Exception;
+
+    //True if stored is in this hasher's format
+    boolean handles(String stored);
+
+    //True if stored was made with weaker settings than this hasher uses now
+    boolean needsRehash(String stored);
+}
@@ -0,0 +1,119 @@
+package Program;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hashes and checks passwords on a small pool of its own so a burst of logins or registrations
+ * uses at most that many cores and cannot starve the queue's commit and snapshot threads.
+ * Callers wait for their result; once queueLimit requests are waiting, more are turned away
+ * with a RejectedExecutionException instead of piling up.
+ * Hashes older versions stored as "salt$sha256hex" still verify, and needsRehash reports
+ * them so they can be replaced at the next successful login.
+ * verifyUnknown checks a password against a hash nobody has, so a login for a name that does
+ * not exist costs as much as one that does. That hash is made on the pool the first time it
+ * is needed, which is also where a calibrating hasher works out its cost, never on the caller.
+ */
+public final class PasswordService {
+    public static final int DEFAULT_QUEUE_LIMIT = 64;
+
+    private final PasswordHasher hasher;
+    private final ThreadPoolExecutor pool;
+    //Hash of a random password, see verifyUnknown; null until first needed
+    private Future<String> dummy;
+
+    public PasswordService(PasswordHasher hasher) {
+        this(hasher, Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)), DEFAULT_QUEUE_LIMIT);
+    }
+
+    public PasswordService(PasswordHasher hasher, int threads, int queueLimit) {
+        if (threads < 1 || queueLimit < 1) throw new IllegalArgumentException("Invalid pool size");
+        this.hasher = hasher;
+        AtomicInteger count = new AtomicInteger();
+        pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueLimit), r -> {
+            Thread t = new Thread(r, "password-hash-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public PasswordHasher getHasher() {
+        return hasher;
+    }
+
+    public String hash(String password) throws Exception {
+        return run(() -> hasher.hash(password.toCharArray()));
+    }
+
+    public boolean verify(String password, String stored) throws Exception {
+        if (hasher.handles(stored)) return run(() -> hasher.verify(password.toCharArray(), stored));
+        String[] parts = stored.split("\\$");
+        if (parts.length != 2) throw new IllegalArgumentException("Invalid stored password format");
+        return run(() -> MessageDigest.isEqual(SecurityUtil.hashWithSalt(password, parts[0]).getBytes(StandardCharsets.UTF_8),
+                parts[1].getBytes(StandardCharsets.UTF_8)));
+    }
+
+    //Same work as verify for an account that does not exist, always false
+    public boolean verifyUnknown(String password) throws Exception {
+        String stored = dummyHash();
+        run(() -> hasher.verify(password.toCharArray(), stored));
+        return false;
+    }
+
+    //Legacy format or weaker settings than new hashes get; waits for the hasher's settings to be known
+    public boolean needsRehash(String stored) throws Exception {
+        if (!hasher.handles(stored)) return true;
+        dummyHash();
+        return hasher.needsRehash(stored);
+    }
+
+    private String dummyHash() throws Exception {
+        Future<String> f;
+        synchronized (this) {
+            if (dummy == null) {
+                byte[] secret = new byte[24];
+                CryptoEngine.random().nextBytes(secret);
+                String password = Base64.getEncoder().encodeToString(secret);
+                dummy = pool.submit(() -> hasher.hash(password.toCharArray()));
+            }
+            f = dummy;
+        }
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            //Made again by the next call
+            synchronized (this) {
+                if (dummy == f) dummy = null;
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception ex) throw ex;
+            if (cause instanceof Error err) throw err;
+            throw e;
+        }
+    }
+
+    //Runs on the pool and waits; RejectedExecutionException when too many are already waiting
+    private <T> T run(Callable<T> task) throws Exception {
+        try {
+            return pool.submit(task).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception ex) throw ex;
+            if (cause instanceof Error err) throw err;
+            throw e;
+        }
+    }
+
+    //Requests waiting for a pool thread
+    public int queued() {
+        return pool.getQueue().size();
+    }
+}
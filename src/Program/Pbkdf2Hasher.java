@@ -0,0 +1,134 @@
+package Program;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * PBKDF2-HMAC-SHA256 from the JDK, stored as "pbkdf2-sha256$iterations$salt$hash" (Base64).
+ * Unless fixed, the iteration count is calibrated once, on first use (PasswordService makes
+ * that happen on its pool), so one hash takes about targetMillis on this host, and never drops
+ * below MIN_ITERATIONS. Each stored hash keeps its
+ * own count, so calibrating differently later does not lock anyone out.
+ * Salts come from CryptoEngine's shared SecureRandom, which does not block on entropy.
+ */
+public final class Pbkdf2Hasher implements PasswordHasher {
+    static final String PREFIX = "pbkdf2-sha256";
+    public static final int MIN_ITERATIONS = 10_000;
+    public static final long DEFAULT_TARGET_MILLIS = 100;
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private final long targetMillis;
+    //0 until calibrated
+    private volatile int iterations;
+
+    public Pbkdf2Hasher() {
+        this(DEFAULT_TARGET_MILLIS);
+    }
+
+    public Pbkdf2Hasher(long targetMillis) {
+        if (targetMillis < 1) throw new IllegalArgumentException("Invalid target latency");
+        this.targetMillis = targetMillis;
+    }
+
+    //Fixed count, no calibration
+    public static Pbkdf2Hasher withIterations(int iterations) {
+        if (iterations < 1) throw new IllegalArgumentException("Invalid iteration count");
+        Pbkdf2Hasher h = new Pbkdf2Hasher();
+        h.iterations = iterations;
+        return h;
+    }
+
+    //Iterations new hashes use, calibrating first if that has not happened yet
+    public int getIterations() {
+        int n = iterations;
+        if (n == 0) {
+            synchronized (this) {
+                if (iterations == 0) iterations = calibrate(targetMillis);
+                n = iterations;
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public String hash(char[] password) throws GeneralSecurityException {
+        int n = getIterations();
+        byte[] salt = new byte[SALT_BYTES];
+        CryptoEngine.random().nextBytes(salt);
+        Base64.Encoder b64 = Base64.getEncoder();
+        return PREFIX + "$" + n + "$" + b64.encodeToString(salt) + "$" + b64.encodeToString(derive(password, salt, n));
+    }
+
+    @Override
+    public boolean verify(char[] password, String stored) throws GeneralSecurityException {
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4 || !parts[0].equals(PREFIX)) throw new IllegalArgumentException("Not a PBKDF2 hash");
+        Base64.Decoder b64 = Base64.getDecoder();
+        byte[] expected = b64.decode(parts[3]);
+        return MessageDigest.isEqual(expected, derive(password, b64.decode(parts[2]), Integer.parseInt(parts[1])));
+    }
+
+    @Override
+    public boolean handles(String stored) {
+        return stored.startsWith(PREFIX + "$");
+    }
+
+    //Well below what this host would use now; small calibration differences are left alone
+    @Override
+    public boolean needsRehash(String stored) {
+        String[] parts = stored.split("\\$");
+        try {
+            return Integer.parseInt(parts[1]) < getIterations() / 2;
+        } catch (RuntimeException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Iterations that take about targetMillis here. Trial runs grow until one takes a quarter
+     * of the target and repeat until half a second (or three targets) has passed, and the
+     * fastest rate seen counts: PBKDF2 gets several times faster once the JIT has compiled
+     * HMAC, and the count should match a warm process rather than a cold start.
+     */
+    static int calibrate(long targetMillis) {
+        byte[] salt = new byte[SALT_BYTES];
+        char[] probe = "calibration".toCharArray();
+        long window = Math.max(20, targetMillis / 4) * 1_000_000L;
+        long budget = Math.max(500, targetMillis * 3) * 1_000_000L;
+        double bestNanosPerIteration = Double.MAX_VALUE;
+        try {
+            //The very first run also loads and links the provider, it is not timed
+            derive(probe, salt, 1000);
+            long start = System.nanoTime();
+            for (int n = 1000, runs = 0; System.nanoTime() - start < budget || runs < 3; runs++) {
+                long t = time(probe, salt, n);
+                bestNanosPerIteration = Math.min(bestNanosPerIteration, (double) t / n);
+                if (t < window && n < (1 << 24)) n *= 2;
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        long wanted = (long) (targetMillis * 1_000_000.0 / bestNanosPerIteration);
+        //Round to a thousand so hashes made on one host show the same count
+        return (int) Math.max(MIN_ITERATIONS, Math.min(Integer.MAX_VALUE, wanted / 1000 * 1000));
+    }
+
+    private static long time(char[] password, byte[] salt, int iterations) throws GeneralSecurityException {
+        long t0 = System.nanoTime();
+        derive(password, salt, iterations);
+        return Math.max(1, System.nanoTime() - t0);
+    }
+
+    private static byte[] derive(char[] password, byte[] salt, int iterations) throws GeneralSecurityException {
+        PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
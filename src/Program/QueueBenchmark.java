@@ -0,0 +1,69 @@
+package Program;
+
+import java.util.Random;
+
+/**
+ * Rough timing of PriorityQueue against BucketQueue on a realistic ticket mix.
+ * Drives the storage hooks directly so audit and log file I/O do not swamp the numbers.
+ * Run: java Program.QueueBenchmark [tickets] [operations]
+ */
+public class QueueBenchmark {
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int tickets = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int ops = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        Ticket[] pool = buildMix(tickets + ops, new Random(7));
+        int[] priorities = new int[pool.length];
+        for (int i = 0; i < pool.length; i++) priorities[i] = pool[i].getPriority();
+
+        for (QueueMode mode : QueueMode.values()) {
+            for (int i = 0; i < WARMUP_ROUNDS; i++) run(mode, pool, priorities, tickets, ops);
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < ROUNDS; i++) best = Math.min(best, run(mode, pool, priorities, tickets, ops));
+            System.out.printf("%-7s %,d queued, %,d ops: %,d ms (%.1f ns/op)%n",
+                    mode, tickets, ops, best / 1_000_000, (double) best / (tickets + ops));
+        }
+    }
+
+    //Fill to the working size then run a steady 50% add / 40% poll / 10% update mix
+    private static long run(QueueMode mode, Ticket[] pool, int[] priorities, int tickets, int ops) {
+        AbstractTicketQueue q = (AbstractTicketQueue) mode.create(Integer.MAX_VALUE, null, null);
+        Random rnd = new Random(11);
+        int next = 0, top = AbstractTicketQueue.topLevel();
+        long start = System.nanoTime();
+        for (; next < tickets; next++) q.insert(pool[next]);
+        for (int i = 0; i < ops; i++) {
+            int r = rnd.nextInt(10);
+            if (r < 5) {
+                q.insert(pool[next++]);
+            } else if (r < 9) {
+                q.pollBest(rnd.nextInt(top + 1));
+            } else {
+                q.reprioritize(pool[rnd.nextInt(next)].getTicketID(), 1 + rnd.nextInt(4));
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        //Reset priorities so the next round sees the same mix
+        for (int i = 0; i < pool.length; i++) pool[i].setPriority(priorities[i]);
+        return elapsed;
+    }
+
+    //Ticket types weighted like a typical helpdesk, a few manual overrides outside 1..8
+    private static Ticket[] buildMix(int n, Random rnd) {
+        RequestType[] weighted = {
+                RequestType.NETWORK, RequestType.NETWORK, RequestType.NETWORK,
+                RequestType.SOFTWARE_INSTALL, RequestType.SOFTWARE_INSTALL,
+                RequestType.NEW_PC, RequestType.OTHER, RequestType.OTHER,
+                RequestType.SECURITY
+        };
+        Ticket[] pool = new Ticket[n];
+        for (int i = 0; i < n; i++) {
+            RequestType type = weighted[rnd.nextInt(weighted.length)];
+            pool[i] = new Ticket(type, "bench " + i, "bench");
+            if (rnd.nextInt(100) < 2) pool[i].setPriority(rnd.nextInt(12));
+        }
+        return pool;
+    }
+}
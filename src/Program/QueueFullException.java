@@ -0,0 +1,14 @@
+package Program;
+
+//Thrown when a queue is at its soft cap, callers can retry or use offerTicket to wait
+public class QueueFullException extends IllegalStateException {
+    private static final long serialVersionUID = 1L;
+    private final int softCap;
+
+    public QueueFullException(int softCap) {
+        super("Ticket queue is full (soft cap " + softCap + ")");
+        this.softCap = softCap;
+    }
+
+    public int getSoftCap() { return softCap; }
+}
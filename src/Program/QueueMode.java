@@ -0,0 +1,28 @@
+package Program;
+
+//Queue implementation picked at startup
+public enum QueueMode {
+    HEAP,         //PriorityQueue, any int priority
+    HEAP_PACKED,  //PriorityQueue on primitive arrays, binary
+    HEAP_PACKED4, //PriorityQueue on primitive arrays, 4-ary
+    BUCKET;       //BucketQueue, O(1) for small priorities
+
+    public TicketQueue create(int capacity, String logFilePath, String snapshotFilePath) {
+        return switch (this) {
+            case HEAP -> new PriorityQueue(capacity, logFilePath, snapshotFilePath);
+            case HEAP_PACKED -> new PriorityQueue(capacity, logFilePath, snapshotFilePath, HeapLayout.PACKED_BINARY);
+            case HEAP_PACKED4 -> new PriorityQueue(capacity, logFilePath, snapshotFilePath, HeapLayout.PACKED_QUATERNARY);
+            case BUCKET -> new BucketQueue(capacity, logFilePath, snapshotFilePath);
+        };
+    }
+
+    //Unknown or missing names fall back to the heap
+    public static QueueMode fromName(String name) {
+        if (name == null) return HEAP;
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return HEAP;
+        }
+    }
+}
@@ -1,12 +1,7 @@
 package Program;
 
-import java.util.List;
-
 public class RegistrationSystem {
 
-    private static final String ACCOUNTS_FILE = "accounts.csv";
-    private static final String ACCOUNTS_FILE_COPY = "accounts2.csv";
-
     //Registers new user
     public static boolean registerUser(String username, String password, UserRole role, SecurityLevel level) {
         try {
@@ -17,15 +12,11 @@ public class RegistrationSystem {
             //  Sanitize the username to remove any unwanted characters.
             String sanitizedUsername = SecurityUtil.sanitizeInput(username);
 
-            // Load persisted accounts from file.
-            List<User> accounts = AccountPersistence.loadAccountsFromFile(ACCOUNTS_FILE);
-
-            // Check if the username already exists (ignoring case).
-            for (User existingUser : accounts) {
-                if (existingUser.getUsername().equalsIgnoreCase(sanitizedUsername)) {
-                    System.out.println("Error: Username '" + sanitizedUsername + "' already exists.");
-                    return false;
-                }
+            // Check if the username already exists (ignoring case), one lookup in the loaded accounts.
+            AccountDirectory accounts = AccountDirectory.getInstance();
+            if (accounts.exists(sanitizedUsername)) {
+                System.out.println("Error: Username '" + sanitizedUsername + "' already exists.");
+                return false;
             }
 
             // SECURITY CHECK:
@@ -50,14 +41,13 @@ public class RegistrationSystem {
 
             // Create the new user account.
             User newUser = new User(sanitizedUsername, saltedHash, role, level);
-            if(SecurityUtil.logEvent("Registered new user: " + sanitizedUsername, "REGISTERED" )) {
-
-                // Add the new user to the accounts list.
-                accounts.add(newUser);
+            if(SecurityUtil.logEvent("Registered new user: " + sanitizedUsername, "REGISTERED", Durability.SYNC)) {
 
-                // Persist the updated accounts list to the file.
-                AccountPersistence.saveAccountsToFile(accounts, ACCOUNTS_FILE);
-                AccountPersistence.saveAccountsToFile(accounts, ACCOUNTS_FILE_COPY);
+                // Add the new user and persist both account files; someone may have taken the name meanwhile.
+                if (!accounts.add(newUser)) {
+                    System.out.println("Error: Username '" + sanitizedUsername + "' already exists.");
+                    return false;
+                }
             } else {
                 System.out.println("Error: COULD NOT LOG CREATION, PROCCESS FAILED.");
                 return false;
@@ -1,78 +1,111 @@
 package Program;
 
 import javax.crypto.Cipher;
+import javax.crypto.Mac;
 import javax.crypto.SecretKey;
-import javax.crypto.spec.GCMParameterSpec;
-import java.io.FileWriter;
+import javax.crypto.spec.SecretKeySpec;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.PosixFilePermission;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
 import java.security.MessageDigest;
-import java.security.SecureRandom;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
 
 public class SecurityUtil {
     // Holds the single AES key loaded from the keystore
     private static SecretKey aesKey;
+    //Pooled ciphers and counter nonces for aesKey
+    private static volatile CryptoEngine crypto;
+    //Audit seal key and the keystore key it was derived from
+    private static byte[] sealKey;
+    private static SecretKey sealKeyFor;
+    //Password hashing and checks, on their own bounded pool
+    private static volatile PasswordService passwords = new PasswordService(new Pbkdf2Hasher());
+    //Background audit writer behind logEvent
+    private static volatile AuditLog auditLog = new AuditLog();
 
    //initialise key store
     public static void init(SecretKey key) {
         aesKey = key;
+        crypto = key == null ? null : new CryptoEngine(key);
     }
 
-    //Encrypt using encryption cypher
+    //Engine for the keystore key, for callers that want the in-place or streaming forms
+    public static CryptoEngine crypto() throws InvalidKeyException {
+        CryptoEngine c = crypto;
+        if (c == null) throw new InvalidKeyException("No key, SecurityUtil.init has not been called");
+        return c;
+    }
+
+    //Encrypt using encryption cypher, output is nonce || ciphertext || tag
     public static byte[] encryptGcm(byte[] plaintext) throws Exception {
-        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
-        byte[] nonce = new byte[12];
-        new SecureRandom().nextBytes(nonce);
-        GCMParameterSpec spec = new GCMParameterSpec(128, nonce);
-        cipher.init(Cipher.ENCRYPT_MODE, aesKey, spec);
-        byte[] ciphertext = cipher.doFinal(plaintext);
-        byte[] out = new byte[nonce.length + ciphertext.length];
-        System.arraycopy(nonce, 0, out, 0, nonce.length);
-        System.arraycopy(ciphertext, 0, out, nonce.length, ciphertext.length);
-        return out;
+        return crypto().encrypt(plaintext);
     }
 
     //Decryption algorithm using key vault key
     public static byte[] decryptGcm(byte[] input) throws Exception {
-        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
-        byte[] nonce = Arrays.copyOfRange(input, 0, 12);
-        GCMParameterSpec spec = new GCMParameterSpec(128, nonce);
-        cipher.init(Cipher.DECRYPT_MODE, aesKey, spec);
-        byte[] ciphertext = Arrays.copyOfRange(input, 12, input.length);
-        return cipher.doFinal(ciphertext);
+        return crypto().decrypt(input);
+    }
+
+    //AES-GCM cipher set up for one chunk of a framed file, callers add their own AAD.
+    //The thread's pooled cipher: finish with it before asking for another
+    static Cipher gcmCipher(int mode, byte[] nonce) throws GeneralSecurityException {
+        return crypto().cipher(mode, nonce, 0);
     }
 
-    //Basic hashing
+    /**
+     * Key the audit seals are signed with, derived from the keystore key so there is no
+     * second secret to manage. Null until init has been called.
+     */
+    static synchronized byte[] auditSealKey() {
+        if (aesKey == null) return null;
+        if (sealKeyFor != aesKey) {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(new SecretKeySpec(aesKey.getEncoded(), "HmacSHA256"));
+                sealKey = mac.doFinal("ticketing-audit-seal-v1".getBytes(StandardCharsets.UTF_8));
+                sealKeyFor = aesKey;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return sealKey;
+    }
+
+    //Legacy single SHA-256 pass, only used to check hashes stored by older versions
     public static String hashWithSalt(String password, String salt) throws Exception {
         MessageDigest digest = MessageDigest.getInstance("SHA-256"); //Hash algorithm
-        digest.update(salt.getBytes("UTF-8")); //Add salt
-        byte[] hashBytes = digest.digest(password.getBytes("UTF-8")); //Find value as byte
-        StringBuilder sb = new StringBuilder();
-        for (byte b : hashBytes) sb.append(String.format("%02x", b));
-        return sb.toString();
+        digest.update(salt.getBytes(StandardCharsets.UTF_8)); //Add salt
+        byte[] hashBytes = digest.digest(password.getBytes(StandardCharsets.UTF_8)); //Find value as byte
+        return HexFormat.of().formatHex(hashBytes);
     }
-    //GenerateSalt and hash and return
+    //GenerateSalt and hash and return, PBKDF2 unless another hasher was set
     public static String generateSaltedHash(String password) throws Exception {
-        SecureRandom sr = SecureRandom.getInstanceStrong();
-        byte[] saltBytes = new byte[16]; sr.nextBytes(saltBytes);
-        String salt = Base64.getEncoder().encodeToString(saltBytes);
-        String hash = hashWithSalt(password, salt);
-        return salt + "$" + hash;
+        return passwords.hash(password);
     }
-    //Return true if password matches saved hashing + salt
+    //Return true if password matches saved hash, new or legacy format
     public static boolean verifyPassword(String password, String stored) throws Exception {
-        String[] parts = stored.split("\\$");
-        if (parts.length != 2) throw new IllegalArgumentException("Invalid stored password format");
-        return hashWithSalt(password, parts[0]).equals(parts[1]);
+        return passwords.verify(password, stored);
+    }
+    //Stand-in for verifyPassword when the account does not exist, takes as long and returns false
+    public static boolean verifyUnknownUser(String password) throws Exception {
+        return passwords.verifyUnknown(password);
+    }
+    //True if a stored hash should be replaced once the password is known, e.g. at login
+    public static boolean needsRehash(String stored) throws Exception {
+        return passwords.needsRehash(stored);
+    }
+
+    //Swap the password hashing, e.g. a cheaper or differently tuned hasher
+    public static void setPasswordService(PasswordService service) {
+        passwords = service;
     }
 
     //Ordinal check of access rights
@@ -99,26 +132,36 @@ public class SecurityUtil {
             Files.setPosixFilePermissions(path, perms);
         } catch (UnsupportedOperationException ignored) {}
     }
-    //Log anything for auditing
+    //Log anything for auditing, queued and written in the background, true once queued
     public static boolean logEvent(String details, String logID) {
-        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME); //FIND DATE AND TIMER
-        String ip = getLocalIpAddress(); //log ip
-        String mac = getLocalMacAddress(); //log mac
-        String user = Optional.ofNullable(SessionManager.getInstance().getCurrentUser()) //Log session account
-                .map(User::getUsername).orElse("anonymous"); //SHould not be possible but default regardless
-        String record = String.join(",", timestamp, details, ip, mac, user);
-        System.out.println("[AUDIT] " + record);
-        String primary = FindAuditID.getAuditLogFileName(logID) + "primary.txt"; //Save to both
-        String backup  = FindAuditID.getAuditLogFileName(logID) + "backup.txt";
-        try (FileWriter w1 = new FileWriter(primary, true);
-             FileWriter w2 = new FileWriter(backup, true)) {
-            w1.write(record + System.lineSeparator());
-            w2.write(record + System.lineSeparator());
-            return true; //Return true if both saving successful
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false;
-        }
+        return auditLog.log(details, logID, Durability.ASYNC);
+    }
+
+    //SYNC waits until the record is on disk in both the primary and backup file, for callers that gate on it
+    public static boolean logEvent(String details, String logID, Durability durability) {
+        return auditLog.log(details, logID, durability);
+    }
+
+    //Swap the audit writer, e.g. to write somewhere else in tests; the old one is flushed and closed
+    public static void setAuditLog(AuditLog log) {
+        AuditLog old = auditLog;
+        auditLog = log;
+        old.close();
+    }
+
+    //For rotation/retention settings and reading audit streams back
+    public static AuditLog getAuditLog() {
+        return auditLog;
+    }
+
+    //Wait until every audit event so far is written
+    public static void flushAudit() {
+        auditLog.flush();
+    }
+
+    //Write, seal and close everything queued so far, for shutdown; later events are refused
+    public static void closeAudit() {
+        auditLog.close();
     }
     //SImple ID address helper
     public static String getLocalIpAddress() {
@@ -128,13 +171,7 @@ public class SecurityUtil {
     public static String getLocalMacAddress() {
         try {
             //Pull MacAddress from hardware
-            NetworkInterface ni = NetworkInterface.getByInetAddress(InetAddress.getLocalHost());
-            if (ni == null) return "UNKNOWN_MAC";
-            byte[] mac = ni.getHardwareAddress();
-            if (mac == null) return "UNKNOWN_MAC";
-            StringBuilder sb = new StringBuilder();
-            for (byte b : mac) sb.append(String.format("%02X", b));
-            return sb.toString();
+            return AuditLog.macOf(NetworkInterface.getByInetAddress(InetAddress.getLocalHost()));
         } catch (Exception e) {
             return "UNKNOWN_MAC";
         }
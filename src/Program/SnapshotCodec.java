@@ -0,0 +1,278 @@
+package Program;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hand-written snapshot format, independent of Java serialization.
+ * Layout (version 2):
+ *   magic "TQSN", version byte, 8 byte log checkpoint, queue mode name, soft cap, bucket range (BUCKET only),
+ *   string dictionary, ticket count, then per ticket:
+ *   id, priority (zigzag), level, status, type, creator ref, owner ref (0 = none), title.
+ * Integers are LEB128 varints and enums are stored by ordinal, only live tickets are written.
+ * The checkpoint is the log position the tickets already include, -1 if unknown; version 1
+ * snapshots have no checkpoint and still load.
+ */
+final class SnapshotCodec {
+    static final byte[] MAGIC = {'T', 'Q', 'S', 'N'};
+    static final int VERSION = 2;
+    //Checkpoint sits at a fixed spot so it can be filled in after encoding
+    private static final int CHECKPOINT_AT = MAGIC.length + 1;
+
+    private SnapshotCodec() {}
+
+    //True if raw starts with the codec magic, older snapshots are Java serialized
+    static boolean isCodecFormat(byte[] raw) {
+        if (raw.length < MAGIC.length) return false;
+        for (int i = 0; i < MAGIC.length; i++) if (raw[i] != MAGIC[i]) return false;
+        return true;
+    }
+
+    //An encoded snapshot is bytes[0, length), the rest of the array is unused growth room.
+    //Handed on as is so a large queue is not copied once more just to trim it
+    static final class Encoded {
+        final byte[] bytes;
+        final int length;
+
+        Encoded(byte[] bytes, int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+    }
+
+    //Caller holds the queue's read lock
+    static Encoded encode(AbstractTicketQueue q) {
+        List<Ticket> tickets = new ArrayList<>(q.getSize());
+        q.scanForSnapshot(tickets::add);
+
+        //Creators and owners repeat a lot, store each name once
+        Map<String, Integer> dict = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        for (Ticket t : tickets) {
+            intern(dict, names, t.getCreator());
+            intern(dict, names, t.getOwner());
+        }
+
+        Out out = new Out(64 + tickets.size() * 24);
+        out.bytes(MAGIC);
+        out.raw(VERSION);
+        for (int i = 0; i < 8; i++) out.raw(0xFF); //-1 until setCheckpoint
+        QueueMode mode = q.getMode();
+        out.string(mode.name());
+        out.varint(q.getSoftCap());
+        if (q instanceof BucketQueue b) {
+            out.varint(zigzag(b.getMinPriority()));
+            out.varint(zigzag(b.getMaxPriority()));
+        }
+        out.varint(names.size());
+        for (String s : names) out.string(s);
+        out.varint(tickets.size());
+        for (Ticket t : tickets) {
+            out.varint(t.getTicketID());
+            out.varint(zigzag(t.getPriority()));
+            out.raw(t.getSecurityLevel().ordinal());
+            out.raw(t.getStatus().ordinal());
+            out.raw(t.getType().ordinal());
+            out.varint(ref(dict, t.getCreator()));
+            out.varint(ref(dict, t.getOwner()));
+            out.string(t.getTitle() == null ? "" : t.getTitle());
+        }
+        return new Encoded(out.buf, out.pos);
+    }
+
+    //Record the log position an encoded snapshot covers
+    static void setCheckpoint(Encoded encoded, long logPosition) {
+        for (int i = 7; i >= 0; i--) {
+            encoded.bytes[CHECKPOINT_AT + i] = (byte) logPosition;
+            logPosition >>= 8;
+        }
+    }
+
+    //Everything a snapshot holds, before it is turned into a queue
+    static final class Contents {
+        QueueMode mode;
+        int softCap;
+        int minPriority = BucketQueue.DEFAULT_MIN_PRIORITY;
+        int maxPriority = BucketQueue.DEFAULT_MAX_PRIORITY;
+        long checkpoint = -1;
+        List<Ticket> tickets;
+
+        //A snapshot may hold more than a lowered cap allows, same rule as log replay
+        AbstractTicketQueue toQueue(String logFilePath, String snapshotFilePath) {
+            int cap = Math.max(softCap, tickets.size());
+            AbstractTicketQueue q = mode == QueueMode.BUCKET
+                    ? new BucketQueue(cap, logFilePath, snapshotFilePath, minPriority, maxPriority)
+                    : (AbstractTicketQueue) mode.create(cap, logFilePath, snapshotFilePath);
+            q.addAll(tickets);
+            return q;
+        }
+    }
+
+    static AbstractTicketQueue decode(Encoded encoded, String logFilePath, String snapshotFilePath) throws IOException {
+        return read(new ByteArrayInputStream(encoded.bytes, 0, encoded.length)).toQueue(logFilePath, snapshotFilePath);
+    }
+
+    //Reads through a small buffer, so a streamed source is never held in memory whole
+    static Contents read(InputStream source) throws IOException {
+        In in = new In(source);
+        for (byte b : MAGIC) if (in.raw() != (b & 0xFF)) throw new IOException("Not a ticket snapshot");
+        int version = in.raw();
+        if (version < 1 || version > VERSION) throw new IOException("Unsupported snapshot version " + version);
+
+        Contents c = new Contents();
+        if (version >= 2) {
+            long cp = 0;
+            for (int i = 0; i < 8; i++) cp = (cp << 8) | in.raw();
+            c.checkpoint = cp;
+        }
+        try {
+            c.mode = QueueMode.valueOf(in.string());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown queue mode in snapshot");
+        }
+        c.softCap = in.varint();
+        if (c.mode == QueueMode.BUCKET) {
+            c.minPriority = unzigzag(in.varint());
+            c.maxPriority = unzigzag(in.varint());
+        }
+        String[] names = new String[in.varint()];
+        for (int i = 0; i < names.length; i++) names[i] = in.string();
+
+        int n = in.varint();
+        SecurityLevel[] levels = SecurityLevel.values();
+        TicketStatus[] statuses = TicketStatus.values();
+        RequestType[] types = RequestType.values();
+        c.tickets = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int id = in.varint();
+            int priority = unzigzag(in.varint());
+            SecurityLevel level = pick(levels, in.raw());
+            TicketStatus status = pick(statuses, in.raw());
+            RequestType type = pick(types, in.raw());
+            String creator = name(names, in.varint());
+            String owner = name(names, in.varint());
+            String title = in.string();
+            c.tickets.add(new Ticket(id, type, title, creator, owner, priority, level, status));
+        }
+        return c;
+    }
+
+    //HELPERS
+
+    private static void intern(Map<String, Integer> dict, List<String> names, String s) {
+        if (s != null && !dict.containsKey(s)) {
+            names.add(s);
+            dict.put(s, names.size()); //refs start at 1, 0 is null
+        }
+    }
+
+    private static int ref(Map<String, Integer> dict, String s) {
+        return s == null ? 0 : dict.get(s);
+    }
+
+    private static String name(String[] names, int ref) throws IOException {
+        if (ref == 0) return null;
+        if (ref > names.length) throw new IOException("Corrupt snapshot: bad name reference");
+        return names[ref - 1];
+    }
+
+    private static <E> E pick(E[] values, int ordinal) throws IOException {
+        if (ordinal >= values.length) throw new IOException("Corrupt snapshot: bad enum ordinal " + ordinal);
+        return values[ordinal];
+    }
+
+    //Small negative priorities stay one byte
+    private static int zigzag(int v) { return (v << 1) ^ (v >> 31); }
+    private static int unzigzag(int v) { return (v >>> 1) ^ -(v & 1); }
+
+    //Unsynchronised growable buffer, ByteArrayOutputStream locks on every byte
+    private static final class Out {
+        byte[] buf;
+        int pos;
+
+        Out(int size) { buf = new byte[size]; }
+
+        void raw(int b) {
+            if (pos == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+            buf[pos++] = (byte) b;
+        }
+
+        void bytes(byte[] b) {
+            if (pos + b.length > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + b.length));
+            System.arraycopy(b, 0, buf, pos, b.length);
+            pos += b.length;
+        }
+
+        void varint(int v) {
+            while ((v & ~0x7F) != 0) {
+                raw((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            raw(v);
+        }
+
+        void string(String s) {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            varint(b.length);
+            bytes(b);
+        }
+    }
+
+    private static final class In {
+        final InputStream src;
+        final byte[] buf = new byte[8192];
+        int pos, limit;
+
+        In(InputStream src) { this.src = src; }
+
+        int raw() throws IOException {
+            if (pos == limit) {
+                limit = src.read(buf, 0, buf.length);
+                pos = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    throw new IOException("Corrupt snapshot: truncated");
+                }
+            }
+            return buf[pos++] & 0xFF;
+        }
+
+        int varint() throws IOException {
+            int v = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = raw();
+                v |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return v;
+            }
+            throw new IOException("Corrupt snapshot: varint too long");
+        }
+
+        String string() throws IOException {
+            int len = varint();
+            if (len < 0) throw new IOException("Corrupt snapshot: bad string length");
+            //Short strings decode straight from the buffer
+            if (len <= limit - pos) {
+                String s = new String(buf, pos, len, StandardCharsets.UTF_8);
+                pos += len;
+                return s;
+            }
+            byte[] b = new byte[len];
+            int got = Math.min(len, limit - pos);
+            System.arraycopy(buf, pos, b, 0, got);
+            pos += got;
+            while (got < len) {
+                int n = src.read(b, got, len - got);
+                if (n < 0) throw new IOException("Corrupt snapshot: truncated");
+                got += n;
+            }
+            return new String(b, StandardCharsets.UTF_8);
+        }
+    }
+}
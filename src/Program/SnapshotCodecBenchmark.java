@@ -0,0 +1,61 @@
+package Program;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+
+/**
+ * Snapshot size and encode/decode time, Java serialization against SnapshotCodec.
+ * Plaintext only, encryption and the file write cost the same per byte for both.
+ * Run: java Program.SnapshotCodecBenchmark [tickets]
+ */
+public class SnapshotCodecBenchmark {
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        Random rnd = new Random(3);
+        for (QueueMode mode : new QueueMode[]{QueueMode.HEAP, QueueMode.BUCKET}) {
+            AbstractTicketQueue q = (AbstractTicketQueue) mode.create(Integer.MAX_VALUE, null, null);
+            RequestType[] types = RequestType.values();
+            for (int i = 0; i < n; i++) {
+                RequestType type = types[rnd.nextInt(types.length)];
+                Ticket t = new Ticket(type, "Ticket number " + i, "user" + rnd.nextInt(500));
+                if (rnd.nextInt(3) == 0) t.setOwner("tech" + rnd.nextInt(20));
+                q.insert(t);
+            }
+
+            long javaEnc = Long.MAX_VALUE, javaDec = Long.MAX_VALUE, codecEnc = Long.MAX_VALUE, codecDec = Long.MAX_VALUE;
+            byte[] javaBytes = null;
+            SnapshotCodec.Encoded codec = null;
+            for (int r = 0; r < ROUNDS; r++) {
+                long t0 = System.nanoTime();
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+                    oos.writeObject(q);
+                }
+                javaBytes = bos.toByteArray();
+                long t1 = System.nanoTime();
+                try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(javaBytes))) {
+                    ois.readObject();
+                }
+                long t2 = System.nanoTime();
+                codec = SnapshotCodec.encode(q);
+                long t3 = System.nanoTime();
+                SnapshotCodec.decode(codec, null, null);
+                long t4 = System.nanoTime();
+                javaEnc = Math.min(javaEnc, t1 - t0);
+                javaDec = Math.min(javaDec, t2 - t1);
+                codecEnc = Math.min(codecEnc, t3 - t2);
+                codecDec = Math.min(codecDec, t4 - t3);
+            }
+            System.out.printf("%-6s %,d tickets%n", mode, n);
+            System.out.printf("  java   %,12d bytes  encode %7.1f ms  decode %7.1f ms%n",
+                    javaBytes.length, javaEnc / 1e6, javaDec / 1e6);
+            System.out.printf("  codec  %,12d bytes  encode %7.1f ms  decode %7.1f ms%n",
+                    codec.length, codecEnc / 1e6, codecDec / 1e6);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package Program;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Framed snapshot encryption and decryption throughput against worker count.
+ * Writes and reads back a random payload with pools of 1, 2, 4... up to the core count,
+ * after a baseline of SecurityUtil's single-message encryptGcm/decryptGcm.
+ * Uses a throwaway key; run from a scratch directory.
+ * Run: java -Xmx2g Program.SnapshotCryptoBenchmark [megabytes]
+ */
+public class SnapshotCryptoBenchmark {
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int mb = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        SecurityUtil.init(new SecretKeySpec(new byte[16], "AES"));
+        byte[] plain = new byte[mb * 1024 * 1024];
+        new Random(1).nextBytes(plain);
+        Path file = Files.createTempFile("bench", ".snapshot");
+        byte[] sink = new byte[1 << 16];
+
+        //Baseline: the whole payload as one GCM message, one core
+        long bestEnc = Long.MAX_VALUE, bestDec = Long.MAX_VALUE;
+        for (int r = 0; r < ROUNDS + 1; r++) {
+            long t0 = System.nanoTime();
+            byte[] sealed = SecurityUtil.encryptGcm(plain);
+            long t1 = System.nanoTime();
+            SecurityUtil.decryptGcm(sealed);
+            long t2 = System.nanoTime();
+            if (r > 0) {
+                bestEnc = Math.min(bestEnc, t1 - t0);
+                bestDec = Math.min(bestDec, t2 - t1);
+            }
+        }
+        System.out.printf("one message: encrypt %7.1f MB/s  decrypt %7.1f MB/s (in memory, no file)%n",
+                mb / (bestEnc / 1e9), mb / (bestDec / 1e9));
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int workers = 1; workers <= cores; workers = workers == cores ? cores + 1 : Math.min(cores, workers * 2)) {
+            ForkJoinPool pool = new ForkJoinPool(workers);
+            long bestWrite = Long.MAX_VALUE, bestRead = Long.MAX_VALUE;
+            for (int r = 0; r < ROUNDS + 1; r++) {
+                long t0 = System.nanoTime();
+                SnapshotFile.write(file, plain, pool);
+                long t1 = System.nanoTime();
+                try (InputStream in = SnapshotFile.open(file, pool)) {
+                    while (in.read(sink, 0, sink.length) > 0) { }
+                }
+                long t2 = System.nanoTime();
+                //First round is warmup
+                if (r > 0) {
+                    bestWrite = Math.min(bestWrite, t1 - t0);
+                    bestRead = Math.min(bestRead, t2 - t1);
+                }
+            }
+            pool.shutdown();
+            System.out.printf("%2d workers: write %7.1f MB/s  read %7.1f MB/s%n",
+                    workers, mb / (bestWrite / 1e9), mb / (bestRead / 1e9));
+        }
+        Files.deleteIfExists(file);
+    }
+}
@@ -0,0 +1,258 @@
+package Program;
+
+import javax.crypto.Cipher;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Encrypted snapshot file made of independently sealed AES-GCM chunks.
+ * Layout: magic "TQSE", version byte, 8 byte random file nonce, then frames of
+ *   [int ciphertext length][byte flags][ciphertext + tag]
+ * Chunk i uses nonce = file nonce || i and authenticates the header, i and the flags,
+ * so frames cannot be reordered, swapped between files or cut off after a whole frame.
+ * Every chunk but the last is exactly CHUNK_SIZE, so frame i sits at a fixed offset and
+ * chunks are sealed and opened in parallel on a ForkJoinPool with positional I/O.
+ * Memory stays bounded: one frame per worker when writing, a window of chunks when reading.
+ */
+final class SnapshotFile {
+    static final byte[] MAGIC = {'T', 'Q', 'S', 'E'};
+    static final int VERSION = 1;
+    static final int CHUNK_SIZE = 64 * 1024;
+    private static final int HEADER_SIZE = MAGIC.length + 1 + 8;
+    private static final int FRAME_HEADER = 5;
+    private static final int TAG_BYTES = 16;
+    private static final int FULL_FRAME = FRAME_HEADER + CHUNK_SIZE + TAG_BYTES;
+    private static final int FLAG_LAST = 1;
+    //One frame buffer per worker thread
+    private static final ThreadLocal<ByteBuffer> FRAMES = ThreadLocal.withInitial(() -> ByteBuffer.allocate(FULL_FRAME));
+
+    private SnapshotFile() {}
+
+    //Seal or open one chunk, run on pool workers
+    private interface ChunkTask {
+        void run(int chunk) throws IOException;
+    }
+
+    //True if the file starts with the framed magic, older snapshots are Base64 text
+    static boolean isFramed(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return Arrays.equals(in.readNBytes(MAGIC.length), MAGIC);
+        }
+    }
+
+    static long write(Path path, byte[] plain, int length) throws Exception {
+        return write(path, plain, length, ForkJoinPool.commonPool());
+    }
+
+    static long write(Path path, byte[] plain, ForkJoinPool pool) throws Exception {
+        return write(path, plain, plain.length, pool);
+    }
+
+    //Encrypt plain[0, length) into a temp file next to path, fsync, then swap it in atomically,
+    //the file it replaces becomes path.prev. Returns bytes written
+    static long write(Path path, byte[] plain, int length, ForkJoinPool pool) throws Exception {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put(MAGIC).put((byte) VERSION);
+        byte[] fileNonce = new byte[8];
+        CryptoEngine.random().nextBytes(fileNonce);
+        header.put(fileNonce).flip();
+        byte[] aadHeader = Arrays.copyOf(header.array(), HEADER_SIZE);
+
+        int chunks = Math.max(1, (length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        Path temp = path.resolveSibling(path.getFileName() + ".temp");
+        try (FileChannel ch = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(ch, header, 0);
+            forEachChunk(pool, 0, chunks, i -> {
+                int off = i * CHUNK_SIZE;
+                int len = Math.min(CHUNK_SIZE, length - off);
+                int flags = i == chunks - 1 ? FLAG_LAST : 0;
+                ByteBuffer frame = FRAMES.get();
+                frame.clear();
+                frame.putInt(len + TAG_BYTES).put((byte) flags);
+                try {
+                    Cipher c = SecurityUtil.gcmCipher(Cipher.ENCRYPT_MODE, nonce(fileNonce, i));
+                    c.updateAAD(aad(aadHeader, i, flags));
+                    int n = c.doFinal(plain, off, len, frame.array(), FRAME_HEADER);
+                    frame.position(FRAME_HEADER + n).flip();
+                } catch (GeneralSecurityException e) {
+                    throw new IOException("Could not encrypt snapshot chunk " + i, e);
+                }
+                writeFully(ch, frame, HEADER_SIZE + (long) i * FULL_FRAME);
+            });
+            ch.force(true);
+        }
+        SecurityUtil.setFilePermissions(temp.toString());
+        //Keep the last good snapshot as a fallback for recovery
+        if (Files.exists(path)) Files.move(path, path.resolveSibling(path.getFileName() + ".prev"),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return Files.size(path);
+    }
+
+    static InputStream open(Path path) throws IOException {
+        return open(path, ForkJoinPool.commonPool());
+    }
+
+    //Decrypting stream over a framed file, fails on any tampered, missing or reordered frame
+    static InputStream open(Path path, ForkJoinPool pool) throws IOException {
+        return new Reader(FileChannel.open(path, StandardOpenOption.READ), pool);
+    }
+
+    //Runs task for chunks from..to-1, in parallel when there is more than one
+    private static void forEachChunk(ForkJoinPool pool, int from, int to, ChunkTask task) throws IOException {
+        if (pool == null || to - from <= 1) {
+            for (int i = from; i < to; i++) task.run(i);
+            return;
+        }
+        try {
+            pool.submit(() -> IntStream.range(from, to).parallel().forEach(i -> {
+                try {
+                    task.run(i);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            })).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException u) throw u.getCause();
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Snapshot I/O interrupted");
+        }
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) position += ch.write(buf, position);
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, position);
+            if (n < 0) throw new IOException("Snapshot truncated");
+            position += n;
+        }
+    }
+
+    private static byte[] nonce(byte[] fileNonce, int chunk) {
+        return ByteBuffer.allocate(12).put(fileNonce).putInt(chunk).array();
+    }
+
+    private static byte[] aad(byte[] header, int chunk, int flags) {
+        return ByteBuffer.allocate(HEADER_SIZE + 5).put(header).putInt(chunk).put((byte) flags).array();
+    }
+
+    private static final class Reader extends InputStream {
+        private final FileChannel ch;
+        private final ForkJoinPool pool;
+        private final byte[] header = new byte[HEADER_SIZE];
+        private final byte[] fileNonce = new byte[8];
+        private final long fileSize;
+        private final int chunks;
+        //Window of decrypted chunks, refilled in parallel
+        private final byte[][] window;
+        private final int[] lengths;
+        private int windowStart, windowCount, current;
+        private byte[] plain;
+        private int pos, limit;
+
+        Reader(FileChannel ch, ForkJoinPool pool) throws IOException {
+            this.ch = ch;
+            this.pool = pool;
+            try {
+                fileSize = ch.size();
+                if (fileSize < HEADER_SIZE + FRAME_HEADER + TAG_BYTES) throw new IOException("Snapshot truncated");
+                readFully(ch, ByteBuffer.wrap(header), 0);
+                if (!Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC)) throw new IOException("Not a framed snapshot");
+                if (header[MAGIC.length] != VERSION) throw new IOException("Unsupported snapshot file version " + header[MAGIC.length]);
+                System.arraycopy(header, MAGIC.length + 1, fileNonce, 0, 8);
+                chunks = (int) ((fileSize - HEADER_SIZE + FULL_FRAME - 1) / FULL_FRAME);
+            } catch (IOException e) {
+                ch.close();
+                throw e;
+            }
+            int size = Math.min(chunks, pool == null ? 1 : pool.getParallelism() * 2);
+            window = new byte[size][CHUNK_SIZE];
+            lengths = new int[size];
+            current = -1;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (pos == limit && !nextChunk()) return -1;
+            return plain[pos++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (pos == limit && !nextChunk()) return -1;
+            int n = Math.min(len, limit - pos);
+            System.arraycopy(plain, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            ch.close();
+        }
+
+        private boolean nextChunk() throws IOException {
+            while (true) {
+                if (current + 1 >= windowCount) {
+                    int from = windowStart + windowCount;
+                    if (from >= chunks) return false;
+                    int to = Math.min(chunks, from + window.length);
+                    forEachChunk(pool, from, to, i -> lengths[i - from] = openChunk(i, window[i - from]));
+                    windowStart = from;
+                    windowCount = to - from;
+                    current = -1;
+                }
+                current++;
+                plain = window[current];
+                limit = lengths[current];
+                pos = 0;
+                if (limit > 0) return true;
+            }
+        }
+
+        //Decrypt chunk i into out, returns plaintext length
+        private int openChunk(int i, byte[] out) throws IOException {
+            long offset = HEADER_SIZE + (long) i * FULL_FRAME;
+            boolean lastChunk = i == chunks - 1;
+            ByteBuffer frame = FRAMES.get();
+            frame.clear().limit(FRAME_HEADER);
+            readFully(ch, frame, offset);
+            int len = frame.getInt(0);
+            int flags = frame.get(4);
+            //Only the last frame may be short, and it must end exactly at end of file
+            if (lastChunk ? offset + FRAME_HEADER + len != fileSize || len < TAG_BYTES : len != CHUNK_SIZE + TAG_BYTES)
+                throw new IOException("Snapshot truncated or corrupt at chunk " + i);
+            if (((flags & FLAG_LAST) != 0) != lastChunk) throw new IOException("Snapshot truncated at chunk " + i);
+            frame.clear().limit(len);
+            readFully(ch, frame, offset + FRAME_HEADER);
+            try {
+                Cipher c = SecurityUtil.gcmCipher(Cipher.DECRYPT_MODE, nonce(fileNonce, i));
+                c.updateAAD(aad(header, i, flags));
+                return c.doFinal(frame.array(), 0, len, out, 0);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Snapshot chunk " + i + " failed authentication", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package Program;
+
+//Point-in-time figures from a queue's background snapshot writer
+public final class SnapshotMetrics {
+    public static final SnapshotMetrics NONE = new SnapshotMetrics(0, 0, 0, 0, 0, 0, 0, 0, 0);
+
+    private final long snapshots;
+    private final long failures;
+    private final long coalescedMutations;
+    private final int pendingMutations;
+    private final long pendingLagMillis;
+    private final long lastLagMillis;
+    private final long lastDurationMillis;
+    private final long lastBytes;
+    private final long totalBytes;
+
+    SnapshotMetrics(long snapshots, long failures, long coalescedMutations, int pendingMutations,
+                    long pendingLagMillis, long lastLagMillis, long lastDurationMillis,
+                    long lastBytes, long totalBytes) {
+        this.snapshots = snapshots;
+        this.failures = failures;
+        this.coalescedMutations = coalescedMutations;
+        this.pendingMutations = pendingMutations;
+        this.pendingLagMillis = pendingLagMillis;
+        this.lastLagMillis = lastLagMillis;
+        this.lastDurationMillis = lastDurationMillis;
+        this.lastBytes = lastBytes;
+        this.totalBytes = totalBytes;
+    }
+
+    //Snapshots written successfully
+    public long getSnapshots() { return snapshots; }
+    public long getFailures() { return failures; }
+    //Mutations covered by those snapshots
+    public long getCoalescedMutations() { return coalescedMutations; }
+    //Mutations not yet in any snapshot, and how long the oldest has waited
+    public int getPendingMutations() { return pendingMutations; }
+    public long getPendingLagMillis() { return pendingLagMillis; }
+    //Oldest covered mutation to finished write, for the latest snapshot
+    public long getLastLagMillis() { return lastLagMillis; }
+    public long getLastDurationMillis() { return lastDurationMillis; }
+    public long getLastBytes() { return lastBytes; }
+    public long getTotalBytes() { return totalBytes; }
+
+    @Override
+    public String toString() {
+        return String.format("snapshots=%d failures=%d coalesced=%d pending=%d (lag %d ms) "
+                        + "last: lag %d ms, took %d ms, %,d bytes; total %,d bytes",
+                snapshots, failures, coalescedMutations, pendingMutations, pendingLagMillis,
+                lastLagMillis, lastDurationMillis, lastBytes, totalBytes);
+    }
+}
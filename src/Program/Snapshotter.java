@@ -0,0 +1,189 @@
+package Program;
+
+/**
+ * Background snapshot writer for a queue.
+ * Mutations only mark the queue dirty; one daemon thread writes a snapshot once the
+ * oldest unsaved change is intervalMillis old or maxMutations have piled up, whichever
+ * comes first, so a burst of changes costs one snapshot instead of one each.
+ * The thread is started by the first mark and ended by shutdown() once nothing is left to
+ * write; a later mark starts a new one.
+ */
+class Snapshotter {
+    //Writes one snapshot, returns bytes written
+    interface Writer {
+        long write() throws Exception;
+    }
+
+    private final String name;
+    private final Writer writer;
+    private long intervalMillis;
+    private int maxMutations;
+
+    //All guarded by this
+    private int dirty;              //marks since the last write started
+    private long firstDirtyNanos;   //when the oldest of those arrived
+    private long markedGen;         //every mark ever made
+    private long writtenGen;        //marks covered by finished writes
+    private boolean forced;
+    private Thread thread;          //null while stopped
+    private boolean stopping;
+    private Throwable lastError;
+    private long lastErrorGen;
+    private long snapshots, failures, coalesced, totalBytes;
+    private long lastLagMillis, lastDurationMillis, lastBytes;
+
+    Snapshotter(String name, Writer writer, long intervalMillis, int maxMutations) {
+        this.name = name;
+        this.writer = writer;
+        setPolicy(intervalMillis, maxMutations);
+    }
+
+    synchronized void setPolicy(long intervalMillis, int maxMutations) {
+        if (intervalMillis < 0 || maxMutations < 1) throw new IllegalArgumentException("Invalid snapshot policy");
+        this.intervalMillis = intervalMillis;
+        this.maxMutations = maxMutations;
+        notifyAll();
+    }
+
+    //Called after a mutation, never blocks on I/O
+    synchronized void markDirty() {
+        if (thread == null) {
+            thread = new Thread(this::run, name);
+            thread.setDaemon(true); //flush() and shutdown() are how callers make sure nothing is lost
+            thread.start();
+        }
+        if (dirty++ == 0) firstDirtyNanos = System.nanoTime();
+        markedGen++;
+        notifyAll();
+    }
+
+    //Write now if anything is pending and wait for it, force writes even when clean
+    void flush(boolean force) throws Exception {
+        synchronized (this) {
+            if (force) markDirty();
+            long want = markedGen;
+            if (writtenGen >= want) return;
+            forced = true;
+            notifyAll();
+            while (writtenGen < want) wait();
+            if (lastError != null && lastErrorGen >= want) {
+                if (lastError instanceof Error) throw (Error) lastError;
+                throw (Exception) lastError;
+            }
+        }
+    }
+
+    //Writes what is pending without waiting for the policy, then ends the thread and waits for it
+    void shutdown() {
+        Thread t;
+        synchronized (this) {
+            t = thread;
+            if (t == null) return;
+            stopping = true;
+            notifyAll();
+        }
+        boolean interrupted = false;
+        while (t.isAlive()) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    synchronized SnapshotMetrics metrics() {
+        long lag = dirty == 0 ? 0 : (System.nanoTime() - firstDirtyNanos) / 1_000_000;
+        return new SnapshotMetrics(snapshots, failures, coalesced, dirty, lag,
+                lastLagMillis, lastDurationMillis, lastBytes, totalBytes);
+    }
+
+    private void run() {
+        try {
+            writeBatches();
+        } catch (Throwable e) {
+            //Escaped outside write(), waiters are still released and the next mark starts a new thread
+            System.err.println("Auto-snapshot thread failed: " + e);
+            synchronized (this) {
+                stop(e);
+            }
+        }
+    }
+
+    private void writeBatches() {
+        while (true) {
+            long covered, dirtyAt;
+            int batch;
+            synchronized (this) {
+                try {
+                    while (dirty == 0 && !stopping) wait();
+                    //Marks made while stopping are still written, the thread only ends once clean
+                    if (dirty == 0) {
+                        stop(null);
+                        return;
+                    }
+                    //Hold off until the batch is old enough or big enough
+                    while (!forced && !stopping && dirty < maxMutations) {
+                        long left = intervalMillis - (System.nanoTime() - firstDirtyNanos) / 1_000_000;
+                        if (left <= 0) break;
+                        wait(left);
+                    }
+                } catch (InterruptedException e) {
+                    stop(e);
+                    return;
+                }
+                covered = markedGen;
+                dirtyAt = firstDirtyNanos;
+                batch = dirty;
+                dirty = 0;
+                forced = false;
+            }
+
+            //Marks arriving while this runs start the next batch
+            long start = System.nanoTime();
+            long bytes = 0;
+            Throwable error = null;
+            try {
+                bytes = writer.write();
+            } catch (Throwable e) {
+                //Errors too (e.g. OutOfMemoryError encoding a large queue), or flush() waits forever
+                error = e;
+                System.err.println("Auto-snapshot failed: " + e.getMessage());
+            }
+            long end = System.nanoTime();
+
+            synchronized (this) {
+                if (error == null) {
+                    snapshots++;
+                    coalesced += batch;
+                    lastBytes = bytes;
+                    totalBytes += bytes;
+                    lastError = null;
+                } else {
+                    failures++;
+                    lastError = error;
+                    lastErrorGen = covered;
+                }
+                lastLagMillis = (end - dirtyAt) / 1_000_000;
+                lastDurationMillis = (end - start) / 1_000_000;
+                writtenGen = covered;
+                notifyAll();
+            }
+        }
+    }
+
+    //Called with the lock held by the exiting thread, the next mark starts a new one.
+    //Marks it leaves unwritten are failed with error so flush() does not wait on a dead thread
+    private void stop(Throwable error) {
+        thread = null;
+        stopping = false;
+        if (writtenGen < markedGen) {
+            failures++;
+            lastError = error != null ? error : new IllegalStateException("Snapshot writer " + name + " ended with changes unwritten");
+            lastErrorGen = markedGen;
+            writtenGen = markedGen;
+        }
+        notifyAll();
+    }
+}
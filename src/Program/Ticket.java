@@ -43,6 +43,31 @@ public class Ticket implements Serializable {
         this.status   = TicketStatus.OPEN;
     }
 
+    //Frozen copy for the commit stage, keeps the ID and does not touch the counter
+    Ticket(Ticket other) {
+        this.ticketID = other.ticketID;
+        this.type = other.type;
+        this.title = other.title;
+        this.creator = other.creator;
+        this.owner = other.owner;
+        this.priority = other.priority;
+        this.securityLevel = other.securityLevel;
+        this.status = other.status;
+    }
+
+    //Restored from a snapshot, keeps the ID and does not touch the counter
+    Ticket(int ticketID, RequestType type, String title, String creator, String owner,
+           int priority, SecurityLevel securityLevel, TicketStatus status) {
+        this.ticketID = ticketID;
+        this.type = type;
+        this.title = title;
+        this.creator = creator;
+        this.owner = owner;
+        this.priority = priority;
+        this.securityLevel = securityLevel;
+        this.status = status;
+    }
+
     public RequestType getType() { return type; }
 
 
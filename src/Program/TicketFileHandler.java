@@ -1,14 +1,21 @@
 package Program;
 
 import java.io.*;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
 
 
 
@@ -16,15 +23,41 @@ import java.nio.file.Path;
  * A standalone file handler that uses an append-only log mechanism to save
  * ticket operations (ADD, UPDATE, DELETE) to disk, then reconstruct the
  * final state by replaying the log on startup.
+ * Records use the binary format in TicketLogCodec; a CSV log found at the path
+ * is converted on open.
+ * The log is segmented: records are appended to the file at logFilePath, and once it
+ * passes segmentBytes it is sealed as "<log>.<start position>.seg" with a sparse index
+ * sidecar (see LogSegment) and a fresh file takes its place. Logical positions run on
+ * across segments, so replay, snapshots and history queries see one continuous log, and
+ * retention deletes whole sealed segments without rewriting anything still live.
  */
 public class TicketFileHandler {
+    public static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
     // Where the append-only log is stored
     private String logFilePath;
     private String snapshotFilePath;
-
-    // Simple date format for printing timestamps
-    private static final DateTimeFormatter DATE_FORMATTER =
-            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+    // Segment being appended to, and the sealed ones before it, oldest first
+    private LogSegment active;
+    private final List<LogSegment> sealed = new ArrayList<>();
+    // Sequence number and timestamp of the newest record, buffered or written
+    private long lastSeq;
+    private long lastMillis;
+    private long segmentBytes = DEFAULT_SEGMENT_BYTES;
+    // Retention limits for sealed segments, 0 = no limit
+    private long retainMillis;
+    private long retainBytes;
+    // Kept open between appends, opened on first use and again after close()
+    private FileChannel channel;
+    // Encoded records not yet written to the channel
+    private ByteBuffer pending = ByteBuffer.allocate(8192);
+    // When grouped the owner calls commit() once per batch, otherwise every append commits
+    private boolean grouped;
+    private FsyncPolicy fsyncPolicy = FsyncPolicy.PER_COMMIT;
+    private boolean unsynced;
+    private Timer syncTimer;
+    private long syncIntervalMillis;
+    // Replay splits the log into chunks of about this many bytes
+    private int replayChunkBytes = LogReplay.DEFAULT_CHUNK_BYTES;
 
     // Constructor
     public TicketFileHandler(String logFilePath, String snapshotFilePath) {
@@ -32,67 +65,335 @@ public class TicketFileHandler {
         this.snapshotFilePath = snapshotFilePath;
 
         // If needed, create the file if it doesn't exist
-        File file = new File(logFilePath);
+        Path log = Path.of(logFilePath);
         try {
-            if (!file.exists()) {
-                file.createNewFile();
+            loadSealedSegments();
+            if (!Files.exists(log) || Files.size(log) == 0) {
+                // Also the case after a crash mid-roll: carry on where the last sealed segment ends
+                LogSegment last = sealed.isEmpty() ? null : sealed.get(sealed.size() - 1);
+                writeEmptyActive(last == null ? 0 : last.end, last == null ? 0 : last.lastSeq);
+            } else if (!TicketLogCodec.isBinaryLog(log)) {
+                convertInPlace(log);
             }
+            openActive();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
     /**
-     * Appends a line to the log file with operation = "ADD" and the ticket's latest data.
+     * Converts a CSV ticket log to a binary one at walPath, e.g. an old ticketsLog.csv.
+     * Returns how many records were converted.
+     */
+    public static int convertCsvLog(String csvPath, String walPath) throws IOException {
+        return TicketLogCodec.convertCsv(Path.of(csvPath), Path.of(walPath));
+    }
+
+    // The CSV is kept next to the converted log as <log>.csv.bak
+    private static void convertInPlace(Path log) throws IOException {
+        Path backup = log.resolveSibling(log.getFileName() + ".csv.bak");
+        Files.copy(log, backup, StandardCopyOption.REPLACE_EXISTING);
+        int records = TicketLogCodec.convertCsv(backup, log);
+        System.out.println("Converted " + records + " CSV log records in " + log + ", original kept as " + backup);
+    }
+
+    private void loadSealedSegments() throws IOException {
+        Path log = Path.of(logFilePath).toAbsolutePath();
+        String prefix = log.getFileName() + ".";
+        try (Stream<Path> files = Files.list(log.getParent())) {
+            for (Path p : (Iterable<Path>) files::iterator) {
+                String name = p.getFileName().toString();
+                if (name.startsWith(prefix) && name.endsWith(".seg")) sealed.add(LogSegment.openSealed(p));
+            }
+        }
+        sealed.sort((a, b) -> Long.compare(a.start, b.start));
+    }
+
+    private void writeEmptyActive(long base, long seqFloor) throws IOException {
+        Path log = Path.of(logFilePath);
+        Path temp = log.resolveSibling(log.getFileName() + ".new");
+        try (FileChannel ch = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ch.write(TicketLogCodec.header(base, seqFloor));
+            ch.force(true);
+        }
+        Files.move(temp, log, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Indexes the active segment by scanning it. Anything after the last intact record is a
+     * write cut off by a crash: it is moved aside to <log>.torn and cut off so new records
+     * follow good ones.
+     */
+    private void openActive() throws IOException {
+        Path log = Path.of(logFilePath);
+        long seqFloor;
+        try (FileChannel ch = FileChannel.open(log, StandardOpenOption.READ)) {
+            long[] header = TicketLogCodec.readHeader(ch);
+            active = new LogSegment(log, header[0]);
+            seqFloor = header[1];
+        }
+        String torn = active.scan();
+        lastSeq = Math.max(seqFloor, active.lastSeq);
+        lastMillis = active.lastMillis;
+        if (!sealed.isEmpty()) {
+            lastSeq = Math.max(lastSeq, sealed.get(sealed.size() - 1).lastSeq);
+            lastMillis = Math.max(lastMillis, sealed.get(sealed.size() - 1).lastMillis);
+        }
+        if (torn == null) return;
+        long end = active.offsetOf(active.end);
+        Path aside = log.resolveSibling(log.getFileName() + ".torn");
+        try (FileChannel ch = FileChannel.open(log, StandardOpenOption.WRITE, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(aside, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = ch.size();
+            for (long at = end; at < size; ) at += ch.transferTo(at, size - at, out);
+            ch.truncate(end);
+            ch.force(true);
+        }
+        System.err.println("Ticket log " + logFilePath + " ended in a torn record (" + torn
+                + "), the tail was moved to " + aside);
+    }
+
+    private Path segmentPath(long start) {
+        Path log = Path.of(logFilePath);
+        return log.resolveSibling(log.getFileName() + "." + String.format("%020d", start) + ".seg");
+    }
+
+    // Oldest logical position still in the log
+    private long firstPosition() {
+        return sealed.isEmpty() ? active.start : sealed.get(0).start;
+    }
+
+    /**
+     * Logical end of the log. Positions keep counting across compactions, so a snapshot
+     * checkpoint stays valid after the records before it are dropped.
+     */
+    public synchronized long logPosition() {
+        return active.end;
+    }
+
+    // A segment is sealed once the active file reaches this size
+    public synchronized void setSegmentBytes(long segmentBytes) {
+        if (segmentBytes <= TicketLogCodec.HEADER_SIZE) throw new IllegalArgumentException("Segment size too small");
+        this.segmentBytes = segmentBytes;
+    }
+
+    /**
+     * Sealed segments whose newest record is older than maxAgeMillis, or that push the log
+     * over maxBytes, may be deleted by enforceRetention. 0 turns a limit off.
+     */
+    public synchronized void setRetention(long maxAgeMillis, long maxBytes) {
+        if (maxAgeMillis < 0 || maxBytes < 0) throw new IllegalArgumentException("Retention limits cannot be negative");
+        this.retainMillis = maxAgeMillis;
+        this.retainBytes = maxBytes;
+    }
+
+    /**
+     * Deletes the oldest sealed segments that break the retention limits, but only those that
+     * end at or before keepFrom, so nothing recovery still needs goes. Whole files are deleted,
+     * live data is never rewritten. Returns how many segments were deleted.
+     */
+    public synchronized int enforceRetention(long keepFrom) throws IOException {
+        if (retainMillis == 0 && retainBytes == 0) return 0;
+        long total = Files.size(active.path);
+        for (LogSegment seg : sealed) total += Files.size(seg.path);
+        long oldest = System.currentTimeMillis() - retainMillis;
+        int deleted = 0;
+        while (!sealed.isEmpty()) {
+            LogSegment seg = sealed.get(0);
+            boolean expired = retainMillis > 0 && seg.lastMillis < oldest;
+            boolean over = retainBytes > 0 && total > retainBytes;
+            if (!(expired || over) || seg.end > keepFrom) break;
+            total -= Files.size(seg.path);
+            deleteSegment(sealed.remove(0));
+            deleted++;
+        }
+        return deleted;
+    }
+
+    private static void deleteSegment(LogSegment seg) throws IOException {
+        Files.deleteIfExists(seg.path);
+        Files.deleteIfExists(seg.indexPath());
+    }
+
+    /**
+     * NONE leaves flushing to the OS, INTERVAL fsyncs in the background every intervalMillis,
+     * PER_COMMIT fsyncs each commit before it returns.
+     */
+    public synchronized void setFsyncPolicy(FsyncPolicy policy, long intervalMillis) {
+        if (policy == FsyncPolicy.INTERVAL && intervalMillis <= 0)
+            throw new IllegalArgumentException("Fsync interval must be positive");
+        stopSyncTimer();
+        fsyncPolicy = policy;
+        syncIntervalMillis = intervalMillis;
+        if (policy == FsyncPolicy.INTERVAL) startSyncTimer();
+    }
+
+    private void startSyncTimer() {
+        syncTimer = new Timer("ticket-log-sync", true);
+        syncTimer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                syncNow();
+            }
+        }, syncIntervalMillis, syncIntervalMillis);
+    }
+
+    private void stopSyncTimer() {
+        if (syncTimer != null) {
+            syncTimer.cancel();
+            syncTimer = null;
+        }
+    }
+
+    public synchronized FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    // Smaller chunks spread replay of a small log over more threads
+    public synchronized void setReplayChunkBytes(int chunkBytes) {
+        if (chunkBytes <= 0) throw new IllegalArgumentException("Chunk size must be positive");
+        this.replayChunkBytes = chunkBytes;
+    }
+
+    // The queue's commit stage calls commit() once per batch of records
+    synchronized void setGroupCommit(boolean grouped) {
+        this.grouped = grouped;
+    }
+
+    /**
+     * Writes every buffered record through the open channel in one go and, under
+     * PER_COMMIT, forces it to disk before returning.
+     */
+    public synchronized void commit() throws IOException {
+        if (pending.position() == 0) return;
+        if (channel == null) {
+            channel = FileChannel.open(Path.of(logFilePath), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            // close() stopped the timer along with the channel
+            if (fsyncPolicy == FsyncPolicy.INTERVAL && syncTimer == null) startSyncTimer();
+        }
+        pending.flip();
+        try {
+            while (pending.hasRemaining()) channel.write(pending);
+        } finally {
+            // Anything a failed write left behind is retried by the next commit
+            pending.compact();
+        }
+        if (fsyncPolicy == FsyncPolicy.PER_COMMIT) channel.force(false);
+        else unsynced = true;
+        if (active.offsetOf(active.end) >= segmentBytes) roll();
+    }
+
+    /**
+     * Seals the active segment: forced whatever the fsync policy, renamed to its segment name,
+     * its index written beside it, and an empty file starting at its end put in its place.
+     * A crash between the steps leaves either the old file or a sealed segment the next open
+     * continues from.
+     */
+    private void roll() throws IOException {
+        channel.force(true);
+        channel.close();
+        channel = null;
+        unsynced = false;
+        Path sealedPath = segmentPath(active.start);
+        Files.move(active.path, sealedPath, StandardCopyOption.ATOMIC_MOVE);
+        active.path = sealedPath;
+        active.writeIndex();
+        sealed.add(active);
+        writeEmptyActive(active.end, lastSeq);
+        active = new LogSegment(Path.of(logFilePath), active.end);
+    }
+
+    /**
+     * Commits, forces and closes the channel and stops the INTERVAL timer thread. Later
+     * appends reopen the log and restart the timer, so this is safe to call on shutdown
+     * and before the file is replaced.
+     */
+    public synchronized void close() throws IOException {
+        stopSyncTimer();
+        try {
+            commit();
+            if (channel != null) channel.force(false);
+        } finally {
+            if (channel != null) channel.close();
+            channel = null;
+            unsynced = false;
+        }
+    }
+
+    // INTERVAL timer task, forces outside the lock so appends keep going meanwhile
+    private void syncNow() {
+        FileChannel ch;
+        synchronized (this) {
+            if (!unsynced || channel == null) return;
+            ch = channel;
+            unsynced = false;
+        }
+        try {
+            ch.force(false);
+        } catch (java.nio.channels.ClosedChannelException e) {
+            // close() already forced it
+        } catch (IOException e) {
+            synchronized (this) {
+                unsynced = true;
+            }
+            System.err.println("Ticket log fsync failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Appends an ADD record with the ticket's latest data.
      */
     public synchronized void logAdd(Ticket ticket) {
-        String timestamp = LocalDateTime.now().format(DATE_FORMATTER);
-        String entry = String.format("%s,ADD,%d,%s,%s,%d,%s,%s",
-                timestamp,
-                ticket.getTicketID(),
-                sanitizeCSV(ticket.getTitle()),
-                sanitizeCSV(ticket.getCreator()),
-                ticket.getPriority(),
-                (ticket.getOwner() == null ? "" : sanitizeCSV(ticket.getOwner())),
-                ticket.getSecurityLevel());
-        appendLine(entry);
+        append(TicketLogCodec.OP_ADD, ticket.getTicketID(), ticket, System.currentTimeMillis());
+        commitIfStandalone();
     }
 
     /**
-     * Appends a line to the log file with operation = "UPDATE" and the ticket's updated data.
+     * Appends an UPDATE record with the ticket's updated data.
      */
     public synchronized void logUpdate(Ticket ticket) {
-        String timestamp = LocalDateTime.now().format(DATE_FORMATTER);
-        String entry = String.format("%s,UPDATE,%d,%s,%s,%d,%s,%s",
-                timestamp,
-                ticket.getTicketID(),
-                sanitizeCSV(ticket.getTitle()),
-                sanitizeCSV(ticket.getCreator()),
-                ticket.getPriority(),
-                (ticket.getOwner() == null ? "" : sanitizeCSV(ticket.getOwner())),
-                ticket.getSecurityLevel());
-        appendLine(entry);
+        append(TicketLogCodec.OP_UPDATE, ticket.getTicketID(), ticket, System.currentTimeMillis());
+        commitIfStandalone();
     }
 
     /**
-     * Appends a line to the log file with operation = "DELETE" for a ticket ID.
+     * Appends one ADD record per ticket in a single write, used by bulk imports.
+     */
+    public synchronized void logAddAll(MyList<Ticket> tickets) {
+        long now = System.currentTimeMillis();
+        for (Ticket ticket : tickets) append(TicketLogCodec.OP_ADD, ticket.getTicketID(), ticket, now);
+        commitIfStandalone();
+    }
+
+    /**
+     * Appends a DELETE record for a ticket ID.
      */
     public synchronized void logDelete(int ticketID) {
-        String timestamp = LocalDateTime.now().format(DATE_FORMATTER);
         // For deletion, we don't need ticket's entire data, just the ID
-        String entry = String.format("%s,DELETE,%d",
-                timestamp, ticketID);
-        appendLine(entry);
+        append(TicketLogCodec.OP_DELETE, ticketID, null, System.currentTimeMillis());
+        commitIfStandalone();
+    }
+
+    // Encodes straight into the pending buffer, no text formatting on the way
+    private void append(byte op, int ticketID, Ticket ticket, long millis) {
+        // Timestamps never go backwards, so the index can binary search them
+        lastMillis = Math.max(lastMillis, millis);
+        long at = active.offsetOf(active.end);
+        int before = pending.position();
+        pending = TicketLogCodec.put(pending, ++lastSeq, lastMillis, op, ticketID, ticket);
+        active.note(at, pending.position() - before, lastSeq, lastMillis);
     }
 
     /**
-     * Helper method to append a single line to the log file.
+     * Grouped handlers write at the owner's next commit(), standalone ones straight away.
      */
-    private void appendLine(String line) {
-        // Write in append mode
-        try (FileWriter writer = new FileWriter(logFilePath, true)) {
-            writer.write(line + System.lineSeparator());
-            writer.flush();
+    private void commitIfStandalone() {
+        if (grouped) return;
+        try {
+            commit();
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -100,104 +401,197 @@ public class TicketFileHandler {
 
     /**
      * Rebuilds the Program.PriorityQueue from the appended log.
-     * - Reads the log line by line.
+     * - Replays every binary record still in the log, oldest first (see replayInto).
      * - For ADD/UPDATE, store/update a Program.Ticket in a Map (ticketId -> Program.Ticket).
      * - For DELETE, remove from the Map.
      * - Then, the final Map state is inserted into a new Program.PriorityQueue, ignoring older duplicates.
      */
     public PriorityQueue loadQueueFromLog() throws IOException {
-        PriorityQueue queue = new PriorityQueue(10000, logFilePath, snapshotFilePath);
+        return (PriorityQueue) loadQueueFromLog(QueueMode.HEAP, AbstractTicketQueue.DEFAULT_SOFT_CAP);
+    }
+
+    /**
+     * Same replay as above but into the chosen queue implementation.
+     * The soft cap is raised to fit everything in the log so replay never rejects a ticket.
+     */
+    public TicketQueue loadQueueFromLog(QueueMode mode, int softCap) throws IOException {
         // Keep track of the latest ticket state by ticketID
         Map<Integer, Ticket> latestTickets = new HashMap<>();
-
-        try (BufferedReader br = new BufferedReader(new FileReader(logFilePath))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                // e.g. "2025-04-16T09:00:00,ADD,200,Email outage,bob,2,,BASE"
-                // or   "2025-04-16T09:05:00,UPDATE,200,Email outage,bob,1,bob,BASE"
-                // or   "2025-04-16T09:10:00,DELETE,200"
-                String[] parts = line.split(",", -1); // -1 to preserve empty fields
-                if (parts.length < 3) {
-                    // skip malformed lines
-                    continue;
-                }
-
-                String operation = parts[1].trim();    // ADD/UPDATE/DELETE
-                int ticketId = Integer.parseInt(parts[2].trim());
-
-                switch (operation) {
-                    case "ADD":
-                    case "UPDATE":
-                        // For ADD/UPDATE, we need all data
-                        // e.g. parts = [timestamp, operation, id, title, creator, priority, owner, securityLevel]
-                        if (parts.length >= 8) {
-                            // parse fields
-                            String title = unSanitizeCSV(parts[3].trim());
-                            String creator = unSanitizeCSV(parts[4].trim());
-                            int priority = Integer.parseInt(parts[5].trim());
-                            String owner = unSanitizeCSV(parts[6].trim());
-                            SecurityLevel secLevel = SecurityLevel.valueOf(parts[7].trim());
-
-                            Ticket t = new Ticket(title, creator, priority, secLevel);
-                            // The Program.Ticket constructor auto-increments ticketID, but we want the logged ID
-                            // We can "force" the ticketID if needed, or store it in a new field
-                            // For simplicity, let's pretend we re-assign it here:
-                            forceSetTicketID(t, ticketId);
-
-                            if (owner != null && !owner.isEmpty()) {
-                                t.setOwner(owner);
-                            }
-                            latestTickets.put(ticketId, t);
-                        }
-                        break;
-                    case "DELETE":
-                        // remove from map
-                        latestTickets.remove(ticketId);
-                        break;
-                    default:
-                        // ignore unknown ops
-                }
-            }
+        try {
+            replayInto(latestTickets, firstPosition());
         } catch (IOException e) {
             e.printStackTrace();
         }
+        return buildQueue(latestTickets, mode, softCap);
+    }
 
-        // Insert the final version of each ticket into the queue
-        for (Ticket t : latestTickets.values()) {
-            queue.addTicket(t, SessionManager.getInstance().getCurrentUser());
+    /**
+     * Startup recovery: load the newest snapshot whose checkpoint the log still covers,
+     * then replay only the log records after that checkpoint. Falls back to the previous
+     * snapshot, then to a full replay, if a snapshot is missing, unreadable or stale.
+     */
+    public TicketQueue recover(QueueMode mode, int softCap) throws IOException {
+        long end = logPosition();
+        long base = firstPosition();
+        for (String candidate : new String[]{snapshotFilePath, snapshotFilePath + ".prev"}) {
+            if (candidate == null || !new File(candidate).exists()) continue;
+            SnapshotCodec.Contents snap;
+            try {
+                snap = AbstractTicketQueue.readSnapshotContents(candidate);
+            } catch (Exception e) {
+                System.err.println("Skipping unreadable snapshot " + candidate + ": " + e.getMessage());
+                continue;
+            }
+            if (snap.checkpoint < base || snap.checkpoint > end) {
+                // No checkpoint, compacted past it, or ahead of the log: the log is the authority
+                System.err.println("Snapshot " + candidate + " does not match the log, skipping it");
+                continue;
+            }
+            Map<Integer, Ticket> latestTickets = new HashMap<>();
+            for (Ticket t : snap.tickets) latestTickets.put(t.getTicketID(), t);
+            int records = replayInto(latestTickets, snap.checkpoint);
+            System.out.println("Recovered " + snap.tickets.size() + " tickets from " + candidate
+                    + " and " + records + " newer log records");
+            return buildQueue(latestTickets, mode, softCap);
         }
+        if (base > 0) System.err.println("No usable snapshot, log records before position " + base + " were compacted away");
+        return loadQueueFromLog(mode, softCap);
+    }
+
+    // Size from what the log actually holds
+    private TicketQueue buildQueue(Map<Integer, Ticket> latestTickets, QueueMode mode, int softCap) {
+        TicketQueue queue = mode.create(Math.max(softCap, latestTickets.size()), logFilePath, snapshotFilePath);
+        // Bulk build: the tickets are already in the log, so no new ADD lines, audits or snapshots
+        queue.addAll(latestTickets.values());
         return queue;
     }
 
     /**
-     * Helper method: forcibly override the ticket ID.
-     * Typically we rely on the static globalIDCounter, but we want to honor the log's ID.
+     * Applies every record from logical position "from" onwards to latestTickets.
+     * - For ADD/UPDATE, store/update a Program.Ticket in a Map (ticketId -> Program.Ticket).
+     * - For DELETE, remove from the Map.
+     * The segments are read with positional reads into pooled buffers and decoded in
+     * parallel chunks, see LogReplay; the result is the same as applying the records one
+     * by one, stopping at the first torn one.
+     * Returns how many records were applied.
      */
-    private void forceSetTicketID(Ticket t, int forcedID) {
-        // Reflection approach or re-assign the static in a 'hacky' way
-        // For demonstration only:
-        try {
-            java.lang.reflect.Field idField = Ticket.class.getDeclaredField("ticketID");
-            idField.setAccessible(true);
-            idField.setInt(t, forcedID);
-        } catch (Exception e) {
-            e.printStackTrace();
+    private synchronized int replayInto(Map<Integer, Ticket> latestTickets, long from) throws IOException {
+        if (from < firstPosition()) throw new IOException("Log position " + from + " was compacted away");
+        List<Path> files = new ArrayList<>();
+        long offset = 0;
+        for (LogSegment seg : segments()) {
+            if (seg.end <= from && seg != active) continue;
+            if (files.isEmpty()) offset = seg.offsetOf(Math.max(from, seg.start));
+            files.add(seg.path);
         }
+        return LogReplay.replay(files, offset, latestTickets, ForkJoinPool.commonPool(), replayChunkBytes);
+    }
+
+    // Sealed segments then the active one
+    private List<LogSegment> segments() {
+        List<LogSegment> all = new ArrayList<>(sealed);
+        all.add(active);
+        return all;
     }
 
     /**
-     * Ensures CSV fields do not contain commas or newlines (trivial sanitization).
+     * Every intact record still in the log, oldest first.
      */
-    private String sanitizeCSV(String input) {
-        if (input == null) return "";
-        return input.replace(",", ";").replaceAll("[\\r\\n]+", " ");
+    public MyList<LogRecord> readRecords() throws IOException {
+        return readRecordsFrom(Long.MIN_VALUE);
     }
 
     /**
-     * Basic un-sanitization if needed (optional).
+     * Records with sequence number fromSeq or later, oldest first. The segment and the
+     * place in it are found by binary search, only the records from there on are read.
      */
-    private String unSanitizeCSV(String input) {
-        // In this example, we assume the user never typed semicolons.
-        return input.replace(";", ",");
+    public synchronized MyList<LogRecord> readRecordsFrom(long fromSeq) throws IOException {
+        commit();
+        MyArrayList<LogRecord> records = new MyArrayList<>();
+        List<LogSegment> all = nonEmptySegments();
+        long previous = 0;
+        for (int i = firstEndingAtOrAfter(all, fromSeq, true); i < all.size(); i++) {
+            LogSegment seg = all.get(i);
+            try (FileChannel ch = FileChannel.open(seg.path, StandardOpenOption.READ);
+                 TicketLogCodec.Reader r = new TicketLogCodec.Reader(ch, seg.seekSeq(fromSeq), previous)) {
+                while (r.next()) if (r.seq >= fromSeq) records.add(r.record());
+                previous = Math.max(previous, r.seq);
+                if (r.torn() != null) break;
+            }
+        }
+        return records;
+    }
+
+    /**
+     * History of one ticket: its ADD, UPDATE and DELETE records with timestamps in
+     * [fromMillis, toMillis], oldest first. Binary searches find the first segment and the
+     * place in it, reading stops at the first record after toMillis.
+     */
+    public synchronized MyList<LogRecord> history(int ticketID, long fromMillis, long toMillis) throws IOException {
+        commit();
+        MyArrayList<LogRecord> records = new MyArrayList<>();
+        List<LogSegment> all = nonEmptySegments();
+        for (int i = firstEndingAtOrAfter(all, fromMillis, false); i < all.size(); i++) {
+            LogSegment seg = all.get(i);
+            if (seg.firstMillis() > toMillis) break;
+            try (FileChannel ch = FileChannel.open(seg.path, StandardOpenOption.READ);
+                 TicketLogCodec.Reader r = new TicketLogCodec.Reader(ch, seg.seekMillis(fromMillis), 0)) {
+                while (r.next()) {
+                    if (r.millis > toMillis) return records;
+                    if (r.millis >= fromMillis && r.ticketID == ticketID) records.add(r.record());
+                }
+                if (r.torn() != null) break;
+            }
+        }
+        return records;
+    }
+
+    private List<LogSegment> nonEmptySegments() {
+        List<LogSegment> all = segments();
+        all.removeIf(LogSegment::isEmpty);
+        return all;
+    }
+
+    // Index of the first segment whose last seq (or last timestamp) is at least key
+    private static int firstEndingAtOrAfter(List<LogSegment> all, long key, boolean bySeq) {
+        int lo = 0, hi = all.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            long last = bySeq ? all.get(mid).lastSeq : all.get(mid).lastMillis;
+            if (last < key) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Drops every record before logical position keepFrom, which a snapshot already covers.
+     * Sealed segments that end by keepFrom are deleted whole. If keepFrom is inside the active
+     * segment, its kept tail is copied behind a new header (base = keepFrom) into a temp file
+     * that atomically replaces it, so a crash leaves either the old or the compacted file.
+     * Must run on the queue's commit thread so no append lands mid-copy. Returns bytes dropped.
+     */
+    public synchronized long compact(long keepFrom) throws IOException {
+        long end = logPosition();
+        long first = firstPosition();
+        if (keepFrom <= first || keepFrom > end) return 0;
+        while (!sealed.isEmpty() && sealed.get(0).end <= keepFrom) deleteSegment(sealed.remove(0));
+        if (keepFrom > active.start) {
+            // The channel would keep appending to the replaced file
+            close();
+            Path log = Path.of(logFilePath);
+            Path temp = log.resolveSibling(log.getFileName() + ".compact");
+            try (FileChannel src = FileChannel.open(log, StandardOpenOption.READ);
+                 FileChannel dst = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+                // Sequence numbers keep growing even if every record is dropped
+                dst.write(TicketLogCodec.header(keepFrom, lastSeq));
+                long from = active.offsetOf(keepFrom), size = src.size();
+                while (from < size) from += src.transferTo(from, size - from, dst);
+                dst.force(true);
+            }
+            Files.move(temp, log, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            openActive();
+        }
+        return firstPosition() - first;
     }
 }
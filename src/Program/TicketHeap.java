@@ -0,0 +1,136 @@
+package Program;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.function.Consumer;
+
+//Binary min-heap of tickets with an ID index, one per security level in PriorityQueue
+//Not thread safe, the owning queue holds the lock
+class TicketHeap implements LevelHeap, Serializable {
+    private static final long serialVersionUID = 1L;
+    //Never shrink below this many slots
+    private static final int MIN_SLOTS = 16;
+
+    private Ticket[] heap;
+    private int size;
+    //ticketID -> heap slot, rebuilt after deserialising
+    private transient MyIntMap index;
+
+    TicketHeap(int capacity) {
+        this.heap = new Ticket[Math.max(capacity, 1)];
+        this.index = new MyIntMap(capacity, -1);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        index = new MyIntMap(heap.length, -1);
+        for (int i = 0; i < size; i++) index.put(heap[i].getTicketID(), i);
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+    public boolean contains(int ticketID) { return index.containsKey(ticketID); }
+    public Ticket get(int i) { return heap[i]; } //Raw slot access for scans, not sorted order
+    public Ticket peek() { return size == 0 ? null : heap[0]; }
+    public int arity() { return 2; }
+
+    //Ties have no defined order here, slot order will do
+    public void scanByArrival(Consumer<Ticket> visitor) {
+        for (int i = 0; i < size; i++) visitor.accept(heap[i]);
+    }
+
+    public void add(Ticket t) {
+        if (size == heap.length) grow();
+        place(size++, t);
+        heapifyUp(size - 1);
+    }
+
+    //Append everything then one bottom-up heapify, O(n) instead of O(n log n)
+    public void addAll(MyList<Ticket> tickets) {
+        if (size + tickets.size() > heap.length) {
+            Ticket[] bigger = new Ticket[size + tickets.size() + ((size + tickets.size()) >>> 1)];
+            System.arraycopy(heap, 0, bigger, 0, size);
+            heap = bigger;
+        }
+        for (Ticket t : tickets) place(size++, t);
+        for (int i = size / 2 - 1; i >= 0; i--) heapifyDown(i);
+    }
+
+    public Ticket poll() {
+        if (size == 0) return null;
+        Ticket top = heap[0];
+        removeAt(0);
+        return top;
+    }
+
+    //Returns the ticket whose priority changed, or null if not here
+    public Ticket updatePriority(int ticketID, int newPriority) {
+        int idx = index.get(ticketID);
+        if (idx == -1) return null;
+        Ticket t = heap[idx];
+        t.setPriority(newPriority);
+        //Only one of these moves the ticket
+        heapifyDown(heapifyUp(idx));
+        return t;
+    }
+
+    public boolean remove(int ticketID) {
+        int idx = index.get(ticketID);
+        if (idx == -1) return false;
+        removeAt(idx);
+        return true;
+    }
+
+    //HELPERS UTILISING BINARY HEAP FUNCTIONALITY
+
+    //Fill slot i with the last ticket and restore heap order around it
+    private void removeAt(int i) {
+        index.remove(heap[i].getTicketID());
+        Ticket last = heap[--size];
+        heap[size] = null;
+        if (i != size) {
+            place(i, last);
+            heapifyDown(heapifyUp(i));
+        }
+        //Give memory back after a peak drains
+        if (heap.length > MIN_SLOTS && size < heap.length / 4) shrink();
+    }
+
+    //Returns final slot of the moved ticket
+    private int heapifyUp(int i) {
+        while (i > 0) {
+            int p = (i - 1) / 2; //PARENT INDEX
+            if (heap[i].getPriority() < heap[p].getPriority()) {
+                swap(i, p); i = p; //BUBBLE SORT TO TOP OF LIST
+            } else break;
+        }
+        return i;
+    }
+    private void heapifyDown(int i) {
+        while (true) {
+            int l = 2*i+1, r = 2*i+2, s = i; //Binary search
+            if (l < size && heap[l].getPriority() < heap[s].getPriority()) s = l;
+            if (r < size && heap[r].getPriority() < heap[s].getPriority()) s = r;
+            if (s != i) //Finds smallest child
+            { swap(i, s); //bubble sort down
+                i = s; } else break;
+        }
+    }
+
+    private void swap(int a, int b) { Ticket t = heap[a]; place(a, heap[b]); place(b, t); } //Swap two features, used for bubble sorting
+    private void place(int i, Ticket t) { heap[i] = t; index.put(t.getTicketID(), i); } //Every heap write goes through here to keep index in step
+
+    //Grow by 1.5 x like MyArrayList
+    private void grow() {
+        Ticket[] bigger = new Ticket[heap.length + (heap.length >>> 1) + 1];
+        System.arraycopy(heap, 0, bigger, 0, size);
+        heap = bigger;
+    }
+    //Halve, still leaves room to grow before the next copy
+    private void shrink() {
+        Ticket[] smaller = new Ticket[Math.max(MIN_SLOTS, heap.length / 2)];
+        System.arraycopy(heap, 0, smaller, 0, size);
+        heap = smaller;
+    }
+}
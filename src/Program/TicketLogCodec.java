@@ -0,0 +1,371 @@
+package Program;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary ticket log (write-ahead log) format.
+ * File header: magic "TQWL", version byte, 8 byte base position, 8 byte sequence floor
+ * (new records are numbered above it, so numbering survives compacting every record away).
+ * Then records of
+ *   [int body length][int CRC32C of body][body]
+ * where body = seq (long), epoch millis (long), op (byte), ticket id (int) and, for ADD
+ * and UPDATE, priority (int), level, type, status (bytes by ordinal), title, creator, owner.
+ * Strings are an int byte length (-1 = null) and UTF-8 bytes, so any text round-trips.
+ * Sequence numbers only grow; a record that is cut short, fails its CRC or goes backwards
+ * ends the readable log.
+ */
+final class TicketLogCodec {
+    static final byte[] MAGIC = {'T', 'Q', 'W', 'L'};
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = MAGIC.length + 1 + 8 + 8;
+    static final byte OP_ADD = 1;
+    static final byte OP_UPDATE = 2;
+    static final byte OP_DELETE = 3;
+    private static final int RECORD_HEADER = 8;
+    private static final int MIN_BODY = 8 + 8 + 1 + 4;
+    //Far above any real ticket, a bigger length means a garbage header
+    private static final int MAX_BODY = 1 << 20;
+
+    private TicketLogCodec() {}
+
+    static ByteBuffer header(long base, long seqFloor) {
+        ByteBuffer b = ByteBuffer.allocate(HEADER_SIZE);
+        b.put(MAGIC).put((byte) VERSION).putLong(base).putLong(seqFloor).flip();
+        return b;
+    }
+
+    //Header fields of a log file: {base, seqFloor}
+    static long[] readHeader(FileChannel ch) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(HEADER_SIZE);
+        while (b.hasRemaining()) if (ch.read(b, b.position()) < 0) throw new IOException("Ticket log header truncated");
+        b.flip();
+        byte[] magic = new byte[MAGIC.length];
+        b.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) throw new IOException("Not a binary ticket log");
+        int version = b.get();
+        if (version != VERSION) throw new IOException("Unsupported ticket log version " + version);
+        return new long[]{b.getLong(), b.getLong()};
+    }
+
+    //True if the file starts with the log magic, older logs are CSV text
+    static boolean isBinaryLog(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return Arrays.equals(in.readNBytes(MAGIC.length), MAGIC);
+        }
+    }
+
+    /**
+     * Appends one record to buf, growing it if needed, and returns the buffer to keep using.
+     * ticket is null for DELETE.
+     */
+    static ByteBuffer put(ByteBuffer buf, long seq, long millis, byte op, int ticketID, Ticket ticket) {
+        byte[] title = null, creator = null, owner = null;
+        int body = MIN_BODY;
+        if (ticket != null) {
+            title = utf8(ticket.getTitle());
+            creator = utf8(ticket.getCreator());
+            owner = utf8(ticket.getOwner());
+            body += 4 + 3 + 12 + length(title) + length(creator) + length(owner);
+        }
+        if (buf.remaining() < RECORD_HEADER + body) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + RECORD_HEADER + body));
+            buf.flip();
+            buf = bigger.put(buf);
+        }
+        int start = buf.position();
+        buf.putInt(body).putInt(0).putLong(seq).putLong(millis).put(op).putInt(ticketID);
+        if (ticket != null) {
+            buf.putInt(ticket.getPriority())
+                    .put((byte) ticket.getSecurityLevel().ordinal())
+                    .put((byte) ticket.getType().ordinal())
+                    .put((byte) ticket.getStatus().ordinal());
+            putString(buf, title);
+            putString(buf, creator);
+            putString(buf, owner);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buf.array(), buf.arrayOffset() + start + RECORD_HEADER, body);
+        buf.putInt(start + 4, (int) crc.getValue());
+        return buf;
+    }
+
+    private static byte[] utf8(String s) {
+        return s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] b) {
+        return b == null ? 0 : b.length;
+    }
+
+    private static void putString(ByteBuffer buf, byte[] b) {
+        if (b == null) {
+            buf.putInt(-1);
+        } else {
+            buf.putInt(b.length).put(b);
+        }
+    }
+
+    //Reads a string, or only checks and skips it when keep is false
+    private static String getString(ByteBuffer buf, boolean keep) throws IOException {
+        int len = buf.getInt();
+        if (len == -1) return null;
+        if (len < 0 || len > buf.remaining()) throw new IOException("bad string length");
+        String s = null;
+        if (!keep) {
+            buf.position(buf.position() + len);
+        } else if (buf.hasArray()) {
+            s = new String(buf.array(), buf.arrayOffset() + buf.position(), len, StandardCharsets.UTF_8);
+            buf.position(buf.position() + len);
+        } else {
+            byte[] b = new byte[len];
+            buf.get(b);
+            s = new String(b, StandardCharsets.UTF_8);
+        }
+        return s;
+    }
+
+    private static <E> E pick(E[] values, int ordinal) throws IOException {
+        if (ordinal < 0 || ordinal >= values.length) throw new IOException("bad enum ordinal " + ordinal);
+        return values[ordinal];
+    }
+
+    //Fields of the last record decoded, reused from record to record
+    static class Decoded {
+        long seq, millis;
+        byte op;
+        int ticketID;
+        Ticket ticket;
+
+        LogRecord record() {
+            LogRecord.Op o = op == OP_ADD ? LogRecord.Op.ADD : op == OP_UPDATE ? LogRecord.Op.UPDATE : LogRecord.Op.DELETE;
+            return new LogRecord(seq, millis, o, ticketID, ticket);
+        }
+    }
+
+    static String decode(ByteBuffer buf, long previousSeq, Decoded out, CRC32C crc) {
+        return decode(buf, previousSeq, out, crc, true);
+    }
+
+    /**
+     * Checks and decodes the record at buf's position into out, for heap and mapped buffers alike.
+     * Without materialize every field is still checked but out.ticket stays null, which saves
+     * building tickets a later record replaces.
+     * Returns null and moves buf past the record, or says why the record is torn and leaves buf alone.
+     */
+    static String decode(ByteBuffer buf, long previousSeq, Decoded out, CRC32C crc, boolean materialize) {
+        int at = buf.position();
+        if (buf.remaining() < RECORD_HEADER) return "record header cut short";
+        int len = buf.getInt(at);
+        if (len < MIN_BODY || len > MAX_BODY) return "bad record length " + len;
+        if (buf.remaining() - RECORD_HEADER < len) return "record cut short";
+        ByteBuffer b = buf.duplicate();
+        b.limit(at + RECORD_HEADER + len).position(at + RECORD_HEADER);
+        crc.reset();
+        crc.update(b);
+        if ((int) crc.getValue() != buf.getInt(at + 4)) return "checksum mismatch";
+        b.position(at + RECORD_HEADER);
+        try {
+            long s = b.getLong();
+            if (s <= previousSeq) return "sequence " + s + " after " + previousSeq;
+            long m = b.getLong();
+            byte o = b.get();
+            int id = b.getInt();
+            if (id <= 0) return "malformed record: bad ticket id " + id;
+            Ticket t = null;
+            if (o == OP_ADD || o == OP_UPDATE) {
+                int priority = b.getInt();
+                SecurityLevel level = pick(SecurityLevel.values(), b.get());
+                RequestType type = pick(RequestType.values(), b.get());
+                TicketStatus status = pick(TicketStatus.values(), b.get());
+                String title = getString(b, materialize);
+                String creator = getString(b, materialize);
+                String owner = getString(b, materialize);
+                if (materialize) t = new Ticket(id, type, title, creator, owner, priority, level, status);
+            } else if (o != OP_DELETE) {
+                return "unknown operation " + o;
+            }
+            out.seq = s;
+            out.millis = m;
+            out.op = o;
+            out.ticketID = id;
+            out.ticket = t;
+        } catch (BufferUnderflowException | IOException e) {
+            //The CRC matched, so this was written wrong rather than torn, stop all the same
+            return "malformed record: " + e.getMessage();
+        }
+        buf.position(at + RECORD_HEADER + len);
+        return null;
+    }
+
+    //Length of the record at offset, or -1 if its header is cut short or implausible
+    static int recordLength(ByteBuffer buf, int offset) {
+        if (buf.limit() - offset < RECORD_HEADER) return -1;
+        int len = buf.getInt(offset);
+        return len < MIN_BODY || len > MAX_BODY ? -1 : RECORD_HEADER + len;
+    }
+
+    /**
+     * Sequential record reader from a file position. next() returns false at the clean end
+     * of the log or at the first torn record, which torn() then describes.
+     */
+    static final class Reader extends Decoded implements Closeable {
+        private final DataInputStream in;
+        private byte[] record = new byte[256];
+        private final CRC32C crc = new CRC32C();
+        private long position;
+        private String torn;
+
+        Reader(FileChannel ch, long position, long previousSeq) throws IOException {
+            ch.position(position);
+            this.in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(ch), 64 * 1024));
+            this.position = position;
+            this.seq = previousSeq;
+        }
+
+        //File offset just past the last good record
+        long position() { return position; }
+
+        //Why reading stopped early, null at a clean end
+        String torn() { return torn; }
+
+        boolean next() throws IOException {
+            int got = in.readNBytes(record, 0, RECORD_HEADER);
+            if (got == 0) return false;
+            int len = got < RECORD_HEADER ? RECORD_HEADER : RECORD_HEADER + Math.max(0, ByteBuffer.wrap(record).getInt());
+            if (got == RECORD_HEADER && len - RECORD_HEADER <= MAX_BODY) {
+                if (record.length < len) record = Arrays.copyOf(record, Math.max(len, record.length * 2));
+                got += in.readNBytes(record, RECORD_HEADER, len - RECORD_HEADER);
+            }
+            String why = decode(ByteBuffer.wrap(record, 0, got), seq, this, crc);
+            if (why != null) {
+                torn = why + " at offset " + position;
+                return false;
+            }
+            position += got;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Converts a CSV ticket log into a binary one at wal, numbering records from 1.
+     * Positions in the CSV do not carry over, so the new log's base is placed at the CSV's
+     * logical end: snapshot checkpoints taken against the CSV either cover all of it or are
+     * rejected by recovery. Malformed lines are skipped as the CSV replay did.
+     * Times are kept non-decreasing like TicketFileHandler.append keeps them, so the segment
+     * time index stays sorted.
+     * Returns how many records were converted.
+     */
+    static int convertCsv(Path csv, Path wal) throws IOException {
+        long base = 0;
+        long headerBytes = 0;
+        int records = 0;
+        long[] lastMillis = {0};
+        ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+        Path temp = wal.resolveSibling(wal.getFileName() + ".convert");
+        try (BufferedReader br = Files.newBufferedReader(csv, java.nio.charset.Charset.defaultCharset());
+             FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.position(HEADER_SIZE);
+            String line;
+            boolean first = true;
+            while ((line = br.readLine()) != null) {
+                if (first && line.startsWith("#BASE,")) {
+                    base = Long.parseLong(line.substring("#BASE,".length()).trim());
+                    headerBytes = (line + System.lineSeparator()).getBytes().length;
+                }
+                first = false;
+                int before = buf.position();
+                try {
+                    buf = putCsvLine(buf, line, records + 1, lastMillis);
+                } catch (RuntimeException e) {
+                    //Malformed numbers, levels or a torn last line
+                    buf.position(before);
+                }
+                if (buf.position() > before) records++;
+                if (buf.position() > 32 * 1024) {
+                    buf.flip();
+                    while (buf.hasRemaining()) out.write(buf);
+                    buf.clear();
+                }
+            }
+            buf.flip();
+            while (buf.hasRemaining()) out.write(buf);
+            long csvEnd = base + Files.size(csv) - headerBytes;
+            ByteBuffer header = header(csvEnd, 0);
+            while (header.hasRemaining()) out.write(header, header.position());
+            out.force(true);
+        }
+        Files.move(temp, wal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return records;
+    }
+
+    /**
+     * One CSV line, e.g.
+     *   "2025-04-16T09:00:00,ADD,200,Email outage,bob,2,,BASE"
+     *   "2025-04-16T09:10:00,DELETE,200"
+     * Commas in titles were stored as semicolons and the CSV replay turned every
+     * semicolon back into a comma; that is kept so converted tickets match what the
+     * old log loaded as. A time that is missing, unreadable or earlier than the previous
+     * record's becomes the previous record's; lastMillis is moved on for each record put.
+     */
+    private static ByteBuffer putCsvLine(ByteBuffer buf, String line, long seq, long[] lastMillis) {
+        String[] parts = line.split(",", -1);
+        if (parts.length < 3) return buf;
+        String operation = parts[1].trim();
+        int ticketID = Integer.parseInt(parts[2].trim());
+        long millis = Math.max(lastMillis[0], csvMillis(parts[0].trim()));
+        switch (operation) {
+            case "ADD":
+            case "UPDATE":
+                if (parts.length < 8) return buf;
+                String owner = unSanitizeCSV(parts[6].trim());
+                Ticket t = new Ticket(ticketID, RequestType.OTHER, unSanitizeCSV(parts[3].trim()),
+                        unSanitizeCSV(parts[4].trim()), owner.isEmpty() ? null : owner,
+                        Integer.parseInt(parts[5].trim()), SecurityLevel.valueOf(parts[7].trim()), TicketStatus.OPEN);
+                lastMillis[0] = millis;
+                return put(buf, seq, millis, operation.equals("ADD") ? OP_ADD : OP_UPDATE, ticketID, t);
+            case "DELETE":
+                lastMillis[0] = millis;
+                return put(buf, seq, millis, OP_DELETE, ticketID, null);
+            default:
+                return buf;
+        }
+    }
+
+    //Long.MIN_VALUE if the time cannot be read, the caller clamps it to the previous record's
+    private static long csvMillis(String timestamp) {
+        try {
+            return LocalDateTime.parse(timestamp).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    private static String unSanitizeCSV(String input) {
+        return input.replace(";", ",");
+    }
+}
@@ -0,0 +1,55 @@
+package Program;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+//Operations Main and the file handler need from a ticket queue
+//Implemented by PriorityQueue (binary heaps) and BucketQueue (FIFO per priority)
+public interface TicketQueue {
+    //Throws QueueFullException at the soft cap
+    void addTicket(Ticket ticket, User user);
+    //Mutations take a Durability, the short forms wait (SYNC)
+    //A SYNC mutation whose log write failed throws UncheckedIOException, the queue change itself stays
+    void addTicket(Ticket ticket, User user, Durability durability);
+    //Waits up to timeout for room, false if still full
+    boolean offerTicket(Ticket ticket, User user, long timeout, TimeUnit unit) throws InterruptedException;
+    boolean updateTicketPriority(int ticketID, int newPriority, User user);
+    boolean updateTicketPriority(int ticketID, int newPriority, User user, Durability durability);
+    boolean deleteTicket(int ticketID, User user);
+    boolean deleteTicket(int ticketID, User user, Durability durability);
+    //Remove and return best ticket the user may see
+    Ticket pollTicket(User user);
+    Ticket pollTicket(User user, Durability durability);
+    //Restore without side effects, one O(n) heap build
+    void addAll(Collection<Ticket> tickets);
+    //New tickets in bulk, logged in one batch
+    void importTickets(Collection<Ticket> tickets, User user);
+    //Wait for every queued log and audit record to be written
+    void flush();
+    //Completes once every mutation so far is committed, for ASYNC callers
+    CompletableFuture<Long> committed();
+    void setFsyncPolicy(FsyncPolicy policy, long intervalMillis);
+    //Age and size limits for sealed log segments, 0 = no limit
+    void setLogRetention(long maxAgeMillis, long maxBytes);
+    //Commit, fsync and close the log, later mutations reopen it
+    void close() throws IOException;
+    //Best ticket overall, not removed
+    Ticket peek();
+    MyList<Ticket> listAccessibleTickets(User user);
+    MyList<Ticket> searchAccessibleTickets(String titleQuery, User user);
+    //k best tickets the user may see, in priority order
+    MyList<Ticket> topK(User user, int k);
+    MyList<Ticket> getAllTickets();
+    int getMaxTicketID();
+    int getSize();
+    boolean isEmpty();
+    void saveSnapshotBinary(User currentUser) throws Exception;
+    //Auto-snapshots are coalesced in the background, write anything pending and wait
+    void flushSnapshots() throws Exception;
+    void setSnapshotPolicy(long intervalMillis, int maxMutations);
+    SnapshotMetrics getSnapshotMetrics();
+    //Drop log records the snapshots already cover, returns bytes dropped
+    long compactLog(User user) throws Exception;
+}